@@ -0,0 +1,105 @@
+package com.lucafacchini;
+
+import java.awt.*;
+import java.awt.image.BufferStrategy;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Canvas used by the active rendering mode.
+ *
+ * Instead of asking Swing to repaint the panel (which happens later, on the EDT),
+ * the game thread draws directly into the back buffer of a BufferStrategy and
+ * presents it by itself. This gives the game full control over when a frame is shown.
+ */
+public class ActiveRenderer extends Canvas {
+
+    // Debugging
+    private static final Logger LOGGER = Logger.getLogger(ActiveRenderer.class.getName());
+
+    // Buffer settings
+    public final int NUM_BUFFERS = 2;
+
+    // GamePanel instance
+    private final GamePanel gp;
+
+    // The strategy is created lazily, because the canvas must be displayable first.
+    private BufferStrategy bufferStrategy;
+
+    /**
+     * @brief Constructor of the ActiveRenderer class.
+     * @param gp the GamePanel that draws the frames.
+     */
+    public ActiveRenderer(GamePanel gp) {
+        this.gp = gp;
+
+        setPreferredSize(new Dimension(gp.gw.WINDOW_WIDTH, gp.gw.WINDOW_HEIGHT));
+        setBackground(Color.BLACK);
+        setIgnoreRepaint(true); // The game thread paints the canvas, not the EDT.
+        setFocusable(true);
+    }
+
+    /**
+     * @brief Creates the buffer strategy.
+     *
+     * It first asks for page flipping with accelerated (VolatileImage) buffers.
+     * If the platform does not support it, it falls back to the default strategy,
+     * which still uses accelerated back buffers when possible.
+     *
+     * @return true if the strategy is ready, false if the canvas is not displayable yet.
+     */
+    private boolean createStrategy() {
+        if (!isDisplayable()) {
+            return false;
+        }
+
+        BufferCapabilities pageFlipping = new BufferCapabilities(
+                new ImageCapabilities(true),
+                new ImageCapabilities(true),
+                BufferCapabilities.FlipContents.UNDEFINED);
+
+        try {
+            createBufferStrategy(NUM_BUFFERS, pageFlipping);
+            LOGGER.info("Active rendering: using page flipping.");
+        } catch (AWTException e) {
+            LOGGER.log(Level.INFO, "Page flipping not available, using the default buffer strategy.");
+            createBufferStrategy(NUM_BUFFERS);
+        }
+
+        bufferStrategy = getBufferStrategy();
+        return true;
+    }
+
+    /**
+     * @brief Renders and presents a single frame.
+     *
+     * The contents of a VolatileImage can be lost at any time (for example when the
+     * window is minimized), so the frame is redrawn until the strategy reports that
+     * it was both restored and shown correctly.
+     *
+     * @return true if a frame was presented, false otherwise.
+     */
+    public boolean render() {
+        if (bufferStrategy == null && !createStrategy()) {
+            return false;
+        }
+
+        do {
+            do {
+                Graphics2D g2d = (Graphics2D) bufferStrategy.getDrawGraphics();
+                try {
+                    g2d.setColor(Color.BLACK);
+                    g2d.fillRect(0, 0, getWidth(), getHeight());
+                    gp.drawAllComponents(g2d);
+                } finally {
+                    g2d.dispose();
+                }
+            } while (bufferStrategy.contentsRestored());
+
+            bufferStrategy.show();
+        } while (bufferStrategy.contentsLost());
+
+        Toolkit.getDefaultToolkit().sync(); // Flush the frame on platforms that buffer the graphics commands (Linux).
+        return true;
+    }
+}
@@ -0,0 +1,164 @@
+package com.lucafacchini;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Loads the assets of the game (images, fonts...) in parallel.
+ *
+ * Decoding and rescaling an image doesn't depend on the other images, so every image
+ * is loaded by its own task on a pool of worker threads (one per core). The classes that
+ * need an asset ask for it in their constructor, and receive it when it's ready.
+ *
+ * The rescaled images are kept in the ImageCache, so the next launches don't rescale them again.
+ * An image requested many times with the same size (for example the image of every key of the map)
+ * is only loaded once, and every request receives the same BufferedImage.
+ *
+ * GameWorld.initializeGame() waits for every asset with awaitAll() before the game starts,
+ * so the rest of the game never sees an asset that is still loading.
+ */
+public class AssetLoader {
+
+    // Debugging
+    private static final Logger LOGGER = Logger.getLogger(AssetLoader.class.getName());
+
+    // Loader settings
+    public static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+
+    private final ExecutorService executor;
+    private final Utilities utilities = new Utilities();
+    public final ImageCache imageCache = ImageCache.createDefault();
+    private final ConcurrentLinkedQueue<CompletableFuture<?>> pendingTasks = new ConcurrentLinkedQueue<>();
+    private final ConcurrentHashMap<String, CompletableFuture<BufferedImage>> images = new ConcurrentHashMap<>(); // Indexed by path and size
+
+    /**
+     * @brief Constructor of the AssetLoader class.
+     * Starts the worker threads.
+     */
+    public AssetLoader() {
+        executor = Executors.newFixedThreadPool(THREAD_COUNT, runnable -> {
+            Thread thread = new Thread(runnable, "Asset loader");
+            thread.setDaemon(true); // Don't keep the game alive
+            return thread;
+        });
+    }
+
+
+    /**
+     * @brief Loads an asset on a worker thread.
+     * A failure is logged, and the asset is skipped.
+     *
+     * @param name The name of the asset. (Used for the logs)
+     * @param task The task that loads the asset.
+     * @return The future of the asset.
+     */
+    public <T> CompletableFuture<T> submit(String name, Callable<T> task) {
+        return track(name, supply(task));
+    }
+
+
+    /**
+     * @brief Loads and rescales an image on a worker thread.
+     * If the same image with the same size was already requested, it's not loaded again:
+     * onLoaded receives the shared image. (The image must not be modified)
+     *
+     * @param path The resource path of the image.
+     * @param width The width of the rescaled image.
+     * @param height The height of the rescaled image.
+     * @param onLoaded Receives the rescaled image, on the worker thread.
+     * @return The future that completes after onLoaded.
+     */
+    public CompletableFuture<Void> loadImage(String path, int width, int height, Consumer<BufferedImage> onLoaded) {
+        CompletableFuture<BufferedImage> image = images.computeIfAbsent(path + "@" + width + "x" + height,
+                key -> supply(() -> readScaledImage(path, width, height)));
+
+        return track(path, image.thenAccept(onLoaded));
+    }
+
+
+    /**
+     * @brief Waits for every asset requested so far.
+     * It must be called before the game starts.
+     */
+    public void awaitAll() {
+        long startTime = System.nanoTime();
+        int count = 0;
+
+        CompletableFuture<?> future;
+        while ((future = pendingTasks.poll()) != null) {
+            try {
+                future.join();
+            } catch (CompletionException | CancellationException e) {
+                // Already logged by track()
+            }
+            count++;
+        }
+
+        LOGGER.log(Level.INFO, "Waited {0} ms for {1} assets ({2} images from the cache, {3} rescaled)", new Object[]{
+                (System.nanoTime() - startTime) / 1_000_000, count, imageCache.getHitCount(), imageCache.getMissCount()});
+    }
+
+
+    /**
+     * @brief Reads an image from the resources and rescales it, using the ImageCache.
+     * It runs on the calling thread.
+     *
+     * @param path The resource path of the image.
+     * @param width The width of the rescaled image.
+     * @param height The height of the rescaled image.
+     * @return The rescaled image.
+     * @throws FileNotFoundException If the image doesn't exist.
+     * @throws Exception If the image can't be read or decoded.
+     */
+    public BufferedImage readScaledImage(String path, int width, int height) throws Exception {
+        byte[] source;
+        try (InputStream inputStream = getClass().getResourceAsStream(path)) {
+            if (inputStream == null) {
+                throw new FileNotFoundException("Image not found: " + path);
+            }
+            source = inputStream.readAllBytes();
+        }
+
+        return imageCache.getScaledImage(source, width, height, () -> {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(source));
+            if (image == null) {
+                throw new IOException("Unsupported image format: " + path);
+            }
+            return utilities.rescaleImage(image, width, height);
+        });
+    }
+
+
+    /**
+     * @brief Runs a task on a worker thread.
+     */
+    private <T> CompletableFuture<T> supply(Callable<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+
+    /**
+     * @brief Remembers a task for awaitAll(), and logs its failure.
+     */
+    private <T> CompletableFuture<T> track(String name, CompletableFuture<T> future) {
+        future.whenComplete((result, e) -> {
+            if (e != null) {
+                LOGGER.log(Level.SEVERE, "Error loading asset: " + name, e.getCause() != null ? e.getCause() : e);
+            }
+        });
+
+        pendingTasks.add(future);
+        return future;
+    }
+}
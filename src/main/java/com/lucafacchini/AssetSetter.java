@@ -20,46 +20,54 @@ public class AssetSetter {
     // Debugging
     private static final Logger LOGGER = Logger.getLogger(AssetSetter.class.getName());
 
-    // GamePanel instance
-    GamePanel gp;
+    // GameWorld instance
+    GameWorld gw;
 
     /**
      * @brief Constructor for the AssetSetter class.
-     * @param gp The GamePanel instance.
+     * @param gw The GameWorld instance.
      */
-    public AssetSetter(GamePanel gp) {
-        this.gp = gp;
+    public AssetSetter(GameWorld gw) {
+        this.gw = gw;
     }
 
     /**
      * @brief Place objects in the game.
      */
     public void placeObject() {
-        gp.objectsArray[0] = new Key_Object(gp, new Utilities());
-        gp.objectsArray[0].worldX = 9 * gp.TILE_SIZE;
-        gp.objectsArray[0].worldY = 14 * gp.TILE_SIZE;
+        gw.objectsArray[0] = new Key_Object(gw);
+        gw.objectsArray[0].worldX = 9 * gw.TILE_SIZE;
+        gw.objectsArray[0].worldY = 14 * gw.TILE_SIZE;
 
-        gp.objectsArray[1] = new Key_Object(gp, new Utilities());
-        gp.objectsArray[1].worldX = 18 * gp.TILE_SIZE;
-        gp.objectsArray[1].worldY = 8 * gp.TILE_SIZE;
+        gw.objectsArray[1] = new Key_Object(gw);
+        gw.objectsArray[1].worldX = 18 * gw.TILE_SIZE;
+        gw.objectsArray[1].worldY = 8 * gw.TILE_SIZE;
 
-        gp.objectsArray[2] = new Door_Object(gp, new Utilities());
-        gp.objectsArray[2].worldX = 23 * gp.TILE_SIZE;
-        gp.objectsArray[2].worldY = 34 * gp.TILE_SIZE;
+        gw.objectsArray[2] = new Door_Object(gw);
+        gw.objectsArray[2].worldX = 23 * gw.TILE_SIZE;
+        gw.objectsArray[2].worldY = 34 * gw.TILE_SIZE;
 
-        gp.objectsArray[3] = new Boots_Object(gp, new Utilities());
-        gp.objectsArray[3].worldX = 30 * gp.TILE_SIZE;
-        gp.objectsArray[3].worldY = 31 * gp.TILE_SIZE;
+        gw.objectsArray[3] = new Boots_Object(gw);
+        gw.objectsArray[3].worldX = 30 * gw.TILE_SIZE;
+        gw.objectsArray[3].worldY = 31 * gw.TILE_SIZE;
 
-        gp.objectsArray[4] = new Chest_Object(gp, new Utilities());
-        gp.objectsArray[4].worldX = 23 * gp.TILE_SIZE;
-        gp.objectsArray[4].worldY = 36 * gp.TILE_SIZE;
+        gw.objectsArray[4] = new Chest_Object(gw);
+        gw.objectsArray[4].worldX = 23 * gw.TILE_SIZE;
+        gw.objectsArray[4].worldY = 36 * gw.TILE_SIZE;
+
+        for (int i = 0; i < gw.objectsArray.length; i++) {
+            gw.cm.updateObject(i);
+        }
     }
 
     /**
      * @brief Place NPCs in the game.
      */
     public void placeNPC() {
-        gp.npcArray[0] = new NPC_OldMan(gp);
+        gw.npcArray[0] = new NPC_OldMan(gw);
+
+        for (int i = 0; i < gw.npcArray.length; i++) {
+            gw.cm.updateNPC(i);
+        }
     }
 }
\ No newline at end of file
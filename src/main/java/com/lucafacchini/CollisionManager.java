@@ -1,6 +1,7 @@
 package com.lucafacchini;
 
 import com.lucafacchini.entity.Entity;
+import com.lucafacchini.objects.SuperObject;
 import com.lucafacchini.tiles.TileManager;
 
 import java.util.logging.Logger;
@@ -13,166 +14,350 @@ public class CollisionManager {
     // Debugging
     private static final Logger LOGGER = Logger.getLogger(CollisionManager.class.getName());
 
-    // GamePanel instance
-    GamePanel gp;
+    // Collision settings
+    public static final int MAX_NEARBY = 64; // The starting size of the query buffer (it grows when it's full)
+
+    // GameWorld instance
+    GameWorld gw;
+
+    /**
+     * @brief The bounding boxes of the NPCs and of the objects, indexed by position.
+     * The ID of an item is its index in the npcArray / objectsArray, so a collision check only
+     * looks at the few NPCs and objects that are near the entity instead of scanning the whole arrays.
+     * The grids must be updated when an NPC moves, or an object is added or removed. (See updateNPC() and updateObject())
+     */
+    private final SpatialGrid npcGrid;
+    private final SpatialGrid objectGrid;
+
+    /**
+     * @brief The buffer that receives the result of a query, one per thread.
+     * The checks and the sweeps only read the map (see TileManager.isSolid()) and the grids,
+     * so several entities can be checked at the same time, while the grids are not being updated.
+     */
+    private final ThreadLocal<int[]> nearbyBuffer = ThreadLocal.withInitial(() -> new int[MAX_NEARBY]);
 
     /**
      * @brief Constructor for the CollisionManager class.
      *
-     * @param gp The GamePanel instance.
+     * @param gw The GameWorld instance.
      */
-    public CollisionManager(GamePanel gp) {
-        this.gp = gp;
+    public CollisionManager(GameWorld gw) {
+        this.gw = gw;
+        npcGrid = new SpatialGrid(gw.TILE_SIZE, gw.npcArray.length);
+        objectGrid = new SpatialGrid(gw.TILE_SIZE, gw.objectsArray.length);
     }
 
 
 
 
 
-    /* TILE COLLISION CHECKING METHODS */
+    /* SPATIAL GRID METHODS */
 
 
 
     /**
-     * @brief Check if the entity is colliding with a tile from any solid layer.
-     *
-     * This is the only method is called by the entity's update method. It operates the following way:
-     *
-     * - It calculates the entity's position in the world. It does so by calculating the coordinates
-     *   of its bounding box. (the bounding box as a rectangle that surrounds the entity).
+     * @brief Updates the position of an NPC in the grid.
+     * It must be called after the NPC has been added to the npcArray, removed, or has moved.
      *
-     * - It calculates the entity's position in the map. It does that by dividing the player
-     *   coordinates by the tile size, to get a valid index for the map array.
+     * @param index The index of the NPC in the npcArray.
+     */
+    public void updateNPC(int index) {
+        Entity npc = gw.npcArray[index];
+
+        if (npc == null) {
+            npcGrid.remove(index);
+        } else {
+            npcGrid.update(index, npc.getBoundingBoxWorldX(), npc.getBoundingBoxWorldY(),
+                    npc.boundingBoxDefaultWidth, npc.boundingBoxDefaultHeight);
+        }
+    }
+
+
+    /**
+     * @brief Updates the position of an object in the grid.
+     * It must be called after the object has been added to the objectsArray, removed, or has moved.
      *
-     * - After that, based on the current direction of the entity, it recalculates the position of the
-     *   entity in the map. It does so by adding or subtracting the entity's speed to the entity's
-     *   This because, otherwise, the player would "step-inside" the tile before the collision is detected.
-     *   @note This can be improved. I don't know yet how to, but I'm sure it can be improved, and I'll think about it.
+     * @param index The index of the object in the objectsArray.
+     */
+    public void updateObject(int index) {
+        SuperObject object = gw.objectsArray[index];
+
+        if (object == null) {
+            objectGrid.remove(index);
+        } else {
+            objectGrid.update(index, object.getBoundingBoxWorldX(), object.getBoundingBoxWorldY(),
+                    object.boundingBox.width, object.boundingBox.height);
+        }
+    }
+
+
+    /**
+     * @brief Finds the items of a grid that intersect an area.
+     * The IDs are written in the query buffer of the current thread (nearbyBuffer), which grows if it's too small.
      *
-     * @param entity The entity to check for collision. (Player, NPC, etc.)
-     * @param isPlayer True if the entity is the player, false otherwise. (NOT USED YET)
+     * @return The number of items found.
      */
-    public void checkTile(Entity entity, boolean isPlayer) {
-
-        /*
-         * This calculates the actual coordinates of the bounding box of the entity.
-         *
-         * Imagine having a player at position worldX = 80, worldY = 38 in the world, and
-         * the bounding box of the player being x = 0; y = 0; width = 64; height = 64.
-         *
-         * EntityLeftWorldX = 80 + 0 = 80 = 80
-         * EntityRightWorldX = 80 + 0 + 64 = 144
-         *
-         * And therefore, the player occupies spaces between x: 80 and x: 144 in the world.
-         *
-         * The same logic applies to the y-axis.
-         */
-        int entityLeftWorldX = entity.worldX + entity.boundingBox.x;
-        int entityRightWorldX = entity.worldX + entity.boundingBox.x + entity.boundingBox.width - entity.speed.getCurrent();
-        int entityTopWorldY = entity.worldY + entity.boundingBox.y;
-        int entityBottomWorldY = entity.worldY + entity.boundingBox.y + entity.boundingBox.height - entity.speed.getCurrent();
-
-        /*
-         * After having the actual coordinates of the bounding box of the entity, we can calculate
-         * the position of the entity in the map. We do so by dividing the entity coordinates by the tile size.
-         *
-         * This is because, the player entity are in pixels, and the map is in tiles.
-         * If the tile size is 64px, and the entity is at x: 70, we need to know in which tile the entity is.
-         * We do so by dividing 70 by 64, which gives us 1.09375. We can then round it down to 1, and we know
-         * that entity is in the first tile.
-         *
-         * Remember that, we calculated both the LeftWorldX and RightWorldX (by adding the width of the bounding box)
-         * This means that, if the entity is even 1px inside the next tile, it will be considered as being in the next tile.
-         *
-         * This way, the entity will always have two tiles to check for collision. And since the entity will occupy
-         * maximum 1 tile of space, it's impossible that a collision occurs with more than 2 tiles of distance.
-         */
-        int entityLeftColumn = entityLeftWorldX / gp.TILE_SIZE;
-        int entityRightColumn = entityRightWorldX / gp.TILE_SIZE;
-        int entityTopRow = entityTopWorldY / gp.TILE_SIZE;
-        int entityBottomRow = entityBottomWorldY / gp.TILE_SIZE;
-
-        // Debugging
-
-        /*
-         * Based on the current direction of the entity, we recalculate the position of the entity in the map.
-         *
-         * This is because, if the entity is moving to the right, we need to check prevent the entity from moving
-         * "inside" the tile before the collision is detected. This is done by removing the entity's speed from the
-         * entity's position in the map.
-         *
-         * Note: this is fore sure not the best way to handle this, but it works for now.
-         * I'll think about a better way to handle this.
-         */
-        switch(entity.currentDirection) {
-            case Entity.Direction.UP -> entityTopRow = (entityTopWorldY - entity.speed.getCurrent()) / gp.TILE_SIZE;
-            case Entity.Direction.DOWN -> entityBottomRow = (entityBottomWorldY + entity.speed.getCurrent()) / gp.TILE_SIZE;
-            case Entity.Direction.LEFT -> entityLeftColumn = (entityLeftWorldX - entity.speed.getCurrent()) / gp.TILE_SIZE;
-            case Entity.Direction.RIGHT -> entityRightColumn = (entityRightWorldX + entity.speed.getCurrent()) / gp.TILE_SIZE;
+    private int query(SpatialGrid grid, int x, int y, int width, int height) {
+        int[] nearby = nearbyBuffer.get();
+        int count = grid.query(x, y, width, height, nearby);
+
+        if (count > nearby.length) {
+            nearby = growNearbyBuffer(count);
+            grid.query(x, y, width, height, nearby);
         }
+        return count;
+    }
+
 
-        /*
-         * Once we have recalculated the position of the entity in the map, we can check if the entity is colliding
-         */
-        checkTileCollision(entity, entityLeftColumn, entityRightColumn, entityTopRow, entityBottomRow);
+    /**
+     * @brief Replaces the query buffer of the current thread with a bigger one.
+     *
+     * @param count The number of items the buffer must hold.
+     * @return The new buffer.
+     */
+    private int[] growNearbyBuffer(int count) {
+        int[] nearby = new int[Integer.highestOneBit(count) * 2];
+        nearbyBuffer.set(nearby);
+        return nearby;
     }
 
+
+
+
+
+    /* MOVEMENT METHODS */
+
+
+
     /**
-     * @brief Prepare arrays of tiles to check for collision.
+     * @brief Moves an entity, stopping it against the first solid tile, object or entity on its way.
      *
-     * This method is always called by the checkTile method.
-     * It operates the following way
+     * The movement is resolved one axis at a time: first the entity moves along the x axis as far as it can,
+     * then along the y axis from there. This way, if the entity walks diagonally into a wall, it stops
+     * against the wall but keeps sliding along it.
      *
-     * - In the checkTile method, we calculated the position of the entity in the map.
-     *   This method now retrieves the tile IDs of the tiles that the entity is "standing on"
-     *   and stores them in two arrays: topTiles and bottomTiles.
+     * Every axis is a single sweep: the bounding box is pushed along the axis, and the distance to the first
+     * obstacle in its way (the "time of impact") is calculated directly. So the entity always ends up
+     * touching the obstacle, whatever its speed, and it can't pass through a thin obstacle either.
      *
-     * @param entity The entity to check for collision.
-     * @param entityLeftColumn The left column of the entity.
-     * @param entityRightColumn The right column of the entity.
-     * @param entityTopRow The top row of the entity.
-     * @param entityBottomRow The bottom row of the entity.
+     * The collision booleans of the entity are set for every kind of obstacle that stopped it.
      *
+     * @param entity The entity to move.
+     * @param distanceX How far the entity wants to move along the x axis. (Negative to the left)
+     * @param distanceY How far the entity wants to move along the y axis. (Negative upwards)
+     */
+    public void move(Entity entity, int distanceX, int distanceY) {
+        entity.worldX += sweepX(entity, distanceX);
+        entity.worldY += sweepY(entity, distanceY);
+    }
+
+
+    /**
+     * @brief Returns how far the entity can move along the x axis before touching an obstacle.
+     * It doesn't move the entity. (See move())
      *
+     * @param entity The entity.
+     * @param distance How far the entity wants to move. (Negative to the left)
+     * @return The distance the entity can move, between 0 and distance.
      */
-    private void checkTileCollision(Entity entity, int entityLeftColumn, int entityRightColumn, int entityTopRow, int entityBottomRow) {
-        int[] topTiles = {
-                gp.maps.get(GamePanel.MapType.BACKGROUND).GAME_MAP[entityLeftColumn][entityTopRow],
-                gp.maps.get(GamePanel.MapType.BACKGROUND).GAME_MAP[entityRightColumn][entityTopRow]
-        };
+    public int sweepX(Entity entity, int distance) {
+        return sweep(entity, distance, true);
+    }
 
-        int[] bottomTiles = {
-                gp.maps.get(GamePanel.MapType.BACKGROUND).GAME_MAP[entityLeftColumn][entityBottomRow],
-                gp.maps.get(GamePanel.MapType.BACKGROUND).GAME_MAP[entityRightColumn][entityBottomRow]
-        };
 
-        if (isTileColliding(topTiles) || isTileColliding(bottomTiles)) {
-            entity.isCollidingWithTile = true;
-        }
+    /**
+     * @brief Returns how far the entity can move along the y axis before touching an obstacle.
+     * It doesn't move the entity. (See move())
+     *
+     * @param entity The entity.
+     * @param distance How far the entity wants to move. (Negative upwards)
+     * @return The distance the entity can move, between 0 and distance.
+     */
+    public int sweepY(Entity entity, int distance) {
+        return sweep(entity, distance, false);
     }
 
 
     /**
-     * @brief Check if the entity is colliding with a tile from any solid layer.
+     * @brief Pushes the bounding box of the entity along an axis, and stops it at the first obstacle.
      *
-     * @param tileNums The tile IDs to check for collision.
+     * The obstacles are the solid tiles, the solid objects, the NPCs and the player (except the entity itself).
+     * The obstacles the entity already overlaps are ignored, so an entity that is stuck can always walk away.
      *
-     * @return True if the entity is colliding with a solid tile, false otherwise.
+     * @param entity The entity.
+     * @param distance How far the entity wants to move.
+     * @param isAlongX true to move along the x axis, false to move along the y axis.
+     * @return The distance the entity can move, between 0 and distance.
+     */
+    private int sweep(Entity entity, int distance, boolean isAlongX) {
+        if (distance == 0) {
+            return 0;
+        }
+
+        int x = entity.getBoundingBoxWorldX();
+        int y = entity.getBoundingBoxWorldY();
+        int width = entity.boundingBoxDefaultWidth;
+        int height = entity.boundingBoxDefaultHeight;
+
+        // Tiles
+        int allowed = sweepTiles(x, y, width, height, distance, isAlongX);
+        if (allowed != distance) {
+            entity.isCollidingWithTile = true;
+        }
+
+        // The area covered by the whole movement
+        int areaX = isAlongX ? Math.min(x, x + distance) : x;
+        int areaY = isAlongX ? y : Math.min(y, y + distance);
+        int areaWidth = isAlongX ? width + Math.abs(distance) : width;
+        int areaHeight = isAlongX ? height : height + Math.abs(distance);
+
+        // Solid objects
+        int count = query(objectGrid, areaX, areaY, areaWidth, areaHeight);
+        int[] nearby = nearbyBuffer.get();
+        for (int n = 0; n < count; n++) {
+            SuperObject object = gw.objectsArray[nearby[n]];
+
+            if (object != null && object.isSolid) {
+                int limit = distanceTo(x, y, width, height, distance, isAlongX,
+                        object.getBoundingBoxWorldX(), object.getBoundingBoxWorldY(), object.boundingBox.width, object.boundingBox.height);
+                if (limit != distance) {
+                    entity.isCollidingWithObject = true;
+                    allowed = distance > 0 ? Math.min(allowed, limit) : Math.max(allowed, limit);
+                }
+            }
+        }
+
+        // NPCs
+        count = query(npcGrid, areaX, areaY, areaWidth, areaHeight);
+        nearby = nearbyBuffer.get();
+        for (int n = 0; n < count; n++) {
+            Entity npc = gw.npcArray[nearby[n]];
+
+            if (npc != null && npc != entity) {
+                int limit = distanceTo(x, y, width, height, distance, isAlongX,
+                        npc.getBoundingBoxWorldX(), npc.getBoundingBoxWorldY(), npc.boundingBoxDefaultWidth, npc.boundingBoxDefaultHeight);
+                if (limit != distance) {
+                    entity.isCollidingWithEntity = true;
+                    allowed = distance > 0 ? Math.min(allowed, limit) : Math.max(allowed, limit);
+                }
+            }
+        }
+
+        // Player
+        Entity player = gw.player;
+        if (entity != player) {
+            int limit = distanceTo(x, y, width, height, distance, isAlongX,
+                    player.getBoundingBoxWorldX(), player.getBoundingBoxWorldY(), player.boundingBoxDefaultWidth, player.boundingBoxDefaultHeight);
+            if (limit != distance) {
+                entity.isCollidingWithEntity = true;
+                allowed = distance > 0 ? Math.min(allowed, limit) : Math.max(allowed, limit);
+            }
+        }
+
+        return allowed;
+    }
+
+
+    /**
+     * @brief Pushes a box along an axis through the map, and stops it at the first solid tile.
+     *
+     * The box is moved line by line (a line is a column when moving along x, a row when moving along y):
+     * every line in front of the box, up to the end of the movement, is checked where it overlaps the box.
+     * The first solid line stops the box right before it. (See TileManager.isSolid)
+     *
+     * @param x The x coordinate of the box, in the world.
+     * @param y The y coordinate of the box, in the world.
+     * @param width The width of the box.
+     * @param height The height of the box.
+     * @param distance How far the box wants to move.
+     * @param isAlongX true to move along the x axis, false to move along the y axis.
+     * @return The distance the box can move, between 0 and distance.
      */
-    private boolean isTileColliding(int... tileNums) {
-        for (int tileNum : tileNums) {
-            if (tileNum >= 0) {
-                for (TileManager tileManager : gp.maps.values()) {
-                    if (tileManager.isTileSolid(tileNum)) {
-                        return true;
-                    }
+    public int sweepTiles(int x, int y, int width, int height, int distance, boolean isAlongX) {
+        int tileSize = gw.TILE_SIZE;
+
+        // The position and the size of the box along the movement, and across it
+        int start = isAlongX ? x : y;
+        int size = isAlongX ? width : height;
+        int firstAcross = Math.floorDiv(isAlongX ? y : x, tileSize);
+        int lastAcross = Math.floorDiv((isAlongX ? y + height : x + width) - 1, tileSize);
+
+        if (distance > 0) {
+            int front = start + size;
+            int lastLine = Math.floorDiv(front - 1 + distance, tileSize);
+
+            for (int line = Math.floorDiv(front - 1, tileSize) + 1; line <= lastLine; line++) {
+                if (isLineSolid(line, firstAcross, lastAcross, isAlongX)) {
+                    return line * tileSize - front;
+                }
+            }
+        } else {
+            int lastLine = Math.floorDiv(start + distance, tileSize);
+
+            for (int line = Math.floorDiv(start, tileSize) - 1; line >= lastLine; line--) {
+                if (isLineSolid(line, firstAcross, lastAcross, isAlongX)) {
+                    return (line + 1) * tileSize - start;
                 }
             }
         }
+
+        return distance;
+    }
+
+
+    /**
+     * @brief Checks if any cell of a part of a line of the map is solid.
+     *
+     * @param line The column (if isColumn is true) or the row of the line.
+     * @param first The first cell of the part of the line.
+     * @param last The last cell of the part of the line.
+     * @param isColumn true if the line is a column, false if it's a row.
+     * @return true if a cell is solid, false otherwise.
+     */
+    private boolean isLineSolid(int line, int first, int last, boolean isColumn) {
+        TileManager tm = gw.tm;
+
+        for (int cell = first; cell <= last; cell++) {
+            if (isColumn ? tm.isSolid(line, cell) : tm.isSolid(cell, line)) {
+                return true;
+            }
+        }
         return false;
     }
 
 
+    /**
+     * @brief Returns how far a box can move along an axis before touching an obstacle.
+     * The obstacles that are not in front of the box (or that already overlap it) don't stop it.
+     *
+     * @return The distance the box can move, between 0 and distance.
+     */
+    private static int distanceTo(int x, int y, int width, int height, int distance, boolean isAlongX,
+                                  int obstacleX, int obstacleY, int obstacleWidth, int obstacleHeight) {
+        // The position and the size along the movement, and across it
+        int start = isAlongX ? x : y;
+        int size = isAlongX ? width : height;
+        int acrossStart = isAlongX ? y : x;
+        int acrossSize = isAlongX ? height : width;
+        int obstacleStart = isAlongX ? obstacleX : obstacleY;
+        int obstacleSize = isAlongX ? obstacleWidth : obstacleHeight;
+        int obstacleAcrossStart = isAlongX ? obstacleY : obstacleX;
+        int obstacleAcrossSize = isAlongX ? obstacleHeight : obstacleWidth;
+
+        if (obstacleAcrossStart >= acrossStart + acrossSize || acrossStart >= obstacleAcrossStart + obstacleAcrossSize) {
+            return distance; // Beside the path of the box
+        }
+
+        if (distance > 0 && obstacleStart >= start + size) {
+            return Math.min(distance, obstacleStart - (start + size));
+        }
+        if (distance < 0 && obstacleStart + obstacleSize <= start) {
+            return Math.max(distance, obstacleStart + obstacleSize - start);
+        }
+        return distance; // Behind the box, or already overlapping it
+    }
+
+
 
 
 
@@ -181,88 +366,67 @@ public class CollisionManager {
 
 
     /**
-     * @brief Check if the entity is colliding with an object.
+     * @brief Check if the entity is colliding with an object, with its next step in its current direction.
+     * (See checkObject(Entity, int, int, boolean))
+     *
+     * @param entity The entity to check for collision.
+     * @param isPlayer True if the entity is the player. (Only the player gets the index of the object)
+     * @return The index of the object the player touches, or -1.
+     */
+    public int checkObject(Entity entity, boolean isPlayer) {
+        return checkObject(entity, stepX(entity), stepY(entity), isPlayer);
+    }
+
+
+    /**
+     * @brief Check if the entity is colliding with an object, along a movement.
      *
-     * First of all, it iterates over the objectsArray and checks if there is an object in the current index.
-     * (if there is not, it's skipped, for optimization purposes)
+     * First of all, it finds the objects in the area covered by the movement in the grid. (The other
+     * objects are too far away to collide, so they are skipped)
      *
      * After that, it calculates the actual coordinates of the bounding box of the entity.
-     * Imagine the BoundingBox as some sort of Entity, that has a position in the world.
-     * The BoundingBox width and height is already defined in the entity class.
-     *
-     * Therefore, to "move" the BoundingBox in the world, we need to add the entity's worldX and worldY to the BoundingBox x and y.
-     * It's like "attaching" the BoundingBox to the entity. to its x and y.
+     * The BoundingBox is relative to the entity, so to "move" it in the world we add the entity's
+     * worldX and worldY to it. It's like "attaching" the BoundingBox to the entity. to its x and y.
+     * Then the box is stretched to cover the whole movement, on both axes. It's the same movement
+     * given to move(), so an entity that walks diagonally into an object from the side touches it too.
      *
      * We do the same for the object. We calculate the actual coordinates of the object's bounding box.
      *
-     * Then, based on the entity current direction, we "move" the BoundingBox in the world, at the same position of the entity.
+     * The coordinates are plain local variables: the bounding boxes of the entity and of the object
+     * are never modified, so nothing is allocated and the entities can be checked on several threads.
      *
      * If at some point, the BoundingBox intersects with the object's BoundingBox, we check if the object is solid,
      * and we set the entity isCollidingWithObject to true. This boolean will be used in the Entity class to
      * prevent the entity from moving in the direction of the collision.
      *
      * @param entity The entity to check for collision.
+     * @param distanceX How far the entity moves along the x axis. (See move())
+     * @param distanceY How far the entity moves along the y axis. (See move())
+     * @param isPlayer True if the entity is the player. (Only the player gets the index of the object)
+     * @return The index of the object the player touches, or -1.
      */
-
-//TODO check if its solid before (performance)
-    public int checkObject(Entity entity, boolean isPlayer) {
+    public int checkObject(Entity entity, int distanceX, int distanceY, boolean isPlayer) {
         int index = -1;
 
-        for (int i = 0; i < gp.objectsArray.length; i++) {
-            if (gp.objectsArray[i] != null) {
-                entity.boundingBox.x = entity.worldX + entity.boundingBox.x;
-                entity.boundingBox.y = entity.worldY + entity.boundingBox.y;
-
-                gp.objectsArray[i].boundingBox.x = gp.objectsArray[i].worldX + gp.objectsArray[i].boundingBox.x;
-                gp.objectsArray[i].boundingBox.y = gp.objectsArray[i].worldY + gp.objectsArray[i].boundingBox.y;
-
-
-                switch(entity.currentDirection) {
-                    case Entity.Direction.UP -> {
-                        entity.boundingBox.y -= entity.speed.getCurrent();
-                        if (entity.boundingBox.intersects(gp.objectsArray[i].boundingBox)) {
-                            if (gp.objectsArray[i].isSolid) {
-                                entity.isCollidingWithObject = true;
-                            }
-                            if (isPlayer) index = i;
-                        }
-                    }
-
-                    case Entity.Direction.DOWN -> {
-                        entity.boundingBox.y += entity.speed.getCurrent();
-                        if (entity.boundingBox.intersects(gp.objectsArray[i].boundingBox)) {
-                            if (gp.objectsArray[i].isSolid) {
-                                entity.isCollidingWithObject = true;
-                            }
-                            if (isPlayer) index = i;
-                        }
-                    }
-
-                    case Entity.Direction.LEFT -> {
-                        entity.boundingBox.x -= entity.speed.getCurrent();
-                        if (entity.boundingBox.intersects(gp.objectsArray[i].boundingBox)) {
-                            if (gp.objectsArray[i].isSolid) {
-                                entity.isCollidingWithObject = true;
-                            }
-                            if (isPlayer) index = i;
-                        }
-                    }
-
-                    case Entity.Direction.RIGHT -> {
-                        entity.boundingBox.x += entity.speed.getCurrent();
-                        if (entity.boundingBox.intersects(gp.objectsArray[i].boundingBox)) {
-                            if (gp.objectsArray[i].isSolid) {
-                                entity.isCollidingWithObject = true;
-                            }
-                            if (isPlayer) index = i;
-                        }
-                    }
-                }
+        int entityX = entity.getBoundingBoxWorldX() + Math.min(distanceX, 0);
+        int entityY = entity.getBoundingBoxWorldY() + Math.min(distanceY, 0);
+        int entityWidth = entity.boundingBoxDefaultWidth + Math.abs(distanceX);
+        int entityHeight = entity.boundingBoxDefaultHeight + Math.abs(distanceY);
 
-                entity.boundingBox.x = entity.boundingBoxDefaultX;
-                entity.boundingBox.y = entity.boundingBoxDefaultY;
-                gp.objectsArray[i].boundingBox.x = gp.objectsArray[i].boundingBoxDefaultX;
-                gp.objectsArray[i].boundingBox.y = gp.objectsArray[i].boundingBoxDefaultY;
+        int count = query(objectGrid, entityX, entityY, entityWidth, entityHeight);
+        int[] nearby = nearbyBuffer.get();
+
+        for (int n = 0; n < count; n++) {
+            int i = nearby[n];
+            SuperObject object = gw.objectsArray[i];
+
+            if (object != null && intersects(
+                    entityX, entityY, entityWidth, entityHeight,
+                    object.getBoundingBoxWorldX(), object.getBoundingBoxWorldY(), object.boundingBox.width, object.boundingBox.height)) {
+                if (object.isSolid) {
+                    entity.isCollidingWithObject = true;
+                }
+                if (isPlayer) index = Math.max(index, i);
             }
         }
         return index;
@@ -277,79 +441,53 @@ public class CollisionManager {
 
 
     /**
-     * @brief Check if the entity is colliding with an object.
-     *
-     * First of all, it iterates over the objectsArray and checks if there is an object in the current index.
-     * (if there is not, it's skipped, for optimization purposes)
-     *
-     * After that, it calculates the actual coordinates of the bounding box of the entity.
-     * Imagine the BoundingBox as some sort of Entity, that has a position in the world.
-     * The BoundingBox width and height is already defined in the entity class.
+     * @brief Check if the entity is colliding with an NPC, with its next step in its current direction.
+     * (See checkEntity(Entity, int, int))
      *
-     * Therefore, to "move" the BoundingBox in the world, we need to add the entity's worldX and worldY to the BoundingBox x and y.
-     * It's like "attaching" the BoundingBox to the entity. to its x and y.
-     *
-     * We do the same for the object. We calculate the actual coordinates of the object's bounding box.
+     * @param entity The entity to check for collision.
+     * @return The index of the NPC the entity collides with, or -1.
+     */
+    public int checkEntity(Entity entity) {
+        return checkEntity(entity, stepX(entity), stepY(entity));
+    }
+
+
+    /**
+     * @brief Check if the entity is colliding with an NPC, along a movement.
      *
-     * Then, based on the entity current direction, we "move" the BoundingBox in the world, at the same position of the entity.
+     * First of all, it finds the NPCs in the area covered by the movement in the grid. (The other NPCs
+     * are too far away to collide, so they are skipped)
      *
-     * If at some point, the BoundingBox intersects with the object's BoundingBox, we check if the object is solid,
-     * and we set the entity isCollidingWithObject to true. This boolean will be used in the Entity class to
-     * prevent the entity from moving in the direction of the collision.
+     * Then it stretches the bounding box of the entity to cover the whole movement, and checks it
+     * against the bounding box of every NPC found, exactly like checkObject().
+     * If they intersect, we set the entity isCollidingWithEntity to true.
      *
      * @param entity The entity to check for collision.
-     * @param target The array containing every entity
+     * @param distanceX How far the entity moves along the x axis. (See move())
+     * @param distanceY How far the entity moves along the y axis. (See move())
+     * @return The index of the NPC the entity collides with, or -1.
      */
-    public int checkEntity(Entity entity, Entity[] target) {
+    public int checkEntity(Entity entity, int distanceX, int distanceY) {
+        Entity[] target = gw.npcArray;
         int index = -1;
 
-        for (int i = 0; i < target.length; i++) {
-            if (target[i] != null && target[i] != entity) {
-
-                entity.boundingBox.x = entity.worldX + entity.boundingBox.x;
-                entity.boundingBox.y = entity.worldY + entity.boundingBox.y;
-
-                target[i].boundingBox.x = target[i].worldX + target[i].boundingBox.x;
-                target[i].boundingBox.y = target[i].worldY + target[i].boundingBox.y;
-
-                switch(entity.currentDirection) {
-                    case Entity.Direction.UP -> {
-                        entity.boundingBox.y -= entity.speed.getCurrent();
-                        if (entity.boundingBox.intersects(target[i].boundingBox)) {
-                            index = i;
-                            entity.isCollidingWithEntity = true;
-                        }
-                    }
-
-                    case Entity.Direction.DOWN -> {
-                        entity.boundingBox.y += entity.speed.getCurrent();
-                        if (entity.boundingBox.intersects(target[i].boundingBox)) {
-                            index = i;
-                            entity.isCollidingWithEntity = true;
-                        }
-                    }
-
-                    case Entity.Direction.LEFT -> {
-                        entity.boundingBox.x -= entity.speed.getCurrent();
-                        if (entity.boundingBox.intersects(target[i].boundingBox)) {
-                            index = i;
-                            entity.isCollidingWithEntity = true;
-                        }
-                    }
-
-                    case Entity.Direction.RIGHT -> {
-                        entity.boundingBox.x += entity.speed.getCurrent();
-                        if (entity.boundingBox.intersects(target[i].boundingBox)) {
-                            index = i;
-                            entity.isCollidingWithEntity = true;
-                        }
-                    }
-                }
+        int entityX = entity.getBoundingBoxWorldX() + Math.min(distanceX, 0);
+        int entityY = entity.getBoundingBoxWorldY() + Math.min(distanceY, 0);
+        int entityWidth = entity.boundingBoxDefaultWidth + Math.abs(distanceX);
+        int entityHeight = entity.boundingBoxDefaultHeight + Math.abs(distanceY);
+
+        int count = query(npcGrid, entityX, entityY, entityWidth, entityHeight);
+        int[] nearby = nearbyBuffer.get();
 
-                entity.boundingBox.x = entity.boundingBoxDefaultX;
-                entity.boundingBox.y = entity.boundingBoxDefaultY;
-                target[i].boundingBox.x = target[i].boundingBoxDefaultX;
-                target[i].boundingBox.y = target[i].boundingBoxDefaultY;
+        for (int n = 0; n < count; n++) {
+            int i = nearby[n];
+            Entity other = target[i];
+
+            if (other != null && other != entity && intersects(
+                    entityX, entityY, entityWidth, entityHeight,
+                    other.getBoundingBoxWorldX(), other.getBoundingBoxWorldY(), other.boundingBoxDefaultWidth, other.boundingBoxDefaultHeight)) {
+                index = Math.max(index, i);
+                entity.isCollidingWithEntity = true;
             }
         }
         return index;
@@ -359,97 +497,72 @@ public class CollisionManager {
 
 
 
-    /* PLAYER COLLISION CHECKING METHODS */
+    /* PLAYER METHODS */
 
 
 
     /**
-     * @brief Check if the entity is colliding with an object.
-     *
-     * First of all, it iterates over the objectsArray and checks if there is an object in the current index.
-     * (if there is not, it's skipped, for optimization purposes)
+     * @brief Check if the player is standing next to the entity.
+     * The bounding box of the entity is grown by half a tile on every side, and checked against
+     * the bounding box of the player. If they intersect, we set the entity isNextToPlayer to true.
      *
-     * After that, it calculates the actual coordinates of the bounding box of the entity.
-     * Imagine the BoundingBox as some sort of Entity, that has a position in the world.
-     * The BoundingBox width and height is already defined in the entity class.
-     *
-     * Therefore, to "move" the BoundingBox in the world, we need to add the entity's worldX and worldY to the BoundingBox x and y.
-     * It's like "attaching" the BoundingBox to the entity. to its x and y.
-     *
-     * We do the same for the object. We calculate the actual coordinates of the object's bounding box.
-     *
-     * Then, based on the entity current direction, we "move" the BoundingBox in the world, at the same position of the entity.
-     *
-     * If at some point, the BoundingBox intersects with the object's BoundingBox, we check if the object is solid,
-     * and we set the entity isCollidingWithObject to true. This boolean will be used in the Entity class to
-     * prevent the entity from moving in the direction of the collision.
-     *
-     * @param entity The entity to check for collision. (Entity won't ever be the player)
+     * @param entity The entity to check. (Entity won't ever be the player)
      */
-    public void checkPlayer(Entity entity) {
+    public void isNextToPlayer(Entity entity) {
+        Entity player = gw.player;
 
-        entity.boundingBox.x = entity.worldX + entity.boundingBox.x;
-        entity.boundingBox.y = entity.worldY + entity.boundingBox.y;
+        if (intersects(
+                entity.getBoundingBoxWorldX() - gw.TILE_SIZE / 2, entity.getBoundingBoxWorldY() - gw.TILE_SIZE / 2,
+                entity.boundingBoxDefaultWidth + gw.TILE_SIZE, entity.boundingBoxDefaultHeight + gw.TILE_SIZE,
+                player.getBoundingBoxWorldX(), player.getBoundingBoxWorldY(),
+                player.boundingBoxDefaultWidth, player.boundingBoxDefaultHeight)) {
+            entity.isNextToPlayer = true;
+        }
+    }
 
-        gp.player.boundingBox.x = gp.player.worldX + gp.player.boundingBox.x;
-        gp.player.boundingBox.y = gp.player.worldY + gp.player.boundingBox.y;
 
-        switch(entity.currentDirection) {
-            case Entity.Direction.UP -> {
-                entity.boundingBox.y -= entity.speed.getCurrent();
-                if (entity.boundingBox.intersects(gp.player.boundingBox)) {
-                    entity.isCollidingWithEntity = true;
-                }
-            }
 
-            case Entity.Direction.DOWN -> {
-                entity.boundingBox.y += entity.speed.getCurrent();
-                if (entity.boundingBox.intersects(gp.player.boundingBox)) {
-                    entity.isCollidingWithEntity = true;
-                }
-            }
 
-            case Entity.Direction.LEFT -> {
-                entity.boundingBox.x -= entity.speed.getCurrent();
-                if (entity.boundingBox.intersects(gp.player.boundingBox)) {
-                    entity.isCollidingWithEntity = true;
-                }
-            }
 
-            case Entity.Direction.RIGHT -> {
-                entity.boundingBox.x += entity.speed.getCurrent();
-                if (entity.boundingBox.intersects(gp.player.boundingBox)) {
-                    entity.isCollidingWithEntity = true;
-                }
-            }
-        }
+    /* BOUNDING BOX METHODS */
 
-        entity.boundingBox.x = entity.boundingBoxDefaultX;
-        entity.boundingBox.y = entity.boundingBoxDefaultY;
-        gp.player.boundingBox.x = gp.player.boundingBoxDefaultX;
-        gp.player.boundingBox.y = gp.player.boundingBoxDefaultY;
-    }
 
-    public void isNextToPlayer(Entity entity) {
 
-        entity.boundingBox.x = entity.worldX + entity.boundingBox.x - gp.TILE_SIZE / 2;
-        entity.boundingBox.y = entity.worldY + entity.boundingBox.y - gp.TILE_SIZE / 2;
-        entity.boundingBox.width = entity.boundingBox.width + gp.TILE_SIZE;
-        entity.boundingBox.height = entity.boundingBox.height + gp.TILE_SIZE;
+    /**
+     * @brief Checks if two rectangles intersect.
+     * Like Rectangle.intersects(), two rectangles that only touch don't intersect,
+     * and an empty rectangle never intersects anything.
+     *
+     * @return true if the rectangles intersect, false otherwise.
+     */
+    public static boolean intersects(int x1, int y1, int width1, int height1,
+                                     int x2, int y2, int width2, int height2) {
+        return width1 > 0 && height1 > 0 && width2 > 0 && height2 > 0 &&
+                x1 < x2 + width2 && x2 < x1 + width1 &&
+                y1 < y2 + height2 && y2 < y1 + height1;
+    }
 
-        gp.player.boundingBox.x = gp.player.worldX + gp.player.boundingBox.x;
-        gp.player.boundingBox.y = gp.player.worldY + gp.player.boundingBox.y;
 
-        if (entity.boundingBox.intersects(gp.player.boundingBox)) {
-            entity.isNextToPlayer = true;
-        }
+    /**
+     * @brief Returns how much the entity moves along the x axis with its next step.
+     */
+    private static int stepX(Entity entity) {
+        return switch (entity.currentDirection) {
+            case LEFT -> -entity.speed.getCurrent();
+            case RIGHT -> entity.speed.getCurrent();
+            default -> 0;
+        };
+    }
 
-        entity.boundingBox.x = entity.boundingBoxDefaultX;
-        entity.boundingBox.y = entity.boundingBoxDefaultY;
-        entity.boundingBox.width = entity.boundingBoxDefaultWidth;
-        entity.boundingBox.height = entity.boundingBoxDefaultHeight;
 
-        gp.player.boundingBox.x = gp.player.boundingBoxDefaultX;
-        gp.player.boundingBox.y = gp.player.boundingBoxDefaultY;
+    /**
+     * @brief Returns how much the entity moves along the y axis with its next step.
+     */
+    private static int stepY(Entity entity) {
+        return switch (entity.currentDirection) {
+            case UP -> -entity.speed.getCurrent();
+            case DOWN -> entity.speed.getCurrent();
+            default -> 0;
+        };
     }
-}
\ No newline at end of file
+}
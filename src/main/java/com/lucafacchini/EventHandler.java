@@ -1,72 +1,236 @@
 package com.lucafacchini;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.lucafacchini.entity.Entity;
 
-import java.awt.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * This class handles the events that occur in the game.
  * It can handle events such as collisions, triggers, teleports,
  * healing... basically anything that can happen in the game.
+ *
+ * The events are not written in the code: they are read from /events/events.json, for example
+ * { "name": "Damage pit", "type": "DAMAGE", "column": 18, "row": 31, "value": 1 }
+ * An event covers a block of cells of the map (width x height, 1 x 1 by default), and it's triggered
+ * when the player enters that block ("trigger": "ENTER", the default) or leaves it ("EXIT").
+ *
+ * The events are indexed by cell, so every tick only looks at the events of the few cells the player
+ * is standing on. The cost doesn't depend on the number of events of the map.
  */
 public class EventHandler {
 
-    // GamePanel reference
-    GamePanel gp;
+    // Debugging
+    private static final Logger LOGGER = Logger.getLogger(EventHandler.class.getName());
 
-    // Default values for the event trigger bounding box
-    Rectangle triggerBox;
-    int triggerBoxDefaultX, triggerBoxDefaultY;
+    // Event settings
+    public static final String EVENTS_PATH = "/events/events.json";
 
-    public EventHandler(GamePanel gp) {
-        this.gp = gp;
-
-        setBoundingBox();
+    /**
+     * @brief Enumerator that contains what an event does to the player.
+     */
+    public enum EventType {
+        SET_MAX_HP, // Sets the max HP (and fills the HP) to the value of the event.
+        HEAL, // Adds the value of the event to the HP.
+        DAMAGE // Removes the value of the event from the HP.
     }
 
-    private void setBoundingBox() {
-        triggerBox = new Rectangle();
+    /**
+     * @brief Enumerator that contains when an event is triggered.
+     */
+    public enum Trigger { ENTER, EXIT }
+
+    /**
+     * @brief A single event, as written in the events file.
+     */
+    public static class GameEvent {
+        public String name;
+        public EventType type;
+        public Trigger trigger = Trigger.ENTER;
+        public int column, row; // The top-left cell of the event
+        public int width = 1, height = 1; // The size of the event, in cells
+        public int value;
+    }
 
-        triggerBox.x = gp.TILE_SIZE / 2 - 1;
-        triggerBox.y = gp.TILE_SIZE / 2 - 1;
-        triggerBox.width = 3;
-        triggerBox.height = 3;
-        triggerBoxDefaultX = triggerBox.x;
-        triggerBoxDefaultY = triggerBox.y;
+    // GameWorld reference
+    GameWorld gw;
+
+    private GameEvent[] events = new GameEvent[0];
+
+    /**
+     * @brief The events of every cell of the map, indexed by cell (row * columns + column).
+     * The events of a cell are cellEvents[cellStart[cell]] ... cellEvents[cellStart[cell + 1] - 1].
+     * (All the lists are stored one after the other in a single array)
+     */
+    private int[] cellStart;
+    private int[] cellEvents;
+    private int columns, rows;
+
+    // The events the player is inside (the current and the previous tick), to find the transitions
+    private int[] insideEvents = new int[0];
+    private int insideCount = 0;
+    private int[] previousInsideEvents = new int[0];
+    private int previousInsideCount = 0;
+    private boolean[] isInside = new boolean[0];
+    private int[] visitedTick = new int[0]; // The last tick an event was found, so it's only counted once
+    private int tick = 0;
+
+    /**
+     * @brief Constructor for the EventHandler class.
+     * The events are loaded later, when the size of the map is known. (See loadEvents())
+     *
+     * @param gw The GameWorld instance.
+     */
+    public EventHandler(GameWorld gw) {
+        this.gw = gw;
     }
 
-    public void checkEvent() {
-        // @DEBUG
-        System.out.println("x:" + gp.player.worldX / gp.TILE_SIZE + " y:" + gp.player.worldY / gp.TILE_SIZE);
 
-        if(hit(16, 31)) {
-            gp.player.hp.setMax(50);
-            gp.player.hp.setCurrent(50);
+    /**
+     * @brief Reads the events file, and indexes the events by cell.
+     * The parts of the events that are outside the map are ignored.
+     *
+     * @param columns The number of columns of the map.
+     * @param rows The number of rows of the map.
+     */
+    public void loadEvents(int columns, int rows) {
+        this.columns = columns;
+        this.rows = rows;
+
+        try (InputStream inputStream = getClass().getResourceAsStream(EVENTS_PATH)) {
+            if (inputStream == null) {
+                LOGGER.log(Level.WARNING, "Events file not found: {0}", EVENTS_PATH);
+            } else {
+                events = Arrays.stream(new ObjectMapper().readValue(inputStream, GameEvent[].class))
+                        .filter(event -> {
+                            if (event.type == null) {
+                                LOGGER.log(Level.WARNING, "Event without a type, ignored: {0}", event.name);
+                            }
+                            return event.type != null;
+                        })
+                        .toArray(GameEvent[]::new);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to read the events file: " + EVENTS_PATH, e);
+        }
+
+        // Count the events of every cell, then place them
+        cellStart = new int[columns * rows + 1];
+        for (GameEvent event : events) {
+            forEachCell(event, cell -> cellStart[cell + 1]++);
         }
+        for (int cell = 0; cell < columns * rows; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+
+        cellEvents = new int[cellStart[columns * rows]];
+        int[] nextSlot = Arrays.copyOf(cellStart, columns * rows);
+        for (int i = 0; i < events.length; i++) {
+            int eventIndex = i;
+            forEachCell(events[i], cell -> cellEvents[nextSlot[cell]++] = eventIndex);
+        }
+
+        insideEvents = new int[events.length];
+        previousInsideEvents = new int[events.length];
+        isInside = new boolean[events.length];
+        visitedTick = new int[events.length];
 
-        if(hit(18, 31)) {
-            gp.player.hp.remove(1);
+        LOGGER.log(Level.INFO, "Loaded {0} events", events.length);
+    }
+
+
+    /**
+     * @brief Calls the action with every cell of an event that is inside the map.
+     */
+    private void forEachCell(GameEvent event, IntConsumer action) {
+        int lastColumn = Math.min(event.column + event.width, columns);
+        int lastRow = Math.min(event.row + event.height, rows);
+
+        for (int row = Math.max(event.row, 0); row < lastRow; row++) {
+            for (int column = Math.max(event.column, 0); column < lastColumn; column++) {
+                action.accept(row * columns + column);
+            }
         }
     }
 
-    private boolean hit(int columnX, int rowY) {
 
-        boolean hit = false;
+    /**
+     * @brief Triggers the events the player has just entered or left.
+     * It's called by the player once per tick, after it has moved.
+     *
+     * The events of the cells under the bounding box of the player are compared with the
+     * events of the previous tick: the new ones are entered, the missing ones are left.
+     */
+    public void checkEvent() {
+        if (cellStart == null) return; // No map yet
+
+        Entity player = gw.player;
+        tick++;
+
+        // Swap the lists: the current one becomes the previous one
+        int[] swap = previousInsideEvents;
+        previousInsideEvents = insideEvents;
+        previousInsideCount = insideCount;
+        insideEvents = swap;
+        insideCount = 0;
+
+        // The cells under the bounding box of the player (clamped to the map)
+        int firstColumn = Math.max(Math.floorDiv(player.getBoundingBoxWorldX(), gw.TILE_SIZE), 0);
+        int firstRow = Math.max(Math.floorDiv(player.getBoundingBoxWorldY(), gw.TILE_SIZE), 0);
+        int lastColumn = Math.min(Math.floorDiv(player.getBoundingBoxWorldX() + player.boundingBoxDefaultWidth - 1, gw.TILE_SIZE), columns - 1);
+        int lastRow = Math.min(Math.floorDiv(player.getBoundingBoxWorldY() + player.boundingBoxDefaultHeight - 1, gw.TILE_SIZE), rows - 1);
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * columns + column;
+
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    int eventIndex = cellEvents[i];
+                    if (visitedTick[eventIndex] == tick) continue; // Already found in another cell
+
+                    visitedTick[eventIndex] = tick;
+                    insideEvents[insideCount++] = eventIndex;
+
+                    if (!isInside[eventIndex]) {
+                        isInside[eventIndex] = true;
+                        trigger(events[eventIndex], Trigger.ENTER);
+                    }
+                }
+            }
+        }
 
-        // TODO: This is unsafe and, imo, inefficient. It's better to use a separate variable to store the player's bounding box. This way we avoid re-assinging the player's bounding box every time we check for a collision.
-        gp.player.boundingBox.x = gp.player.worldX + gp.player.boundingBox.x;
-        gp.player.boundingBox.y = gp.player.worldY + gp.player.boundingBox.y;
-        triggerBox.x = columnX * gp.TILE_SIZE + triggerBox.x;
-        triggerBox.y = rowY * gp.TILE_SIZE + triggerBox.y;
+        for (int i = 0; i < previousInsideCount; i++) {
+            int eventIndex = previousInsideEvents[i];
 
-        if (gp.player.boundingBox.intersects(triggerBox)) {
-            hit = true;
+            if (visitedTick[eventIndex] != tick) {
+                isInside[eventIndex] = false;
+                trigger(events[eventIndex], Trigger.EXIT);
+            }
         }
+    }
 
-        gp.player.boundingBox.x = gp.player.boundingBoxDefaultX;
-        gp.player.boundingBox.y = gp.player.boundingBoxDefaultY;
-        triggerBox.x = triggerBoxDefaultX;
-        triggerBox.y = triggerBoxDefaultY;
-        return hit;
+
+    /**
+     * @brief Runs an event, if it's triggered by the given transition.
+     *
+     * @param event The event.
+     * @param transition ENTER if the player has entered the event, EXIT if it has left it.
+     */
+    private void trigger(GameEvent event, Trigger transition) {
+        if (event.trigger != transition) return;
+
+        switch (event.type) {
+            case SET_MAX_HP -> {
+                gw.player.hp.setMax(event.value);
+                gw.player.hp.setCurrent(event.value);
+            }
+            case HEAL -> gw.player.hp.add(event.value);
+            case DAMAGE -> gw.player.hp.remove(event.value);
+        }
     }
 }
@@ -1,108 +1,82 @@
 package com.lucafacchini;
 
 import com.lucafacchini.entity.Entity;
-import com.lucafacchini.entity.Player;
 import com.lucafacchini.objects.SuperObject;
-import com.lucafacchini.tiles.TileManager;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.HashMap;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Represents the game panel where the game is rendered and updated.
  *
- * This class handles the initialization, updating, and rendering of the game.
- * It implements the Runnable interface to run the game loop in a separate thread.
+ * This class is the Swing view of the GameWorld: it runs the game loop, updates the world
+ * and draws it. It implements the Runnable interface to run the game loop in a separate thread.
  */
 public class GamePanel extends JPanel implements Runnable {
 
-    // Game status
-    /**
-     * @brief Enumerator that contains all the possible statuses of the game.
-     * This enumerator is used to determine the current status of the game.
-     */
-    public enum GameStatus {
-        TITLE_SCREEN,
-        RUNNING, PAUSED, DIALOGUE
-    }
-    public GameStatus gameStatus = GameStatus.TITLE_SCREEN;
-
-    // Tile settings
-    public final int ORIGINAL_TILE_SIZE = 16;
-    public final int SCALE = 4;
-    public final int TILE_SIZE = ORIGINAL_TILE_SIZE * SCALE;
-
-    // Window settings
-    public final int WINDOW_ROWS = 12;
-    public final int WINDOW_COLUMNS = 16;
-    public final int WINDOW_WIDTH = TILE_SIZE * WINDOW_COLUMNS;
-    public final int WINDOW_HEIGHT = TILE_SIZE * WINDOW_ROWS;
-    public final int FPS = 60;
-
-    // Map settings
-    public final int MAX_WORLD_COLUMNS = 50;
-    public final int MAX_WORLD_ROWS = 50;
-
-    public enum MapType {
-        BACKGROUND
-    }
+    // The world that is updated and drawn by this panel
+    public final GameWorld gw;
 
-    public HashMap<MapType, TileManager> maps = new HashMap<>();
+    // Game loop settings
+    public final int TICKS_PER_SECOND = 60; // Fixed rate of the simulation.
+    public final int MAX_FPS = 120; // Cap for the rendered frames. (0 = uncapped)
+    public final long MAX_FRAME_TIME_NS = 250_000_000L; // Longer frames are clamped, to avoid the "spiral of death".
 
     // Thread management
     Thread gameThread;
 
-    // Manage the key events
-    KeyHandler kh = new KeyHandler(this);
-
-    // Event Handler for Entities/Player
-    public EventHandler eh = new EventHandler(this);
-
-    // Entities
-    public Entity[] npcArray = new Entity[10]; // Max number of NPCs in the game
-    public Player player = new Player(this, kh); // The player
-
     /**
-     * @brief Manages collisions between entities, objects, and tiles.
+     * @brief Enumerator that contains the possible rendering modes.
+     * PASSIVE: the frames are painted by Swing, on the EDT. (repaint() -> paintComponent())
+     * ACTIVE: the frames are painted by the game thread, through a BufferStrategy.
      */
-    public CollisionManager cm = new CollisionManager(this);
-
-    // Objects
-    public final int MAX_OBJECTS_ARRAY = 15;
-    public SuperObject[] objectsArray = new SuperObject[MAX_OBJECTS_ARRAY]; // Max number of objects in the game. This array will store all the objects in the world.
-    public AssetSetter assetSetter = new AssetSetter(this); // This class will place objects in the game.
+    public enum RenderMode {
+        PASSIVE, ACTIVE
+    }
+    public final RenderMode renderMode;
+    private ActiveRenderer activeRenderer; // Only used in ACTIVE mode.
 
-    // Music and sound
-    private final Sound music = new Sound();
-    private final Sound sound = new Sound();
+    public final LoopStats loopStats = new LoopStats();
 
-    // UI
-    public UI ui = new UI(this);
+    /**
+     * @brief Constructor of the GamePanel class.
+     * Initializes the game panel using the default (passive) rendering mode.
+     *
+     * @param gw the world to update and draw.
+     */
+    public GamePanel(GameWorld gw) {
+        this(gw, RenderMode.PASSIVE);
+    }
 
     /**
      * @brief Constructor of the GamePanel class.
      * Initializes the game panel, sets its properties, and starts the main theme music.
+     *
+     * @param gw the world to update and draw.
+     * @param renderMode the rendering mode to use.
      */
-    public GamePanel() {
-        setPreferredSize(new Dimension(WINDOW_WIDTH, WINDOW_HEIGHT));
-        setBackground(Color.BLACK);
-        setDoubleBuffered(true);
+    public GamePanel(GameWorld gw, RenderMode renderMode) {
+        this.gw = gw;
+        this.renderMode = renderMode;
 
-        addKeyListener(kh);
-        setFocusable(true);
+        setPreferredSize(new Dimension(gw.WINDOW_WIDTH, gw.WINDOW_HEIGHT));
+        setBackground(Color.BLACK);
 
-        playMusic(0); // 0: Main theme
-    }
+        if (renderMode == RenderMode.ACTIVE) {
+            // The canvas covers the whole panel and receives the key events.
+            setLayout(new BorderLayout());
+            setDoubleBuffered(false);
+            activeRenderer = new ActiveRenderer(this);
+            activeRenderer.addKeyListener(gw.kh);
+            add(activeRenderer, BorderLayout.CENTER);
+        } else {
+            setDoubleBuffered(true);
+            addKeyListener(gw.kh);
+            setFocusable(true);
+        }
 
-    /**
-     * @brief Initializes the game by placing objects and NPCs.
-     */
-    public void initializeGame() {
-        // Set maps
-        maps.put(MapType.BACKGROUND, new TileManager(this, "background.csv"));
-        assetSetter.placeObject();
-        assetSetter.placeNPC();
+        gw.playMusic(0); // 0: Main theme
     }
 
     /**
@@ -110,54 +84,81 @@ public class GamePanel extends JPanel implements Runnable {
      * This method is called from the main class.
      */
     public void startGameThread() {
+        if (renderMode == RenderMode.ACTIVE) {
+            activeRenderer.requestFocusInWindow();
+        }
+
         gameThread = new Thread(this);
         gameThread.start();
     }
 
     /**
      * @brief The main game loop, which handles updating and rendering the game.
-     * This method is called repeatedly to keep the game running.
+     *
+     * The loop uses a fixed timestep: the elapsed time is accumulated, and the
+     * simulation is updated once for every full tick contained in the accumulator.
+     * Rendering is decoupled from the ticks: a frame is drawn on every iteration
+     * (up to MAX_FPS), interpolating the entities between the previous and the current tick.
+     *
+     * If the game is behind schedule, several ticks are run before the next frame,
+     * which means that frames are dropped, but the simulation never slows down.
      */
     @Override
     public void run() {
 
-        double targetFrameTime = 1_000_000_000.0 / FPS; // The delay between frames in nanoseconds.
-        double nextFrameTime = System.nanoTime() + targetFrameTime; // The time when the next frame should be drawn.
+        final long tickTime = 1_000_000_000L / TICKS_PER_SECOND; // The duration of a tick in nanoseconds.
+        final long minFrameTime = MAX_FPS > 0 ? 1_000_000_000L / MAX_FPS : 0; // The minimum duration of a frame.
+
+        long previousTime = System.nanoTime();
+        long accumulator = 0;
 
         while (gameThread != null) {
-            updateComponents();
-            repaint();
+            long currentTime = System.nanoTime();
+            long frameTime = Math.min(currentTime - previousTime, MAX_FRAME_TIME_NS);
+            previousTime = currentTime;
+            accumulator += frameTime;
+
+            int ticksThisFrame = 0;
+            while (accumulator >= tickTime) {
+                gw.update();
+                loopStats.onTick();
+                accumulator -= tickTime;
+                ticksThisFrame++;
+            }
 
-            try {
-                double remainingTimeToNextFrame = nextFrameTime - System.nanoTime();
-                if (remainingTimeToNextFrame > 0) {
-                    Thread.sleep((long) remainingTimeToNextFrame / 1_000_000); // Sleep until the next frame time is reached.
-                }
-                nextFrameTime += targetFrameTime; // Calculate the time when the next frame should be drawn.
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
+            // Every extra tick run in the same iteration is a frame that was never shown.
+            if (ticksThisFrame > 1) {
+                loopStats.onDroppedFrames(ticksThisFrame - 1);
+            }
+
+            gw.interpolation = (double) accumulator / tickTime;
+            render();
+            loopStats.update(currentTime);
+
+            // Sleep until the next tick or the next frame, whichever comes first.
+            long timeToNextTick = tickTime - accumulator;
+            long timeToNextFrame = minFrameTime - (System.nanoTime() - currentTime);
+            long sleepTime = Math.min(timeToNextTick, Math.max(timeToNextFrame, 0));
+            if (sleepTime > 0) {
+                LockSupport.parkNanos(sleepTime);
+            } else {
+                Thread.yield();
             }
         }
     }
 
 
     /**
-     * @brief Updates the components of the game.
-     * This method is called every frame to update the game state.
+     * @brief Renders a frame using the current rendering mode.
+     * In PASSIVE mode it only schedules a repaint, in ACTIVE mode the frame is drawn and shown immediately.
      */
-    private void updateComponents() {
-        if (gameStatus != GameStatus.PAUSED && gameStatus != GameStatus.TITLE_SCREEN) {
-            player.update();
-
-            for (Entity npc : npcArray) {
-                if (npc != null) {
-                    npc.update();
-                }
+    private void render() {
+        if (renderMode == RenderMode.ACTIVE) {
+            if (gw.gameStatus != GameWorld.GameStatus.PAUSED && activeRenderer.render()) {
+                loopStats.onFrame();
             }
-
-            kh.updateKeyStates(); // TODO: Look at this asap.
-        } else if (gameStatus == GameStatus.TITLE_SCREEN) {
-            // Do stuff
+        } else {
+            repaint();
         }
     }
 
@@ -171,67 +172,48 @@ public class GamePanel extends JPanel implements Runnable {
     public void paintComponent(Graphics g) {
         Graphics2D g2d = (Graphics2D) g;
 
-        if (gameStatus != GameStatus.PAUSED) {
+        if (renderMode == RenderMode.ACTIVE) {
+            super.paintComponent(g); // The canvas draws the game, the panel only draws its background.
+            return;
+        }
+
+        if (gw.gameStatus != GameWorld.GameStatus.PAUSED) {
             super.paintComponent(g);
             drawAllComponents(g2d);
             g2d.dispose();
+            loopStats.onFrame();
         }
     }
 
     /**
      * @brief Draws all the components of the game panel.
-     * This method draws the map, objects, NPCs, player, and UI.
+     * This method draws the map, objects, NPCs, player, the "pass behind" layers of the map, and UI.
+     * It's called by paintComponent (PASSIVE mode) or by the ActiveRenderer (ACTIVE mode).
      * @param g2d the Graphics2D object used to draw the components.
      */
-    private void drawAllComponents(Graphics2D g2d) {
+    void drawAllComponents(Graphics2D g2d) {
 
-        if(gameStatus != GameStatus.PAUSED && gameStatus != GameStatus.TITLE_SCREEN) {
-            for (TileManager tileManager : maps.values()) {
-                tileManager.draw(g2d);
-            }
+        if(gw.gameStatus != GameWorld.GameStatus.PAUSED && gw.gameStatus != GameWorld.GameStatus.TITLE_SCREEN) {
+            gw.tm.draw(g2d, false); // Layers below the entities
 
-            for (SuperObject object : objectsArray) {
+            for (SuperObject object : gw.objectsArray) {
                 if (object != null) {
-                    object.draw(g2d, this);
+                    object.draw(g2d, gw);
                 }
             }
 
-            for (Entity npc : npcArray) {
+            for (Entity npc : gw.npcArray) {
                 if (npc != null) {
                     npc.draw(g2d);
                 }
             }
+            gw.crowd.draw(g2d);
 
-            player.draw(g2d);
-            ui.draw(g2d);
-        } else if(gameStatus == GameStatus.TITLE_SCREEN) {
-            ui.draw(g2d);
+            gw.player.draw(g2d);
+            gw.tm.draw(g2d, true); // Layers above the entities ("pass behind")
+            gw.ui.draw(g2d);
+        } else if(gw.gameStatus == GameWorld.GameStatus.TITLE_SCREEN) {
+            gw.ui.draw(g2d);
         }
     }
-
-    /**
-     * @brief Plays the specified music track.
-     * @param index the index of the music track to play.
-     */
-    public void playMusic(int index) {
-        music.setFile(index);
-        music.play();
-        music.loop();
-    }
-
-    /**
-     * @brief Stops the currently playing music.
-     */
-    public void stopMusic() {
-        music.stop();
-    }
-
-    /**
-     * @brief Plays the specified sound effect.
-     * @param index the index of the sound effect to play.
-     */
-    public void playSound(int index) {
-        sound.setFile(index);
-        sound.play();
-    }
 }
\ No newline at end of file
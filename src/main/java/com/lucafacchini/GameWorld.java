@@ -0,0 +1,300 @@
+package com.lucafacchini;
+
+import com.lucafacchini.ai.FlowField;
+import com.lucafacchini.ai.PathFinder;
+import com.lucafacchini.entity.Entity;
+import com.lucafacchini.entity.NpcStore;
+import com.lucafacchini.entity.SpriteRegistry;
+import com.lucafacchini.entity.Player;
+import com.lucafacchini.objects.SuperObject;
+import com.lucafacchini.tiles.TileManager;
+
+
+/**
+ * Represents the state of the game world.
+ *
+ * This class contains everything the simulation needs (maps, entities, objects,
+ * collisions, events...) and it doesn't depend on Swing. The GamePanel is only a
+ * view of the world: it runs the game loop, draws the world, and forwards the key events.
+ *
+ * This makes it possible to run the simulation without a window. (See HeadlessRunner)
+ */
+public class GameWorld {
+
+    // Game status
+    /**
+     * @brief Enumerator that contains all the possible statuses of the game.
+     * This enumerator is used to determine the current status of the game.
+     */
+    public enum GameStatus {
+        TITLE_SCREEN,
+        RUNNING, PAUSED, DIALOGUE
+    }
+    public GameStatus gameStatus = GameStatus.TITLE_SCREEN;
+
+    // Tile settings
+    public final int ORIGINAL_TILE_SIZE = 16;
+    public final int SCALE = 4;
+    public final int TILE_SIZE = ORIGINAL_TILE_SIZE * SCALE;
+
+    // Window settings (the camera is centered on the player, so the world needs to know its size)
+    public final int WINDOW_ROWS = 12;
+    public final int WINDOW_COLUMNS = 16;
+    public final int WINDOW_WIDTH = TILE_SIZE * WINDOW_COLUMNS;
+    public final int WINDOW_HEIGHT = TILE_SIZE * WINDOW_ROWS;
+
+    /**
+     * @brief Enumerator that contains all the layers of the map, in draw order.
+     * Each layer is written in its own CSV file, and every layer is compiled into
+     * a single binary map. (See MapCompiler) The size of the map is read from the binary map. The "pass behind" layers are drawn
+     * after the entities, so the entities look like they are walking behind them.
+     */
+    public enum MapType {
+        BACKGROUND("background.csv", false),
+        GROUND_LEVEL("groundLevel.csv", false),
+        GROUND_DECORATION("groundDecoration.csv", false),
+        GROUND_OBJECTS("groundObjects.csv", false),
+        PASS_BEHIND_BACKGROUND("passBehind_background.csv", true),
+        PASS_BEHIND_GROUND_OBJECTS("passBehind_groundObjects.csv", true);
+
+        public final String fileName;
+        public final boolean isPassBehind;
+
+        MapType(String fileName, boolean isPassBehind) {
+            this.fileName = fileName;
+            this.isPassBehind = isPassBehind;
+        }
+    }
+
+    // The map (every layer)
+    public TileManager tm;
+
+    /**
+     * @brief How far the current frame is between the previous and the next tick. (0.0 - 1.0)
+     * It's set by the view before drawing, and used to interpolate the positions of the entities.
+     */
+    public volatile double interpolation = 1.0;
+
+    // The number of ticks since the game started. It's the clock of the animations. (See SpriteSet)
+    public int tick = 0;
+
+    /**
+     * @brief The random numbers of the simulation. The same seed always gives the same game.
+     * It's created by the constructor, with the seed, before any entity takes its stream.
+     */
+    public final RandomService random;
+
+    // Loads the images and fonts in parallel (the constructors below request their assets)
+    public final AssetLoader assets = new AssetLoader();
+
+    // The sprites of the entities, shared by the entities of the same type
+    public final SpriteRegistry sprites = new SpriteRegistry(assets);
+
+    // Manage the key events
+    public KeyHandler kh = new KeyHandler(this);
+
+    // Event Handler for Entities/Player
+    public EventHandler eh = new EventHandler(this);
+
+    // Entities
+    public Entity[] npcArray = new Entity[10]; // Max number of NPCs in the game
+    public Player player; // The player (created by the constructor, after the random numbers)
+
+    // Objects
+    public final int MAX_OBJECTS_ARRAY = 15;
+    public SuperObject[] objectsArray = new SuperObject[MAX_OBJECTS_ARRAY]; // Max number of objects in the game. This array will store all the objects in the world.
+
+    /**
+     * @brief Manages collisions between entities, objects, and tiles.
+     */
+    public CollisionManager cm = new CollisionManager(this);
+
+    /**
+     * @brief Finds the paths of the NPCs that follow the player or walk to a point.
+     */
+    public final PathFinder pathFinder = new PathFinder(this);
+
+    /**
+     * @brief The directions toward the player, shared by every NPC of the crowd that follows it.
+     */
+    public final FlowField playerFlowField = new FlowField(this);
+
+    public AssetSetter assetSetter = new AssetSetter(this); // This class will place objects in the game.
+
+    // Crowd of wandering NPCs, stored as arrays (See NpcStore)
+    public final NpcStore crowd = new NpcStore(this);
+
+    /**
+     * @brief Chooses which NPCs are updated in a tick, by their distance from the player.
+     */
+    public final UpdateScheduler scheduler = new UpdateScheduler(this);
+
+    // Music and sound (null when the audio is disabled)
+    private final Sound music;
+    private final Sound sound;
+
+    // UI
+    public UI ui = new UI(this);
+
+    /**
+     * @brief Records the input of the session, when it's not null. (See InputRecorder)
+     */
+    public InputRecorder recorder = null;
+
+    /**
+     * @brief Constructor of the GameWorld class, with a random seed.
+     * @param isAudioEnabled false to run the world without any sound. (Headless mode)
+     */
+    public GameWorld(boolean isAudioEnabled) {
+        this(isAudioEnabled, System.nanoTime());
+    }
+
+    /**
+     * @brief Constructor of the GameWorld class.
+     * The player is created here, and the NPCs by initializeGame(), after the random numbers:
+     * so every entity takes its random stream from the seed.
+     *
+     * @param isAudioEnabled false to run the world without any sound. (Headless mode)
+     * @param seed The seed of the random numbers. (See RandomService)
+     */
+    public GameWorld(boolean isAudioEnabled, long seed) {
+        random = new RandomService(seed);
+        player = new Player(this, kh);
+        music = isAudioEnabled ? new Sound() : null;
+        sound = isAudioEnabled ? new Sound() : null;
+    }
+
+    /**
+     * @brief Initializes the game by placing objects and NPCs.
+     * Returns when every asset is loaded.
+     */
+    public void initializeGame() {
+        // Set maps
+        tm = new TileManager(this);
+        eh.loadEvents(tm.columns, tm.rows);
+        assetSetter.placeObject();
+        assetSetter.placeNPC();
+
+        assets.awaitAll();
+    }
+
+    /**
+     * @brief Updates the world by a single tick.
+     * This method is called by the game loop at a fixed rate.
+     */
+    public void update() {
+        tick++;
+        kh.processInput(); // The keys pressed since the last tick
+
+        // Save the positions of the last tick, they are the starting point of the interpolation.
+        player.savePreviousPosition();
+        for (Entity npc : npcArray) {
+            if (npc != null) {
+                npc.savePreviousPosition();
+            }
+        }
+
+        if (gameStatus != GameStatus.PAUSED && gameStatus != GameStatus.TITLE_SCREEN) {
+            player.update();
+            tm.update(); // Stream the chunks of the map around the player
+
+            // Build the directions toward the player again, only when it has moved to another cell
+            playerFlowField.setTarget(
+                    Math.floorDiv(player.getBoundingBoxWorldX() + player.boundingBoxDefaultWidth / 2, TILE_SIZE),
+                    Math.floorDiv(player.getBoundingBoxWorldY() + player.boundingBoxDefaultHeight / 2, TILE_SIZE));
+            playerFlowField.update();
+
+            scheduler.update(); // Update the NPCs near the player (See UpdateScheduler)
+            pathFinder.update(); // Search the paths requested by the NPCs, within the budget of a tick
+            ui.update(); // Print the next letter of the dialogue
+
+            kh.updateKeyStates(); // TODO: Look at this asap.
+        } else if (gameStatus == GameStatus.TITLE_SCREEN) {
+            // Do stuff
+        }
+
+        if (recorder != null) {
+            recorder.recordTick(this);
+        }
+    }
+
+    /**
+     * @brief Returns a checksum of the state of the world.
+     * Two worlds with the same checksum are (almost certainly) in the same state:
+     * the same positions of the player and of the NPCs, the same objects picked up, the same dialogue...
+     * It's used to check that a replay reproduces the recorded game. (See ReplayRunner)
+     *
+     * @return The checksum.
+     */
+    public long getChecksum() {
+        long hash = mixChecksum(0, tick);
+        hash = mixChecksum(hash, gameStatus.ordinal());
+
+        // Player
+        hash = mixChecksum(hash, player.worldX);
+        hash = mixChecksum(hash, player.worldY);
+        hash = mixChecksum(hash, player.currentDirection.ordinal());
+        hash = mixChecksum(hash, player.hp.current);
+        hash = mixChecksum(hash, player.hasKey);
+
+        // Objects (null when picked up or opened)
+        for (SuperObject object : objectsArray) {
+            hash = object == null ? mixChecksum(hash, -1) : mixChecksum(mixChecksum(hash, object.worldX), object.worldY);
+        }
+
+        // NPCs
+        for (Entity npc : npcArray) {
+            if (npc == null) continue;
+            hash = mixChecksum(hash, npc.worldX);
+            hash = mixChecksum(hash, npc.worldY);
+            hash = mixChecksum(hash, npc.currentDirection.ordinal());
+            hash = mixChecksum(hash, npc.dialogueIndex);
+        }
+        for (int i = 0; i < crowd.count; i++) {
+            hash = mixChecksum(hash, (long) crowd.worldX[i] << 32 | crowd.worldY[i] & 0xFFFFFFFFL);
+            hash = mixChecksum(hash, crowd.direction[i]);
+        }
+
+        // UI
+        hash = mixChecksum(hash, ui.titleScreenOption);
+        hash = mixChecksum(hash, ui.currentTitleScreenWindow);
+        hash = mixChecksum(hash, ui.currentLetter);
+        return hash;
+    }
+
+    private static long mixChecksum(long hash, long value) {
+        return (hash ^ value) * 0x100000001B3L; // FNV-1a, a long at a time
+    }
+
+    /**
+     * @brief Plays the specified music track.
+     * @param index the index of the music track to play.
+     */
+    public void playMusic(int index) {
+        if (music == null) return;
+
+        music.setFile(index);
+        music.play();
+        music.loop();
+    }
+
+    /**
+     * @brief Stops the currently playing music.
+     */
+    public void stopMusic() {
+        if (music == null) return;
+
+        music.stop();
+    }
+
+    /**
+     * @brief Plays the specified sound effect.
+     * @param index the index of the sound effect to play.
+     */
+    public void playSound(int index) {
+        if (sound == null) return;
+
+        sound.setFile(index);
+        sound.play();
+    }
+}
@@ -0,0 +1,165 @@
+package com.lucafacchini;
+
+import com.lucafacchini.entity.Entity;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Logger;
+
+/**
+ * Runs the simulation without a window, without Swing and without audio.
+ *
+ * The world is ticked as fast as possible, and the number of ticks per second is
+ * reported at the end. It's used to measure the cost of the simulation by itself,
+ * for example on a CI machine without a display.
+ *
+ * It also reports the memory allocated by the collision checks, which should always be 0.
+ *
+ * The world can be filled with a crowd of wandering NPCs (See NpcStore), to measure
+ * the cost of many NPCs.
+ *
+ * With --follow, the whole crowd walks to the player. (See FlowField)
+ *
+ * With --seed, the run is reproducible: the same seed always gives the same world. (See RandomService)
+ *
+ * Usage: HeadlessRunner [--ticks N] [--warmup N] [--crowd N] [--follow] [--seed N]
+ */
+public class HeadlessRunner {
+
+    // Debugging
+    private static final Logger LOGGER = Logger.getLogger(HeadlessRunner.class.getName());
+
+    // Default settings
+    public static final int DEFAULT_TICKS = 36_000; // 10 minutes of game time at 60 ticks per second.
+    public static final int DEFAULT_WARMUP_TICKS = 6_000; // Ticks run before measuring, to let the JIT compile the hot paths.
+    public static final int COLLISION_CHECK_ITERATIONS = 100_000; // How many times every collision check is measured.
+
+    private final GameWorld gw;
+
+    /**
+     * @brief Constructor of the HeadlessRunner class.
+     * Creates and initializes a world with the audio disabled.
+     *
+     * @param seed The seed of the random numbers of the world.
+     */
+    public HeadlessRunner(long seed) {
+        gw = new GameWorld(false, seed);
+        gw.initializeGame();
+        gw.gameStatus = GameWorld.GameStatus.RUNNING; // Skip the title screen.
+    }
+
+    /**
+     * @brief Runs the given number of ticks as fast as possible.
+     * @param ticks the number of ticks to run.
+     * @return the number of ticks per second.
+     */
+    public double run(int ticks) {
+        long startTime = System.nanoTime();
+
+        for (int i = 0; i < ticks; i++) {
+            gw.update();
+        }
+
+        long elapsedTime = System.nanoTime() - startTime;
+        return ticks / (elapsedTime / 1_000_000_000.0);
+    }
+
+    /**
+     * @brief Measures the memory allocated by the collision checks.
+     * Every collision check of the player and of the NPCs is run many times on the current world,
+     * and the bytes allocated by the thread are divided by the number of checks.
+     *
+     * @param iterations the number of times every check is run.
+     * @return the number of bytes allocated per check, or -1 if the JVM can't measure it.
+     */
+    public double measureCollisionAllocations(int iterations) {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threadBean) ||
+                !threadBean.isThreadAllocatedMemorySupported()) {
+            return -1;
+        }
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        runCollisionChecks(iterations); // Warm up (the first query of a thread allocates its buffer)
+
+        long startBytes = threadBean.getCurrentThreadAllocatedBytes();
+        long checks = runCollisionChecks(iterations);
+        long allocatedBytes = threadBean.getCurrentThreadAllocatedBytes() - startBytes;
+
+        return (double) allocatedBytes / checks;
+    }
+
+    /**
+     * @brief Runs every collision check of the player and of the NPCs.
+     * @param iterations the number of times every check is run.
+     * @return the number of checks.
+     */
+    private long runCollisionChecks(int iterations) {
+        CollisionManager cm = gw.cm;
+        long checks = 0;
+
+        for (int i = 0; i < iterations; i++) {
+            cm.sweepX(gw.player, gw.player.speed.getCurrent());
+            cm.sweepY(gw.player, -gw.player.speed.getCurrent());
+            cm.checkObject(gw.player, true);
+            cm.checkEntity(gw.player);
+            checks += 4;
+
+            for (Entity npc : gw.npcArray) {
+                if (npc != null) {
+                    cm.isNextToPlayer(npc);
+                    cm.sweepX(npc, -npc.speed.getCurrent());
+                    cm.sweepY(npc, npc.speed.getCurrent());
+                    cm.checkObject(npc, false);
+                    cm.checkEntity(npc);
+                    checks += 5;
+                }
+            }
+        }
+        return checks;
+    }
+
+    /**
+     * @brief Main method of the headless benchmark.
+     * @param args command line arguments. (See the class documentation)
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        int ticks = DEFAULT_TICKS;
+        int warmupTicks = DEFAULT_WARMUP_TICKS;
+        int crowdSize = 0;
+        boolean isCrowdFollowing = false;
+        Long seed = null; // Random if it's not given
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--ticks" -> ticks = Integer.parseInt(args[++i]);
+                case "--warmup" -> warmupTicks = Integer.parseInt(args[++i]);
+                case "--crowd" -> crowdSize = Integer.parseInt(args[++i]);
+                case "--follow" -> isCrowdFollowing = true;
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                default -> LOGGER.warning("Unknown argument: " + args[i]);
+            }
+        }
+
+        HeadlessRunner runner = new HeadlessRunner(seed != null ? seed : System.nanoTime());
+        runner.gw.scheduler.isTimeBudgetEnabled = seed == null; // A seeded run must not depend on the speed of the computer
+        runner.gw.crowd.spawn(crowdSize);
+        if (isCrowdFollowing) {
+            for (int i = 0; i < runner.gw.crowd.count; i++) {
+                runner.gw.crowd.followPlayer(i);
+            }
+        }
+        runner.run(warmupTicks);
+        double ticksPerSecond = runner.run(ticks);
+
+        System.out.printf("Ticks: %d, ticks/sec: %.0f (%.1fx real time)%n",
+                ticks, ticksPerSecond, ticksPerSecond / 60.0);
+        System.out.printf("NPCs in the crowd: %d%n", runner.gw.crowd.count);
+        System.out.printf("NPCs of the crowd updated per tick: %.0f (time budget exceeded in %d ticks)%n",
+                runner.gw.scheduler.getAverageCrowdUpdates(), runner.gw.scheduler.getBudgetCuts());
+        System.out.printf("Map chunks loaded synchronously (not streamed in time): %d%n",
+                runner.gw.tm.chunkStore.getSyncLoadCount());
+        System.out.printf("Bytes allocated per collision check: %.3f%n",
+                runner.measureCollisionAllocations(COLLISION_CHECK_ITERATIONS));
+    }
+}
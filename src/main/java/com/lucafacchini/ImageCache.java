@@ -0,0 +1,215 @@
+package com.lucafacchini;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the rescaled images on the disk, so they are not rescaled again on the next launch.
+ *
+ * Every entry is keyed by the hash (SHA-256) of the source image file and by the size of the
+ * rescaled image. If an image or the scale of the game changes, its key changes too, and the
+ * image is rescaled again. The old entries are simply never read again.
+ *
+ * An entry contains the raw ARGB pixels of the rescaled image, so reading it doesn't need any
+ * decoding. The images returned are converted to the format of the screen (See toCompatibleImage()),
+ * so drawing them is a plain copy. The cache is stored in ~/.facchinirpg/image-cache (the "facchinirpg.imageCache"
+ * system property changes the directory, "none" disables the cache).
+ */
+public class ImageCache {
+
+    // Debugging
+    private static final Logger LOGGER = Logger.getLogger(ImageCache.class.getName());
+
+    // Cache settings
+    public static final String DIRECTORY_PROPERTY = "facchinirpg.imageCache";
+    public static final Path DEFAULT_DIRECTORY = Path.of(System.getProperty("user.home"), ".facchinirpg", "image-cache");
+    private static final int MAGIC = 0x46494D47; // "FIMG"
+    private static final int VERSION = 1; // Change it when the format of the entries or the rescaling changes.
+
+    private final Path directory; // null when the cache is disabled
+
+    // Statistics
+    private final AtomicInteger hitCount = new AtomicInteger();
+    private final AtomicInteger missCount = new AtomicInteger();
+
+    /**
+     * @brief Constructor of the ImageCache class.
+     * @param directory The directory of the cache, or null to disable the cache.
+     */
+    public ImageCache(Path directory) {
+        this.directory = directory;
+    }
+
+
+    /**
+     * @brief Creates the cache in the directory chosen by the user. (See the class documentation)
+     */
+    public static ImageCache createDefault() {
+        String property = System.getProperty(DIRECTORY_PROPERTY);
+
+        if (property == null) {
+            return new ImageCache(DEFAULT_DIRECTORY);
+        }
+        return new ImageCache(property.equals("none") ? null : Path.of(property));
+    }
+
+
+    /**
+     * @brief Returns a rescaled image, from the cache if possible.
+     * On a miss the image is rescaled by the given task, and saved in the cache.
+     * The image is converted to the format of the screen. (See toCompatibleImage())
+     * It's safe to call it from several threads at the same time.
+     *
+     * @param source The content of the source image file.
+     * @param width The width of the rescaled image.
+     * @param height The height of the rescaled image.
+     * @param rescale The task that decodes and rescales the source image.
+     * @return The rescaled image.
+     * @throws Exception If the task fails.
+     */
+    public BufferedImage getScaledImage(byte[] source, int width, int height, Callable<BufferedImage> rescale) throws Exception {
+        if (directory == null) {
+            return toCompatibleImage(rescale.call());
+        }
+
+        Path file = directory.resolve(key(source, width, height));
+
+        if (Files.exists(file)) {
+            try {
+                BufferedImage image = read(file, width, height);
+                hitCount.incrementAndGet();
+                return toCompatibleImage(image);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Invalid image cache entry, rescaling again: " + file, e);
+            }
+        }
+
+        missCount.incrementAndGet();
+        BufferedImage image = rescale.call();
+
+        try {
+            write(file, image);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write the image cache entry: " + file, e);
+        }
+
+        return toCompatibleImage(image);
+    }
+
+
+    /**
+     * @brief Copies an image into an image with the pixel format of the screen.
+     * An image in another format (for example TYPE_INT_ARGB on most screens) is converted
+     * every time it's drawn, which is much slower than a copy.
+     * Without a screen (headless) the image is returned as it is.
+     *
+     * @param image The image to convert.
+     * @return The compatible image, or the same image if it's already compatible.
+     */
+    public static BufferedImage toCompatibleImage(BufferedImage image) {
+        if (GraphicsEnvironment.isHeadless()) {
+            return image;
+        }
+
+        GraphicsConfiguration configuration = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice()
+                .getDefaultConfiguration();
+
+        if (image.getColorModel().equals(configuration.getColorModel(Transparency.TRANSLUCENT))) {
+            return image;
+        }
+
+        BufferedImage compatibleImage = configuration.createCompatibleImage(image.getWidth(), image.getHeight(), Transparency.TRANSLUCENT);
+        Graphics2D g2d = compatibleImage.createGraphics();
+        g2d.drawImage(image, 0, 0, null);
+        g2d.dispose();
+        return compatibleImage;
+    }
+
+
+    /**
+     * @brief Returns the number of images read from the cache.
+     */
+    public int getHitCount() {
+        return hitCount.get();
+    }
+
+
+    /**
+     * @brief Returns the number of images that had to be rescaled.
+     */
+    public int getMissCount() {
+        return missCount.get();
+    }
+
+
+    /**
+     * @brief Returns the file name of an entry: the hash of the source, the size and the format version.
+     */
+    private static String key(byte[] source, int width, int height) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(source);
+            digest.update(ByteBuffer.allocate(3 * Integer.BYTES).putInt(width).putInt(height).putInt(VERSION).array());
+            return HexFormat.of().formatHex(digest.digest()) + ".argb";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e); // Every JVM supports it
+        }
+    }
+
+
+    /**
+     * @brief Reads the pixels of an entry.
+     * @throws IOException If the entry can't be read or doesn't match the expected size.
+     */
+    private static BufferedImage read(Path file, int width, int height) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+
+        if (buffer.remaining() != (3 + width * height) * Integer.BYTES ||
+                buffer.getInt() != MAGIC || buffer.getInt() != width || buffer.getInt() != height) {
+            throw new IOException("Corrupted entry");
+        }
+
+        int[] pixels = new int[width * height];
+        buffer.asIntBuffer().get(pixels);
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        image.getRaster().setDataElements(0, 0, width, height, pixels);
+        return image;
+    }
+
+
+    /**
+     * @brief Writes the pixels of an image into an entry.
+     * The entry is written into a temporary file first, so a partial entry is never read.
+     */
+    private void write(Path file, BufferedImage image) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        ByteBuffer buffer = ByteBuffer.allocate((3 + width * height) * Integer.BYTES);
+        buffer.putInt(MAGIC).putInt(width).putInt(height);
+        IntBuffer pixels = buffer.asIntBuffer();
+        pixels.put(image.getRGB(0, 0, width, height, null, 0, width));
+
+        Files.createDirectories(directory);
+        Path temporaryFile = Files.createTempFile(directory, "entry", ".tmp");
+        try {
+            Files.write(temporaryFile, buffer.array());
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package com.lucafacchini;
+
+import java.awt.event.KeyEvent;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records the input of a game session, to replay it later. (See ReplayRunner)
+ *
+ * The world is deterministic: the same seed and the same keys at the same ticks always give
+ * the same game (See RandomService and KeyHandler.processInput()). So a session is stored as
+ * its seed and the list of key transitions, with the tick they were applied.
+ * A checksum of the world is also stored every few ticks, to check that the replay is the same game.
+ *
+ * Format (big endian):
+ *
+ *  - magic number ("FRPL"), format version, seed, checksum interval
+ *  - the records, each one made of the ticks since the previous record (a varint, 7 bits per byte)
+ *    and its type:
+ *     - a key: key << 1 | 1 if pressed (See Key)
+ *     - CHECKSUM, followed by the checksum of the world at the end of the tick (See GameWorld.getChecksum())
+ *     - END: the last tick of the session
+ *
+ * A session of a few minutes is a few KB.
+ */
+public class InputRecorder implements Closeable {
+
+    // Debugging
+    private static final Logger LOGGER = Logger.getLogger(InputRecorder.class.getName());
+
+    // Format settings
+    public static final int MAGIC = 0x4652504C; // "FRPL"
+    public static final int VERSION = 1;
+    public static final int DEFAULT_CHECKSUM_INTERVAL = 600; // 10 seconds at 60 ticks per second.
+
+    private static final int CHECKSUM = 0x40;
+    private static final int END = 0x7F;
+
+    /**
+     * @brief Enumerator that contains the keys that change the game, and their KeyEvent codes.
+     * The keys with the same meaning (for example LEFT and A) are recorded as the same key.
+     */
+    public enum Key {
+        LEFT(KeyEvent.VK_LEFT, KeyEvent.VK_A),
+        RIGHT(KeyEvent.VK_RIGHT, KeyEvent.VK_D),
+        UP(KeyEvent.VK_UP, KeyEvent.VK_W),
+        DOWN(KeyEvent.VK_DOWN, KeyEvent.VK_S),
+        ENTER(KeyEvent.VK_ENTER),
+        PAUSE(KeyEvent.VK_T);
+
+        private static final Key[] VALUES = values();
+
+        public final int keyCode; // The code applied by the replay
+        private final int[] keyCodes;
+
+        Key(int... keyCodes) {
+            this.keyCode = keyCodes[0];
+            this.keyCodes = keyCodes;
+        }
+
+        /**
+         * @brief Returns the key of a KeyEvent code.
+         *
+         * @param keyCode The KeyEvent code.
+         * @return The key, or null if the key doesn't change the game.
+         */
+        public static Key of(int keyCode) {
+            for (Key key : VALUES) {
+                for (int code : key.keyCodes) {
+                    if (code == keyCode) return key;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @brief A recorded session, read from a file.
+     * The key transitions are stored in arrays, in the order they were applied.
+     */
+    public static class Session {
+        public long seed;
+        public int checksumInterval;
+        public int endTick; // The last tick of the session
+
+        // Key transitions
+        public int keyCount = 0;
+        public int[] keyTicks = new int[256];
+        public int[] keyCodes = new int[256]; // The KeyEvent codes (See Key.keyCode)
+        public boolean[] isKeyPressed = new boolean[256];
+
+        // Checksums of the world
+        public int checksumCount = 0;
+        public int[] checksumTicks = new int[64];
+        public long[] checksums = new long[64];
+    }
+
+    private final DataOutputStream output;
+    private final int checksumInterval;
+    private int lastTick = 0; // The tick of the last record
+    private int currentTick = 0; // The last tick of the session until now
+    private boolean isClosed = false;
+
+    /**
+     * @brief Constructor of the InputRecorder class.
+     * Creates the file and writes the header.
+     *
+     * @param path The file of the session.
+     * @param seed The seed of the world. (See GameWorld.random)
+     * @param checksumInterval The ticks between two checksums of the world.
+     * @throws IOException If the file can't be written.
+     */
+    public InputRecorder(Path path, long seed, int checksumInterval) throws IOException {
+        this.checksumInterval = checksumInterval;
+
+        output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeLong(seed);
+        output.writeInt(checksumInterval);
+
+        LOGGER.log(Level.INFO, "Recording the session to {0}", path);
+    }
+
+
+    /**
+     * @brief Records a key transition. It's called by the game thread, when the key is applied.
+     *
+     * @param tick The tick the key is applied.
+     * @param keyCode The KeyEvent code of the key.
+     * @param isPressed true if the key was pressed, false if it was released.
+     */
+    public synchronized void recordKey(int tick, int keyCode, boolean isPressed) {
+        Key key = Key.of(keyCode);
+        if (key == null) return;
+
+        writeRecord(tick, key.ordinal() << 1 | (isPressed ? 1 : 0), 0, false);
+    }
+
+
+    /**
+     * @brief Records the checksum of the world, every checksumInterval ticks.
+     * It's called by the game thread at the end of every tick.
+     *
+     * @param gw The GameWorld instance.
+     */
+    public synchronized void recordTick(GameWorld gw) {
+        currentTick = gw.tick;
+        if (gw.tick % checksumInterval == 0) {
+            writeRecord(gw.tick, CHECKSUM, gw.getChecksum(), true);
+        }
+    }
+
+
+    /**
+     * @brief Writes the end of the session and closes the file.
+     * The records after this call are ignored. It can be called by any thread. (For example on exit)
+     */
+    @Override
+    public synchronized void close() {
+        if (isClosed) return;
+
+        writeRecord(currentTick, END, 0, false);
+        isClosed = true;
+        try {
+            output.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to close the recorded session", e);
+        }
+    }
+
+
+    /**
+     * @brief Writes a record. If the file can't be written, the recording stops.
+     */
+    private void writeRecord(int tick, int type, long checksum, boolean hasChecksum) {
+        if (isClosed) return;
+
+        try {
+            writeVarint(tick - lastTick);
+            output.writeByte(type);
+            if (hasChecksum) {
+                output.writeLong(checksum);
+            }
+            lastTick = tick;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to record the session, the recording is stopped", e);
+            isClosed = true;
+        }
+    }
+
+
+    private void writeVarint(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.writeByte(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+
+    /**
+     * @brief Reads a recorded session.
+     * A session without its END (for example if the game crashed) ends at its last complete record.
+     *
+     * @param path The file of the session.
+     * @return The session.
+     * @throws IOException If the file can't be read or is not a recorded session.
+     */
+    public static Session read(Path path) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException("Not a recorded session: " + path);
+            }
+            int version = input.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported recorded session version: " + version);
+            }
+
+            Session session = new Session();
+            session.seed = input.readLong();
+            session.checksumInterval = input.readInt();
+
+            int tick = 0;
+            try {
+                while (true) {
+                    int recordTick = tick + readVarint(input);
+                    int type = input.readUnsignedByte();
+
+                    if (type == END) {
+                        tick = recordTick;
+                        break;
+                    } else if (type == CHECKSUM) {
+                        addChecksum(session, recordTick, input.readLong());
+                    } else if ((type >> 1) < Key.VALUES.length) {
+                        addKey(session, recordTick, Key.VALUES[type >> 1].keyCode, (type & 1) != 0);
+                    } else {
+                        throw new IOException("Corrupted recorded session, unknown record " + type + " at tick " + recordTick);
+                    }
+                    tick = recordTick;
+                }
+            } catch (EOFException e) {
+                LOGGER.log(Level.WARNING, "The recorded session {0} has no end, it ends at tick {1}", new Object[]{path, tick});
+            }
+
+            session.endTick = tick;
+            return session;
+        }
+    }
+
+
+    private static int readVarint(DataInputStream input) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = input.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+
+
+    private static void addKey(Session session, int tick, int keyCode, boolean isPressed) {
+        if (session.keyCount == session.keyTicks.length) {
+            int capacity = session.keyCount * 2;
+            session.keyTicks = Arrays.copyOf(session.keyTicks, capacity);
+            session.keyCodes = Arrays.copyOf(session.keyCodes, capacity);
+            session.isKeyPressed = Arrays.copyOf(session.isKeyPressed, capacity);
+        }
+
+        session.keyTicks[session.keyCount] = tick;
+        session.keyCodes[session.keyCount] = keyCode;
+        session.isKeyPressed[session.keyCount] = isPressed;
+        session.keyCount++;
+    }
+
+
+    private static void addChecksum(Session session, int tick, long checksum) {
+        if (session.checksumCount == session.checksumTicks.length) {
+            int capacity = session.checksumCount * 2;
+            session.checksumTicks = Arrays.copyOf(session.checksumTicks, capacity);
+            session.checksums = Arrays.copyOf(session.checksums, capacity);
+        }
+
+        session.checksumTicks[session.checksumCount] = tick;
+        session.checksums[session.checksumCount] = checksum;
+        session.checksumCount++;
+    }
+}
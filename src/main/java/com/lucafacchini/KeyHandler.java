@@ -2,12 +2,18 @@ package com.lucafacchini;
 
 import java.awt.event.KeyListener;
 import java.awt.event.KeyEvent;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Handles key events for the game.
  *
  * This class implements the KeyListener interface to manage keyboard input.
  * It updates the state of key presses and handles game status changes.
+ *
+ * The key events arrive on the Swing thread, but they are only queued there: the game thread
+ * applies them at the start of the next tick (See processInput()), so the world never changes
+ * in the middle of a tick. The same input at the same ticks always gives the same game,
+ * so the input can be recorded and replayed. (See InputRecorder)
  */
 public class KeyHandler implements KeyListener {
 
@@ -19,16 +25,19 @@ public class KeyHandler implements KeyListener {
     public boolean isEnterPressed = false;
     public boolean enterPressedHandled = false;
 
-    private final GamePanel gp;
+    // The keys pressed and released since the last tick: keyCode << 1 | 1 if pressed (See queueKey())
+    private final ConcurrentLinkedQueue<Integer> pendingKeys = new ConcurrentLinkedQueue<>();
+
+    private final GameWorld gw;
 
     /**
      * @brief Constructor of the KeyHandler class.
-     * Initializes the key handler with the given GamePanel.
+     * Initializes the key handler with the given GameWorld.
      *
-     * @param gp the GamePanel object to interact with.
+     * @param gw the GameWorld object to interact with.
      */
-    public KeyHandler(GamePanel gp) {
-        this.gp = gp;
+    public KeyHandler(GameWorld gw) {
+        this.gw = gw;
     }
 
     @Override
@@ -38,37 +47,91 @@ public class KeyHandler implements KeyListener {
 
     /**
      * @brief Invoked when a key has been pressed.
-     * Updates the state of key presses for movement keys.
+     * The key is applied at the next tick.
      *
      * @param e the event to be processed.
      */
     @Override
     public void keyPressed(KeyEvent e) {
-        int key = e.getKeyCode();
+        queueKey(e.getKeyCode(), true);
+    }
+
+    /**
+     * @brief Invoked when a key has been released.
+     * The key is applied at the next tick.
+     *
+     * @param e the event to be processed.
+     */
+    @Override
+    public void keyReleased(KeyEvent e) {
+        queueKey(e.getKeyCode(), false);
+    }
+
+    /**
+     * @brief Queues a key event, to apply it at the start of the next tick.
+     * The keys that don't do anything in the game are ignored. (See InputRecorder.Key)
+     * It can be called by any thread.
+     *
+     * @param keyCode the KeyEvent code of the key.
+     * @param isPressed true if the key was pressed, false if it was released.
+     */
+    public void queueKey(int keyCode, boolean isPressed) {
+        if (InputRecorder.Key.of(keyCode) != null) {
+            pendingKeys.add(keyCode << 1 | (isPressed ? 1 : 0));
+        }
+    }
 
+    /**
+     * @brief Applies the keys queued since the last tick, in order, and records them. (See GameWorld.recorder)
+     * It's called by the game thread at the start of every tick.
+     */
+    public void processInput() {
+        Integer event;
+        while ((event = pendingKeys.poll()) != null) {
+            int key = event >> 1;
+            boolean isPressed = (event & 1) != 0;
+
+            if (gw.recorder != null) {
+                gw.recorder.recordKey(gw.tick, key, isPressed);
+            }
+
+            if (isPressed) {
+                handleKeyPressed(key);
+            } else {
+                handleKeyReleased(key);
+            }
+        }
+    }
+
+    /**
+     * @brief Updates the state of key presses for movement keys.
+     *
+     * @param key the key code of the pressed key.
+     */
+    private void handleKeyPressed(int key) {
         // Handle movement keys only if the game is not paused or in dialogue state
-        if (gp.gameStatus == GamePanel.GameStatus.RUNNING || gp.gameStatus == GamePanel.GameStatus.DIALOGUE) {
+        if (gw.gameStatus == GameWorld.GameStatus.RUNNING || gw.gameStatus == GameWorld.GameStatus.DIALOGUE) {
             if (key == KeyEvent.VK_LEFT || key == KeyEvent.VK_A) { isLeftPressed = true; }
             if (key == KeyEvent.VK_RIGHT || key == KeyEvent.VK_D) { isRightPressed = true; }
             if (key == KeyEvent.VK_UP || key == KeyEvent.VK_W) { isUpPressed = true; }
             if (key == KeyEvent.VK_DOWN || key == KeyEvent.VK_S) { isDownPressed = true; }
         }
 
-        else if(gp.gameStatus == GamePanel.GameStatus.TITLE_SCREEN) {
+        else if(gw.gameStatus == GameWorld.GameStatus.TITLE_SCREEN) {
 
 
-            if(gp.ui.currentTitleScreenWindow == 1) {
+            if(gw.ui.currentTitleScreenWindow == 1) {
                 if(key == KeyEvent.VK_W || key == KeyEvent.VK_UP) {
-                    if(gp.ui.titleScreenOption == 0) {
-                        gp.ui.titleScreenOption = 2;
+                    if(gw.ui.titleScreenOption == 0) {
+                        gw.ui.titleScreenOption = 2;
                     } else {
-                        gp.ui.titleScreenOption--;
+                        gw.ui.titleScreenOption--;
                     }
                 } else if(key == KeyEvent.VK_S || key == KeyEvent.VK_DOWN) {
-                    if(gp.ui.titleScreenOption == 2) {
-                        gp.ui.titleScreenOption = 0;
+                    if(gw.ui.titleScreenOption == 2) {
+                        gw.ui.titleScreenOption = 0;
                     } else {
-                        gp.ui.titleScreenOption++;
+                        gw.ui.titleScreenOption++;
                     }
                 }
             }
@@ -76,18 +139,18 @@ public class KeyHandler implements KeyListener {
 
 
             if(key == KeyEvent.VK_ENTER) {
-                if (gp.ui.titleScreenOption == 0) {
-                    switch(gp.ui.currentTitleScreenWindow) {
-                        case 1 -> gp.ui.currentTitleScreenWindow = 2;
-                        case 2 -> gp.gameStatus = GamePanel.GameStatus.RUNNING;
+                if (gw.ui.titleScreenOption == 0) {
+                    switch(gw.ui.currentTitleScreenWindow) {
+                        case 1 -> gw.ui.currentTitleScreenWindow = 2;
+                        case 2 -> gw.gameStatus = GameWorld.GameStatus.RUNNING;
                     }
                 }
 
-                else if (gp.ui.titleScreenOption == 1) {
+                else if (gw.ui.titleScreenOption == 1) {
                     // stuff
                 }
 
-                else if (gp.ui.titleScreenOption == 2) {
+                else if (gw.ui.titleScreenOption == 2) {
                     System.exit(0);
                 }
             }
@@ -95,16 +158,12 @@ public class KeyHandler implements KeyListener {
     }
 
     /**
-     * @brief Invoked when a key has been released.
-     * Updates the state of key releases and handles game status changes.
+     * @brief Updates the state of key releases and handles game status changes.
      *
-     * @param e the event to be processed.
+     * @param key the key code of the released key.
      */
-    @Override
-    public void keyReleased(KeyEvent e) {
-        int key = e.getKeyCode();
-
-        if (gp.gameStatus != GamePanel.GameStatus.PAUSED) {
+    private void handleKeyReleased(int key) {
+        if (gw.gameStatus != GameWorld.GameStatus.PAUSED) {
             // Handle movement keys
             if (key == KeyEvent.VK_LEFT || key == KeyEvent.VK_A) isLeftPressed = false;
             if (key == KeyEvent.VK_RIGHT || key == KeyEvent.VK_D) isRightPressed = false;
@@ -129,12 +188,12 @@ public class KeyHandler implements KeyListener {
      */
     private void handlePauseToggle(int key) {
         if (key == KeyEvent.VK_T) {
-            if (gp.gameStatus == GamePanel.GameStatus.RUNNING) {
+            if (gw.gameStatus == GameWorld.GameStatus.RUNNING) {
                 System.out.println("PAUSE");
-                gp.gameStatus = GamePanel.GameStatus.PAUSED;
-            } else if (gp.gameStatus == GamePanel.GameStatus.PAUSED) {
+                gw.gameStatus = GameWorld.GameStatus.PAUSED;
+            } else if (gw.gameStatus == GameWorld.GameStatus.PAUSED) {
                 System.out.println("UNPAUSE");
-                gp.gameStatus = GamePanel.GameStatus.RUNNING;
+                gw.gameStatus = GameWorld.GameStatus.RUNNING;
             }
         }
     }
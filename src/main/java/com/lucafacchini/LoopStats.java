@@ -0,0 +1,111 @@
+package com.lucafacchini;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects the counters of the game loop.
+ *
+ * The game thread reports every simulation tick and every rendered frame.
+ * Once per second the counters are rolled into ticksPerSecond and framesPerSecond,
+ * so they can be read at any time (debug overlay, logs, benchmarks...).
+ *
+ * It also measures the time between two presented frames (mean and standard deviation),
+ * which is used to compare the frame pacing of the PASSIVE and ACTIVE rendering modes.
+ */
+public class LoopStats {
+
+    private static final long ONE_SECOND_NS = 1_000_000_000L;
+
+    // Values of the last completed second
+    private volatile int ticksPerSecond = 0;
+    private volatile int framesPerSecond = 0;
+    private volatile double frameTimeMeanMs = 0;
+    private volatile double frameTimeStdDevMs = 0;
+
+    // Totals since the loop started
+    private volatile long totalTicks = 0;
+    private volatile long droppedFrames = 0;
+
+    // Counters of the current second
+    private int ticksThisSecond = 0;
+    private final AtomicInteger framesThisSecond = new AtomicInteger(); // Frames can be reported by the EDT (paintComponent).
+    private long secondStartTime = System.nanoTime();
+
+    // Frame time samples of the current second (guarded by "this", frames can come from the EDT)
+    private long lastFrameTime = 0;
+    private int frameTimeSamples = 0;
+    private double frameTimeSum = 0;
+    private double frameTimeSquaredSum = 0;
+
+    /**
+     * @brief Reports one simulation tick.
+     */
+    public void onTick() {
+        ticksThisSecond++;
+        totalTicks++;
+    }
+
+    /**
+     * @brief Reports one rendered frame.
+     */
+    public void onFrame() {
+        framesThisSecond.incrementAndGet();
+
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (lastFrameTime != 0) {
+                double frameTimeMs = (now - lastFrameTime) / 1_000_000.0;
+                frameTimeSamples++;
+                frameTimeSum += frameTimeMs;
+                frameTimeSquaredSum += frameTimeMs * frameTimeMs;
+            }
+            lastFrameTime = now;
+        }
+    }
+
+    /**
+     * @brief Reports frames that were skipped because the simulation had to catch up.
+     * @param count the number of frames that were not rendered.
+     */
+    public void onDroppedFrames(int count) {
+        droppedFrames += count;
+    }
+
+    /**
+     * @brief Rolls the counters over when a full second has passed.
+     * @param now the current time in nanoseconds.
+     */
+    public void update(long now) {
+        if (now - secondStartTime >= ONE_SECOND_NS) {
+            ticksPerSecond = ticksThisSecond;
+            framesPerSecond = framesThisSecond.getAndSet(0);
+            ticksThisSecond = 0;
+            secondStartTime = now;
+            updateFrameTimes();
+        }
+    }
+
+    /**
+     * @brief Computes the mean and the standard deviation of the frame times of the last second.
+     */
+    private synchronized void updateFrameTimes() {
+        if (frameTimeSamples > 0) {
+            double mean = frameTimeSum / frameTimeSamples;
+            double variance = Math.max(frameTimeSquaredSum / frameTimeSamples - mean * mean, 0);
+            frameTimeMeanMs = mean;
+            frameTimeStdDevMs = Math.sqrt(variance);
+        }
+
+        frameTimeSamples = 0;
+        frameTimeSum = 0;
+        frameTimeSquaredSum = 0;
+    }
+
+    // Getters
+    public int getTicksPerSecond() { return ticksPerSecond; }
+    public int getFramesPerSecond() { return framesPerSecond; }
+    public long getTotalTicks() { return totalTicks; }
+    public long getDroppedFrames() { return droppedFrames; }
+    public double getFrameTimeMeanMs() { return frameTimeMeanMs; }
+    public double getFrameTimeStdDevMs() { return frameTimeStdDevMs; }
+}
@@ -1,6 +1,8 @@
 package com.lucafacchini;
 
 import javax.swing.*;
+import java.io.IOException;
+import java.nio.file.Path;
 
 
 /**
@@ -14,21 +16,42 @@ public class Main {
      * @brief Main method to start the game.
      * Initializes the game window and starts the game loop.
      *
-     * @param args command line arguments (not used).
+     * @param args command line arguments. "--active-rendering" draws the game through a BufferStrategy.
+     *             "--record <file>" records the session, to replay it with the ReplayRunner.
+     * @throws IOException If the session can't be recorded.
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        GamePanel.RenderMode renderMode = GamePanel.RenderMode.PASSIVE;
+        Path recordPath = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--active-rendering")) {
+                renderMode = GamePanel.RenderMode.ACTIVE;
+            } else if (args[i].equals("--record")) {
+                recordPath = Path.of(args[++i]);
+            }
+        }
+
         JFrame window = new JFrame();
         window.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         window.setResizable(false);
 
-        GamePanel gamePanel = new GamePanel();
+        GameWorld gameWorld = new GameWorld(true);
+        GamePanel gamePanel = new GamePanel(gameWorld, renderMode);
         window.add(gamePanel);
         window.pack(); // Resize the window to fit the GamePanel
 
         window.setLocationRelativeTo(null); // Center the window on the screen
         window.setVisible(true); // Make the window visible
 
-        gamePanel.initializeGame();
+        gameWorld.initializeGame();
+
+        if (recordPath != null) {
+            InputRecorder recorder = new InputRecorder(recordPath, gameWorld.random.getSeed(), InputRecorder.DEFAULT_CHECKSUM_INTERVAL);
+            gameWorld.scheduler.isTimeBudgetEnabled = false; // The replay must not depend on the speed of the computer
+            gameWorld.recorder = recorder;
+            Runtime.getRuntime().addShutdownHook(new Thread(recorder::close)); // The window closes with System.exit()
+        }
+
         gamePanel.startGameThread();
     }
 }
\ No newline at end of file
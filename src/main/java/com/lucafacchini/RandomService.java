@@ -0,0 +1,160 @@
+package com.lucafacchini;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * The random numbers of the simulation, from a single seed.
+ *
+ * Every entity draws its numbers from its own stream, so the numbers of an NPC don't change when
+ * the other NPCs are added, removed, or updated in another order. (See UpdateScheduler)
+ * The streams are split from the seed in the order they are created: the same seed and the same
+ * world always give the same numbers, so a game can be reproduced exactly. (For example a replay)
+ *
+ * The generator is SplitMix64: the state of a stream is a single long, so a stream can be
+ * stored in a field, or in an array for the NPCs of the crowd (See NpcStore), and it's serialized with it.
+ * Drawing a number never allocates.
+ *
+ * It must be used by the game thread.
+ */
+public class RandomService implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    // The increment of SplitMix64 (the golden ratio), that also separates the streams
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * @brief A stream of random numbers, owned by a single entity.
+     */
+    public static class Stream implements Serializable {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        public long state;
+
+        /**
+         * @brief Constructor of the Stream class.
+         * @param state The initial state. (See RandomService.newStream())
+         */
+        public Stream(long state) {
+            this.state = state;
+        }
+
+        /**
+         * @brief Returns the next random long.
+         * @return A random long, with every value equally likely.
+         */
+        public long nextLong() {
+            state += GOLDEN_GAMMA;
+            return mix(state);
+        }
+
+        /**
+         * @brief Returns the next random int between 0 (included) and bound (excluded).
+         *
+         * @param bound The number of possible values. (Positive)
+         * @return A random int.
+         */
+        public int nextInt(int bound) {
+            return toBound(nextLong(), bound);
+        }
+    }
+
+    private long seed;
+    private long streamCount = 0; // The streams split from the seed until now
+
+    // The numbers of the world itself (for example where the NPCs are spawned)
+    private final Stream worldStream = new Stream(0);
+
+    /**
+     * @brief Constructor of the RandomService class.
+     * @param seed The seed of the simulation.
+     */
+    public RandomService(long seed) {
+        setSeed(seed);
+    }
+
+
+    /**
+     * @brief Changes the seed. The streams created after this call start from the new seed.
+     * It's called before the world is created, so every stream comes from the same seed.
+     *
+     * @param seed The seed of the simulation.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+        streamCount = 0;
+        worldStream.state = mix(seed);
+    }
+
+
+    public long getSeed() {
+        return seed;
+    }
+
+
+    /**
+     * @brief Creates the stream of a new entity.
+     * @return A stream independent from the other ones.
+     */
+    public Stream newStream() {
+        return new Stream(newStreamState());
+    }
+
+
+    /**
+     * @brief Returns the initial state of a new stream, for the entities stored as arrays. (See nextInt(long[], int, int))
+     * @return The state of a stream independent from the other ones.
+     */
+    public long newStreamState() {
+        streamCount++;
+        return mix(seed + streamCount * GOLDEN_GAMMA);
+    }
+
+
+    /**
+     * @brief Returns the next random int of the world stream, between 0 (included) and bound (excluded).
+     *
+     * @param bound The number of possible values. (Positive)
+     * @return A random int.
+     */
+    public int nextInt(int bound) {
+        return worldStream.nextInt(bound);
+    }
+
+
+    /**
+     * @brief Returns the next random int of a stream stored in an array, between 0 (included) and bound (excluded).
+     *
+     * @param states The states of the streams.
+     * @param i The index of the stream.
+     * @param bound The number of possible values. (Positive)
+     * @return A random int.
+     */
+    public static int nextInt(long[] states, int i, int bound) {
+        states[i] += GOLDEN_GAMMA;
+        return toBound(mix(states[i]), bound);
+    }
+
+
+    /**
+     * @brief The output function of SplitMix64: mixes the bits of the state.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+
+    /**
+     * @brief Maps a random long to [0, bound), with a multiplication instead of a division.
+     * (The bias is about bound / 2^32, invisible for the small bounds of the game)
+     */
+    private static int toBound(long random, int bound) {
+        return (int) (((random >>> 32) * bound) >>> 32);
+    }
+}
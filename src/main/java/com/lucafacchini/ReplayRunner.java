@@ -0,0 +1,143 @@
+package com.lucafacchini;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Replays a recorded session without a window, as fast as possible. (See InputRecorder)
+ *
+ * The world is created with the seed of the session, and every key is applied at the tick
+ * it was recorded, so the replay is the same game that was played: the same positions,
+ * the same objects picked up, the same events. A real session is a realistic workload,
+ * and it's the same in every run, so it can be used to profile the game and to find
+ * the commit that made it slower.
+ *
+ * A checksum of the world is printed every N ticks (See GameWorld.getChecksum()), so two
+ * replays can be compared line by line. The checksums recorded with the session are checked too:
+ * if any of them is different, the replay is not the same game anymore, and the exit code is 1.
+ *
+ * Usage: ReplayRunner <session file> [--checksum-interval N]
+ */
+public class ReplayRunner {
+
+    // Debugging
+    private static final Logger LOGGER = Logger.getLogger(ReplayRunner.class.getName());
+
+    private final GameWorld gw;
+    private final InputRecorder.Session session;
+
+    // Results
+    private int checkedChecksums = 0;
+    private int mismatchedChecksums = 0;
+
+    /**
+     * @brief Constructor of the ReplayRunner class.
+     * Creates and initializes a world with the seed of the session, and the audio disabled.
+     *
+     * @param session The recorded session.
+     */
+    public ReplayRunner(InputRecorder.Session session) {
+        this.session = session;
+
+        gw = new GameWorld(false, session.seed);
+        gw.scheduler.isTimeBudgetEnabled = false; // The time budget depends on the speed of the computer
+        gw.initializeGame();
+    }
+
+    /**
+     * @brief Runs the whole session as fast as possible.
+     *
+     * @param checksumInterval The ticks between two printed checksums.
+     * @return the number of ticks per second.
+     */
+    public double run(int checksumInterval) {
+        int nextKey = 0;
+        int nextChecksum = 0;
+        long startTime = System.nanoTime();
+
+        while (gw.tick < session.endTick) {
+            // The keys of the next tick, applied at its start (See KeyHandler.processInput())
+            int nextTick = gw.tick + 1;
+            while (nextKey < session.keyCount && session.keyTicks[nextKey] == nextTick) {
+                gw.kh.queueKey(session.keyCodes[nextKey], session.isKeyPressed[nextKey]);
+                nextKey++;
+            }
+
+            gw.update();
+
+            if (gw.tick % checksumInterval == 0) {
+                System.out.printf("Tick %d checksum %016x%n", gw.tick, gw.getChecksum());
+            }
+
+            if (nextChecksum < session.checksumCount && session.checksumTicks[nextChecksum] == gw.tick) {
+                checkChecksum(session.checksums[nextChecksum]);
+                nextChecksum++;
+            }
+        }
+
+        long elapsedTime = System.nanoTime() - startTime;
+        return session.endTick / (elapsedTime / 1_000_000_000.0);
+    }
+
+    /**
+     * @brief Compares the checksum of the world with the recorded one.
+     */
+    private void checkChecksum(long recordedChecksum) {
+        checkedChecksums++;
+
+        long checksum = gw.getChecksum();
+        if (checksum != recordedChecksum) {
+            if (mismatchedChecksums == 0) {
+                LOGGER.log(Level.WARNING, "The replay is different from the recorded session since tick {0}", gw.tick);
+            }
+            mismatchedChecksums++;
+        }
+    }
+
+    /**
+     * @brief Main method of the replay.
+     * @param args command line arguments. (See the class documentation)
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        Path sessionPath = null;
+        int checksumInterval = 0; // The interval of the session if it's not given
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--checksum-interval" -> checksumInterval = Integer.parseInt(args[++i]);
+                default -> sessionPath = Path.of(args[i]);
+            }
+        }
+
+        if (sessionPath == null) {
+            LOGGER.severe("Usage: ReplayRunner <session file> [--checksum-interval N]");
+            System.exit(2);
+        }
+
+        InputRecorder.Session session;
+        try {
+            session = InputRecorder.read(sessionPath);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to read the recorded session: " + sessionPath, e);
+            System.exit(2);
+            return;
+        }
+
+        ReplayRunner runner = new ReplayRunner(session);
+        double ticksPerSecond = runner.run(checksumInterval > 0 ? checksumInterval : session.checksumInterval);
+
+        System.out.printf("Ticks: %d, ticks/sec: %.0f (%.1fx real time)%n",
+                session.endTick, ticksPerSecond, ticksPerSecond / 60.0);
+        System.out.printf("Keys replayed: %d%n", session.keyCount);
+        System.out.printf("Recorded checksums: %d checked, %d different%n",
+                runner.checkedChecksums, runner.mismatchedChecksums);
+
+        if (runner.mismatchedChecksums > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.lucafacchini;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid that indexes rectangles (the bounding boxes of the NPCs and of the objects) by position.
+ *
+ * The world is split into square cells, and every rectangle is stored in the cell of its top-left corner.
+ * The cells are hashed into a fixed number of buckets, so the grid doesn't depend on the size of the map,
+ * and every bucket is a linked list of its items. Everything is stored in primitive arrays, so
+ * updating and querying the grid doesn't allocate.
+ *
+ * A query only visits the cells around the queried rectangle, so the cost of a collision check
+ * depends on how many items are nearby, not on the total number of items.
+ *
+ * The items are identified by an int ID chosen by the caller. (For example the index in the npcArray)
+ */
+public class SpatialGrid {
+
+    private static final int NONE = -1; // End of a bucket list
+
+    private final int cellSize; // The size of a cell, in pixels.
+
+    // Items, indexed by ID
+    private int[] itemX, itemY, itemWidth, itemHeight; // Bounding box in the world
+    private int[] itemCellX, itemCellY; // Cell of the top-left corner
+    private int[] nextItem, previousItem; // Links of the bucket list (NONE at the ends)
+    private boolean[] isInGrid;
+
+    // Buckets (the length is a power of two)
+    private int[] bucketHeads;
+
+    // The biggest item ever added, used to find the items that start in a cell before the query
+    private int maxItemWidth = 0;
+    private int maxItemHeight = 0;
+
+    /**
+     * @brief Constructor of the SpatialGrid class.
+     *
+     * @param cellSize The size of a cell, in pixels. (Usually the tile size)
+     * @param capacity The expected number of items. The grid grows when a bigger ID is added.
+     */
+    public SpatialGrid(int cellSize, int capacity) {
+        this.cellSize = cellSize;
+        resize(Math.max(capacity, 1));
+    }
+
+
+    /**
+     * @brief Adds an item to the grid, or moves it.
+     * The item is only moved to another bucket when its top-left corner changes cell.
+     *
+     * @param id The ID of the item.
+     * @param x The x coordinate of the bounding box, in the world.
+     * @param y The y coordinate of the bounding box, in the world.
+     * @param width The width of the bounding box.
+     * @param height The height of the bounding box.
+     */
+    public void update(int id, int x, int y, int width, int height) {
+        if (id >= isInGrid.length) {
+            resize(Math.max(id + 1, isInGrid.length * 2));
+        }
+
+        itemX[id] = x;
+        itemY[id] = y;
+        itemWidth[id] = width;
+        itemHeight[id] = height;
+        maxItemWidth = Math.max(maxItemWidth, width);
+        maxItemHeight = Math.max(maxItemHeight, height);
+
+        int cellX = Math.floorDiv(x, cellSize);
+        int cellY = Math.floorDiv(y, cellSize);
+
+        if (isInGrid[id]) {
+            if (cellX == itemCellX[id] && cellY == itemCellY[id]) {
+                return; // Still in the same cell
+            }
+            unlink(id);
+        }
+
+        link(id, cellX, cellY);
+    }
+
+
+    /**
+     * @brief Removes an item from the grid. Nothing happens if it's not in the grid.
+     *
+     * @param id The ID of the item.
+     */
+    public void remove(int id) {
+        if (id < isInGrid.length && isInGrid[id]) {
+            unlink(id);
+        }
+    }
+
+
+    /**
+     * @brief Finds the items whose bounding box intersects a rectangle.
+     * Like Rectangle.intersects(), two rectangles that only touch don't intersect.
+     *
+     * If there are more items than the length of the result array, only the first ones are written,
+     * but all of them are counted. So the caller can use a bigger array and query again.
+     *
+     * @param x The x coordinate of the rectangle, in the world.
+     * @param y The y coordinate of the rectangle, in the world.
+     * @param width The width of the rectangle.
+     * @param height The height of the rectangle.
+     * @param result The array that receives the IDs of the items. (In no particular order)
+     * @return The number of items found.
+     */
+    public int query(int x, int y, int width, int height, int[] result) {
+        int count = 0;
+
+        // An item that intersects the rectangle starts at most maxItemWidth/Height before it
+        int firstCellX = Math.floorDiv(x - maxItemWidth, cellSize);
+        int firstCellY = Math.floorDiv(y - maxItemHeight, cellSize);
+        int lastCellX = Math.floorDiv(x + width - 1, cellSize);
+        int lastCellY = Math.floorDiv(y + height - 1, cellSize);
+
+        for (int cellY = firstCellY; cellY <= lastCellY; cellY++) {
+            for (int cellX = firstCellX; cellX <= lastCellX; cellX++) {
+                for (int id = bucketHeads[bucketOf(cellX, cellY)]; id != NONE; id = nextItem[id]) {
+                    // The bucket also contains the items of the other cells with the same hash
+                    if (itemCellX[id] != cellX || itemCellY[id] != cellY) continue;
+
+                    if (itemX[id] < x + width && x < itemX[id] + itemWidth[id] &&
+                            itemY[id] < y + height && y < itemY[id] + itemHeight[id]) {
+                        if (count < result.length) {
+                            result[count] = id;
+                        }
+                        count++;
+                    }
+                }
+            }
+        }
+
+        return count;
+    }
+
+
+    /**
+     * @brief Returns the bucket of a cell.
+     */
+    private int bucketOf(int cellX, int cellY) {
+        int hash = cellX * 73856093 ^ cellY * 19349663;
+        return (hash ^ hash >>> 16) & (bucketHeads.length - 1);
+    }
+
+
+    /**
+     * @brief Adds an item at the head of the bucket of its cell.
+     */
+    private void link(int id, int cellX, int cellY) {
+        int bucket = bucketOf(cellX, cellY);
+
+        itemCellX[id] = cellX;
+        itemCellY[id] = cellY;
+        previousItem[id] = NONE;
+        nextItem[id] = bucketHeads[bucket];
+        if (bucketHeads[bucket] != NONE) {
+            previousItem[bucketHeads[bucket]] = id;
+        }
+        bucketHeads[bucket] = id;
+        isInGrid[id] = true;
+    }
+
+
+    /**
+     * @brief Removes an item from the bucket of its cell.
+     */
+    private void unlink(int id) {
+        if (previousItem[id] != NONE) {
+            nextItem[previousItem[id]] = nextItem[id];
+        } else {
+            bucketHeads[bucketOf(itemCellX[id], itemCellY[id])] = nextItem[id];
+        }
+
+        if (nextItem[id] != NONE) {
+            previousItem[nextItem[id]] = previousItem[id];
+        }
+        isInGrid[id] = false;
+    }
+
+
+    /**
+     * @brief Changes the maximum number of items, and rebuilds the buckets.
+     * There are about two buckets per item, so the bucket lists stay short.
+     */
+    private void resize(int capacity) {
+        int oldCapacity = isInGrid == null ? 0 : isInGrid.length;
+
+        itemX = grow(itemX, capacity);
+        itemY = grow(itemY, capacity);
+        itemWidth = grow(itemWidth, capacity);
+        itemHeight = grow(itemHeight, capacity);
+        itemCellX = grow(itemCellX, capacity);
+        itemCellY = grow(itemCellY, capacity);
+        nextItem = grow(nextItem, capacity);
+        previousItem = grow(previousItem, capacity);
+        isInGrid = isInGrid == null ? new boolean[capacity] : Arrays.copyOf(isInGrid, capacity);
+
+        bucketHeads = new int[Integer.highestOneBit(capacity) * 4];
+        Arrays.fill(bucketHeads, NONE);
+
+        for (int id = 0; id < oldCapacity; id++) {
+            if (isInGrid[id]) {
+                link(id, itemCellX[id], itemCellY[id]);
+            }
+        }
+    }
+
+
+    /**
+     * @brief Copies an array into a longer one.
+     */
+    private static int[] grow(int[] array, int length) {
+        return array == null ? new int[length] : Arrays.copyOf(array, length);
+    }
+}
@@ -32,8 +32,13 @@ public class UI {
     public int currentLetter = 1;
     public boolean hasFinishedPrintingDialogue = true;
 
-    // GamePanel instance
-    GamePanel gp;
+    // Messages
+    public final int MESSAGE_DURATION_FRAMES = 120; // How long a message stays on the screen.
+    public String message = null;
+    public int messageFramesLeft = 0;
+
+    // GameWorld instance
+    GameWorld gw;
 
     // Graphics2D object
     Graphics2D g2d;
@@ -46,10 +51,10 @@ public class UI {
     /**
      * Constructor of the UI class.
      *
-     * @param gp the GamePanel instance.
+     * @param gw the GameWorld instance.
      */
-    public UI(GamePanel gp) {
-        this.gp = gp;
+    public UI(GameWorld gw) {
+        this.gw = gw;
 
         loadFonts();
     }
@@ -59,6 +64,37 @@ public class UI {
 
 
 
+// ********************************************** UPDATE METHODS ********************************************** //
+
+
+    /**
+     * @brief Prints the next letter of the current dialogue. (Typewriter effect)
+     * This is called every tick, not every frame, because the player can only read the next
+     * dialogue when the current one is printed: so it's part of the game, like the positions.
+     */
+    public void update() {
+        if (gw.gameStatus != GameWorld.GameStatus.DIALOGUE || currentDialogue == null) return;
+
+        if(isPlayerReadyForNextDialogue()) {
+            hasFinishedPrintingDialogue = false;
+            currentLetter = 1;
+        }
+
+        if (currentLetter > currentDialogue.length()) {
+            hasFinishedPrintingDialogue = true;
+            currentLetter = currentDialogue.length();
+        }
+
+        dialogueToPrint = currentDialogue.substring(0, currentLetter);
+
+        currentLetter++;
+    }
+
+
+
+
+
+
 // ********************************************** DRAW METHODS ********************************************** //
 
 
@@ -71,7 +107,7 @@ public class UI {
     public void draw(Graphics2D g2d) {
         this.g2d = g2d;
 
-        switch (gp.gameStatus) {
+        switch (gw.gameStatus) {
 
             case TITLE_SCREEN -> {
                 drawTitleScreen();
@@ -80,6 +116,7 @@ public class UI {
             case RUNNING -> {
                 drawEntityRelatedStuff();
                 drawStatsBar();
+                drawMessage();
             }
 
             case DIALOGUE -> {
@@ -122,15 +159,15 @@ public class UI {
      */
     private void drawTitleScreenWindow1() {
         setFont(defaultFont, 94F, Font.BOLD);
-        drawShadowText("FacchiniRPG", Color.YELLOW, Color.DARK_GRAY, getCenteredX("FacchiniRPG"), gp.TILE_SIZE * 2, 3, 3);
+        drawShadowText("FacchiniRPG", Color.YELLOW, Color.DARK_GRAY, getCenteredX("FacchiniRPG"), gw.TILE_SIZE * 2, 3, 3);
         setFont(defaultFont, 32F, Font.BOLD);
-        drawShadowText("Game by Luca Facchini", Color.WHITE, Color.DARK_GRAY, getCenteredX("Game by Luca Facchini"), gp.TILE_SIZE * 3, 3, 3);
+        drawShadowText("Game by Luca Facchini", Color.WHITE, Color.DARK_GRAY, getCenteredX("Game by Luca Facchini"), gw.TILE_SIZE * 3, 3, 3);
 
         // Options
         String[] options = {"PLAY GAME", "LOAD FILE", "EXIT"};
 
         for (int i = 0; i < options.length; i++) {
-            int y = gp.TILE_SIZE * (8 + i);
+            int y = gw.TILE_SIZE * (8 + i);
             setFont(defaultFont, 48F, Font.BOLD);
             drawTitleScreenOption(options[i], y, i == titleScreenOption);
         }
@@ -145,7 +182,7 @@ public class UI {
      */
     private void drawTitleScreenWindow2() {
         setFont(defaultFont, 24F, Font.PLAIN);
-        drawText("Press enter to start the game", Color.WHITE, true, gp.WINDOW_HEIGHT / 2);
+        drawText("Press enter to start the game", Color.WHITE, true, gw.WINDOW_HEIGHT / 2);
     }
 
 
@@ -182,10 +219,10 @@ public class UI {
     private void drawBulb(Entity entity) {
         int x, y, width, height;
 
-        width = gp.TILE_SIZE / 4;
-        height = gp.TILE_SIZE / 4;
-        x = worldToScreenX(entity.worldX) + gp.TILE_SIZE / 2 - width / 2;
-        y = worldToScreenY(entity.worldY) - gp.TILE_SIZE / 2;
+        width = gw.TILE_SIZE / 4;
+        height = gw.TILE_SIZE / 4;
+        x = worldToScreenX(entity.getRenderX()) + gw.TILE_SIZE / 2 - width / 2;
+        y = worldToScreenY(entity.getRenderY()) - gw.TILE_SIZE / 2;
 
         g2d.setColor(Color.BLACK);
         g2d.fillRect(x, y, width, height);
@@ -208,13 +245,13 @@ public class UI {
     private void drawDialogueScreen() {
         int x, y, width, height;
 
-        x = gp.TILE_SIZE * 2;
-        y = gp.TILE_SIZE;
-        width = gp.WINDOW_WIDTH - gp.TILE_SIZE * 4;
-        height = gp.TILE_SIZE * 4;
+        x = gw.TILE_SIZE * 2;
+        y = gw.TILE_SIZE;
+        width = gw.WINDOW_WIDTH - gw.TILE_SIZE * 4;
+        height = gw.TILE_SIZE * 4;
 
         drawDialogueWindow(x, y, width, height);
-        drawDialogueString(x, y, currentDialogue);
+        drawDialogueString(x, y, dialogueToPrint);
     }
 
 
@@ -248,26 +285,14 @@ public class UI {
      * @param dialogue the string to draw.
      */
     private void drawDialogueString(int x, int y, String dialogue) {
-        setFont(defaultFont, 30F, Font.PLAIN);
-
-        x += gp.TILE_SIZE;
-        y += gp.TILE_SIZE;
-
-        if(isPlayerReadyForNextDialogue()) {
-            hasFinishedPrintingDialogue = false;
-            currentLetter = 1;
-        }
-
-        if (currentLetter > dialogue.length()) {
-            hasFinishedPrintingDialogue = true;
-            currentLetter = dialogue.length();
-        }
+        if (dialogue == null) return; // The first letter is printed by the next tick
 
-        dialogueToPrint = dialogue.substring(0, currentLetter);
+        setFont(defaultFont, 30F, Font.PLAIN);
 
-        drawShadowText(dialogueToPrint, Color.WHITE, Color.BLACK, x, y, 2, 2);
+        x += gw.TILE_SIZE;
+        y += gw.TILE_SIZE;
 
-        currentLetter++;
+        drawShadowText(dialogue, Color.WHITE, Color.BLACK, x, y, 2, 2);
     }
 
 
@@ -282,35 +307,49 @@ public class UI {
     /**
      * @brief Shows a message on the screen.
      *
-     * @note: This method is still experimental.
+     * The message is only stored here, because this method is called during the
+     * update of the world (where there is nothing to draw on, for example in headless mode).
+     * It's drawn by drawMessage() for the next MESSAGE_DURATION_FRAMES frames.
      *
      * @param text the text to show on the screen.
      */
     public void showMessage(String text) {
+        message = text;
+        messageFramesLeft = MESSAGE_DURATION_FRAMES;
+    }
+
+
+    /**
+     * @brief Draws the current message, if there is one.
+     */
+    private void drawMessage() {
+        if (message == null || messageFramesLeft <= 0) return;
+
         setFont(defaultFont, 30F, Font.PLAIN);
-        drawText(text, Color.WHITE, true, gp.TILE_SIZE);
+        drawText(message, Color.WHITE, true, gw.TILE_SIZE);
+        messageFramesLeft--;
     }
 
 
     public void drawStatsBar() {
         int x, y, width, height;
 
-        x = gp.TILE_SIZE;
-        y = gp.TILE_SIZE;
-        width = gp.TILE_SIZE / 4 * gp.player.hp.max;
-        height = gp.TILE_SIZE / 4;
+        x = gw.TILE_SIZE;
+        y = gw.TILE_SIZE;
+        width = gw.TILE_SIZE / 4 * gw.player.hp.max;
+        height = gw.TILE_SIZE / 4;
 
         g2d.setColor(Color.RED);
         g2d.fillRect(x, y, width, height);
 
-        width = gp.TILE_SIZE / 4 * gp.player.hp.current;
+        width = gw.TILE_SIZE / 4 * gw.player.hp.current;
 
         g2d.setColor(Color.GREEN);
         g2d.fillRect(x, y, width, height);
 
-        String text = "HP: " + gp.player.hp.current + "/" + gp.player.hp.max;
+        String text = "HP: " + gw.player.hp.current + "/" + gw.player.hp.max;
         setFont(defaultFont, 16F, Font.PLAIN);
-        drawText(text, Color.BLACK, x + 10, y + gp.TILE_SIZE / 4 - (height / 6));
+        drawText(text, Color.BLACK, x + 10, y + gw.TILE_SIZE / 4 - (height / 6));
     }
 
 
@@ -319,17 +358,22 @@ public class UI {
 // ********************************************** HELPER METHODS ********************************************** //
 
 
+    /**
+     * @brief Loads the fonts, before the window is shown.
+     * The font is small and the title screen needs it on the first frame, so it's not loaded by the AssetLoader.
+     * If it can't be loaded, a default font is used instead, so defaultFont is never null.
+     */
     private void loadFonts() {
-        try {
-            InputStream is = Objects.requireNonNull(getClass().getResourceAsStream("/fonts/Pixel-Life.ttf"), "Font resource not found");
+        try (InputStream is = Objects.requireNonNull(getClass().getResourceAsStream("/fonts/Pixel-Life.ttf"), "Font resource not found")) {
             defaultFont = Font.createFont(Font.TRUETYPE_FONT, is);
         } catch (Exception e) {
             LOGGER.severe("Error loading font: " + e.getMessage());
+            defaultFont = new Font(Font.SANS_SERIF, Font.PLAIN, 12);
         }
     }
 
     private void drawEntityRelatedStuff() {
-        for(Entity entity : gp.npcArray) {
+        for(Entity entity : gw.npcArray) {
             if(entity != null && entity.isNextToPlayer) {
                 drawBulb(entity);
             }
@@ -341,21 +385,21 @@ public class UI {
     }
 
     private int worldToScreenX(int worldX) {
-        return worldX - gp.player.worldX + gp.player.screenX;
+        return worldX - gw.player.getRenderX() + gw.player.screenX;
     }
 
     private int worldToScreenY(int worldY) {
-        return worldY - gp.player.worldY + gp.player.screenY;
+        return worldY - gw.player.getRenderY() + gw.player.screenY;
     }
 
     private boolean isPlayerReadyForNextDialogue() {
-        return gp.player.isReadyForNextDialogue;
+        return gw.player.isReadyForNextDialogue;
     }
 
     private int getCenteredX(String text) {
         int length = (int)g2d.getFontMetrics().getStringBounds(text, g2d).getWidth();
 
-        return (gp.WINDOW_WIDTH - length) / 2;
+        return (gw.WINDOW_WIDTH - length) / 2;
     }
 
 
@@ -0,0 +1,232 @@
+package com.lucafacchini;
+
+import com.lucafacchini.entity.Entity;
+import com.lucafacchini.entity.NpcStore;
+
+/**
+ * Chooses which NPCs of the crowd are updated in a tick, by their distance from the player. (Level of detail)
+ *
+ * The NPCs of the crowd are divided in three tiers:
+ *  - NEAR: on the screen, or just outside it. They are updated every tick, and they are the NPCs drawn.
+ *  - MEDIUM: a bit farther. They are updated every MEDIUM_INTERVAL ticks.
+ *  - DORMANT: everything else. They are not updated at all.
+ * The NPCs of the crowd catch up the ticks they missed when they are updated again (See NpcStore),
+ * so a distant NPC still walks at the right speed, it just moves in bigger steps.
+ *
+ * The NPCs of npcArray are always updated, every tick: they are a few, and they can't catch up
+ * the ticks they missed. (They move a step per update, and they collide with the player and the objects)
+ *
+ * The NPCs of the crowd are found with their SpatialGrid, so the dormant ones are never visited,
+ * and the cost of a tick depends on the NPCs near the player, not on the size of the crowd.
+ * The medium tier is also limited by TIME_BUDGET_NS per tick: the NPCs that don't fit
+ * are updated (and catch up) in the next ticks.
+ *
+ * It must be used by the game thread.
+ */
+public class UpdateScheduler {
+
+    /**
+     * @brief Enumerator that contains how often an NPC is updated.
+     */
+    public enum Tier { NEAR, MEDIUM, DORMANT }
+
+    // Scheduler settings
+    public static final int NEAR_MARGIN = 2; // Cells around the screen that are in the NEAR tier
+    public static final int MEDIUM_MARGIN = 8; // Cells around the NEAR tier that are in the MEDIUM tier
+    public static final int MEDIUM_INTERVAL = 4; // Ticks between two updates of the MEDIUM tier
+    public static final long TIME_BUDGET_NS = 4_000_000; // Time for the MEDIUM tier of the crowd, in every tick. (A tick is 16.6 ms)
+    private static final int BATCH_SIZE = 256; // NPCs updated between two checks of the time
+
+    /**
+     * @brief false to always update the whole band of the medium tier.
+     * The time budget depends on the speed of the computer, so it must be disabled
+     * when the game has to be reproduced exactly. (See RandomService)
+     */
+    public boolean isTimeBudgetEnabled = true;
+
+    // Objects
+    private final GameWorld gw;
+
+    // The extent of the tiers around the player, in pixels (from the center to the side)
+    private final int nearHalfWidth, nearHalfHeight;
+    private final int mediumHalfWidth, mediumHalfHeight;
+
+    // Buffers for the NPCs of the crowd (indexes in the NpcStore)
+    private int[] ids = new int[1024];
+    private long[] found = new long[64]; // A bit for every NPC, to sort the ids
+    private final int[] batch = new int[BATCH_SIZE];
+    private int mediumBand = 0; // The band of the medium tier updated in this tick
+
+    // Statistics
+    private long updatedCount = 0;
+    private long tickCount = 0;
+    private int budgetCuts = 0;
+
+    /**
+     * @brief Constructor of the UpdateScheduler class.
+     * @param gw The GameWorld instance.
+     */
+    public UpdateScheduler(GameWorld gw) {
+        this.gw = gw;
+
+        nearHalfWidth = gw.WINDOW_WIDTH / 2 + NEAR_MARGIN * gw.TILE_SIZE;
+        nearHalfHeight = gw.WINDOW_HEIGHT / 2 + NEAR_MARGIN * gw.TILE_SIZE;
+        mediumHalfWidth = nearHalfWidth + MEDIUM_MARGIN * gw.TILE_SIZE;
+        mediumHalfHeight = nearHalfHeight + MEDIUM_MARGIN * gw.TILE_SIZE;
+    }
+
+
+    /**
+     * @brief Returns the tier of a point of the world.
+     *
+     * @param x The x coordinate of the point.
+     * @param y The y coordinate of the point.
+     * @return The tier.
+     */
+    public Tier getTier(int x, int y) {
+        int distanceX = Math.abs(x - getCenterX());
+        int distanceY = Math.abs(y - getCenterY());
+
+        if (distanceX <= nearHalfWidth && distanceY <= nearHalfHeight) return Tier.NEAR;
+        if (distanceX <= mediumHalfWidth && distanceY <= mediumHalfHeight) return Tier.MEDIUM;
+        return Tier.DORMANT;
+    }
+
+
+    /**
+     * @brief Updates the NPCs whose turn it is. It's called by the game once per tick.
+     */
+    public void update() {
+        updateEntities();
+        updateCrowd();
+        tickCount++;
+    }
+
+
+    /**
+     * @brief Updates all the NPCs of npcArray. (See the class documentation)
+     */
+    private void updateEntities() {
+        for (int i = 0; i < gw.npcArray.length; i++) {
+            Entity npc = gw.npcArray[i];
+            if (npc == null) continue;
+
+            npc.update();
+            gw.cm.updateNPC(i); // Keep the collision grid in sync with the new position
+        }
+    }
+
+
+    /**
+     * @brief Updates the NPCs of the crowd: all the near ones, and the medium ones whose turn it is.
+     * The medium tier is divided in MEDIUM_INTERVAL horizontal bands, and a single band is updated per tick.
+     * If the time budget ends before the band is complete, the same band continues in the next tick.
+     */
+    private void updateCrowd() {
+        NpcStore crowd = gw.crowd;
+        if (crowd.count == 0) return;
+
+        long startTime = System.nanoTime();
+
+        // NEAR: every tick
+        int nearCount = queryAround(getCenterY() - nearHalfHeight, nearHalfHeight * 2, nearHalfWidth);
+        crowd.update(ids, nearCount);
+        crowd.publishVisible(ids, nearCount); // The renderer can't read the grid (See NpcStore.draw())
+        updatedCount += nearCount;
+
+        // MEDIUM: the NPCs of the current band that weren't updated in the last MEDIUM_INTERVAL ticks
+        int bandHeight = (mediumHalfHeight * 2 + MEDIUM_INTERVAL - 1) / MEDIUM_INTERVAL;
+        int bandY = getCenterY() - mediumHalfHeight + mediumBand * bandHeight;
+        int mediumCount = queryAround(bandY, bandHeight, mediumHalfWidth);
+
+        int dueCount = 0;
+        for (int k = 0; k < mediumCount; k++) {
+            if (gw.tick - crowd.lastUpdateTick[ids[k]] >= MEDIUM_INTERVAL) {
+                ids[dueCount++] = ids[k]; // The near NPCs were just updated, so they are skipped
+            }
+        }
+
+        // At least a batch per tick, so the band always advances
+        for (int from = 0; from < dueCount; from += BATCH_SIZE) {
+            int length = Math.min(BATCH_SIZE, dueCount - from);
+            System.arraycopy(ids, from, batch, 0, length);
+            crowd.update(batch, length);
+            updatedCount += length;
+
+            if (isTimeBudgetEnabled && from + length < dueCount && System.nanoTime() - startTime > TIME_BUDGET_NS) {
+                budgetCuts++;
+                return; // The rest of the band waits for the next tick (and catches up)
+            }
+        }
+
+        mediumBand = (mediumBand + 1) % MEDIUM_INTERVAL;
+    }
+
+
+    /**
+     * @brief Finds the NPCs of the crowd in a rectangle around the player, and puts them in ids.
+     * The NPCs are sorted by index, so their arrays are read in order. (Much faster than in the order of the cells)
+     *
+     * @param y The top of the rectangle.
+     * @param height The height of the rectangle.
+     * @param halfWidth The distance between the player and the sides of the rectangle.
+     * @return The number of NPCs found.
+     */
+    private int queryAround(int y, int height, int halfWidth) {
+        NpcStore crowd = gw.crowd;
+        int x = getCenterX() - halfWidth;
+
+        int count;
+        while ((count = crowd.query(x, y, halfWidth * 2, height, ids)) > ids.length) {
+            ids = new int[Integer.highestOneBit(count) * 2];
+        }
+
+        // Sort with a bitmap of the indexes: mark the NPCs found, then read the marks in order
+        int words = (crowd.count + 63) >>> 6;
+        if (found.length < words) {
+            found = new long[words * 2];
+        }
+        for (int k = 0; k < count; k++) {
+            found[ids[k] >>> 6] |= 1L << ids[k];
+        }
+
+        int sorted = 0;
+        for (int w = 0; w < words; w++) {
+            long bits = found[w];
+            while (bits != 0) {
+                ids[sorted++] = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+            }
+            found[w] = 0;
+        }
+        return sorted;
+    }
+
+
+    private int getCenterX() {
+        return gw.player.worldX + gw.TILE_SIZE / 2;
+    }
+
+
+    private int getCenterY() {
+        return gw.player.worldY + gw.TILE_SIZE / 2;
+    }
+
+
+    /**
+     * @brief Returns the average number of NPCs of the crowd updated in a tick.
+     * @return The average since the game started.
+     */
+    public double getAverageCrowdUpdates() {
+        return tickCount == 0 ? 0 : (double) updatedCount / tickCount;
+    }
+
+
+    /**
+     * @brief Returns how many times the time budget stopped the medium tier.
+     * @return The number of ticks that ran out of time.
+     */
+    public int getBudgetCuts() {
+        return budgetCuts;
+    }
+}
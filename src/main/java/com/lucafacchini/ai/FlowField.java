@@ -0,0 +1,213 @@
+package com.lucafacchini.ai;
+
+import com.lucafacchini.GameWorld;
+import com.lucafacchini.entity.Entity;
+
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A map of directions toward a target cell, shared by every NPC that walks to the same target.
+ *
+ * A single breadth-first search from the target finds, for every walkable cell of the map, the direction
+ * of the next cell of a shortest path to the target. Then any number of NPCs can read their direction
+ * with a single array read, instead of searching a path each. (See PathFinder for the paths of a single NPC)
+ *
+ * The walkable cells are the ones that are not solid. (See TileManager.isSolid())
+ *
+ * When the target moves to another cell, the field is built again, in the background: the search
+ * continues for at most CELL_BUDGET_PER_TICK cells per tick, and the NPCs keep reading the old field
+ * until the new one is complete. So the cost of a tick doesn't depend on the number of NPCs,
+ * and it's never more than the budget.
+ *
+ * It must be used by the game thread.
+ */
+public class FlowField {
+
+    // Debugging
+    private static final Logger LOGGER = Logger.getLogger(FlowField.class.getName());
+
+    // FlowField settings
+    public static final int CELL_BUDGET_PER_TICK = 2_000; // Cells searched per tick.
+    public static final byte NO_DIRECTION = -1; // The target itself, and the cells that can't reach it.
+
+    private static final byte UP = (byte) Entity.Direction.UP.ordinal();
+    private static final byte DOWN = (byte) Entity.Direction.DOWN.ordinal();
+    private static final byte LEFT = (byte) Entity.Direction.LEFT.ordinal();
+    private static final byte RIGHT = (byte) Entity.Direction.RIGHT.ordinal();
+
+    // Objects
+    private final GameWorld gw;
+    private int columns, rows;
+
+    // The complete field, read by the NPCs (indexed by row * columns + column)
+    private byte[] directions; // The ordinal of the Entity.Direction to walk to, or NO_DIRECTION
+    private int[] distances; // The number of cells to the target, or -1 if it can't be reached
+
+    // The field being built
+    private byte[] nextDirections;
+    private int[] nextDistances;
+    private int[] queue; // The cells to search, in order of distance
+    private int queueHead = 0, queueTail = 0;
+    private boolean isBuilding = false;
+
+    // The target of the complete field, and of the field being built
+    private int targetColumn = -1, targetRow = -1;
+    private int nextTargetColumn = -1, nextTargetRow = -1;
+    private int collisionVersion; // The collision version of the map used by the field being built
+
+    /**
+     * @brief Constructor of the FlowField class.
+     * The arrays are created with the first target, when the size of the map is known.
+     *
+     * @param gw The GameWorld instance.
+     */
+    public FlowField(GameWorld gw) {
+        this.gw = gw;
+    }
+
+
+    /**
+     * @brief Changes the target of the field.
+     * Nothing happens if the target is still in the same cell (and the map hasn't changed).
+     * Otherwise a new field is built by the next calls of update().
+     *
+     * @param column The column of the target.
+     * @param row The row of the target.
+     */
+    public void setTarget(int column, int row) {
+        allocateBuffers();
+
+        boolean isSameTarget = isBuilding
+                ? column == nextTargetColumn && row == nextTargetRow
+                : column == targetColumn && row == targetRow;
+
+        if (isSameTarget && collisionVersion == gw.tm.getCollisionVersion()) return;
+        if (column < 0 || row < 0 || column >= columns || row >= rows) return;
+
+        // Start a new search from the target
+        nextTargetColumn = column;
+        nextTargetRow = row;
+        collisionVersion = gw.tm.getCollisionVersion();
+        Arrays.fill(nextDirections, NO_DIRECTION);
+        Arrays.fill(nextDistances, -1);
+
+        int target = row * columns + column;
+        nextDistances[target] = 0;
+        queue[0] = target;
+        queueHead = 0;
+        queueTail = 1;
+        isBuilding = true;
+    }
+
+
+    /**
+     * @brief Continues to build the field, for at most CELL_BUDGET_PER_TICK cells.
+     * When the field is complete, it replaces the one read by the NPCs.
+     * It's called by the game once per tick.
+     */
+    public void update() {
+        if (!isBuilding) return;
+
+        int searched = 0;
+        while (queueHead < queueTail && searched < CELL_BUDGET_PER_TICK) {
+            int cell = queue[queueHead++];
+            int column = cell % columns;
+            int row = cell / columns;
+            searched++;
+
+            // The neighbours walk toward this cell
+            if (row > 0) visit(cell - columns, column, row - 1, cell, DOWN);
+            if (row < rows - 1) visit(cell + columns, column, row + 1, cell, UP);
+            if (column > 0) visit(cell - 1, column - 1, row, cell, RIGHT);
+            if (column < columns - 1) visit(cell + 1, column + 1, row, cell, LEFT);
+        }
+
+        if (queueHead == queueTail) {
+            swapFields();
+        }
+    }
+
+
+    /**
+     * @brief Adds a neighbour to the search, if it's walkable and it wasn't found yet.
+     */
+    private void visit(int cell, int column, int row, int from, byte direction) {
+        if (nextDistances[cell] != -1 || gw.tm.isSolid(column, row)) return;
+
+        nextDistances[cell] = nextDistances[from] + 1;
+        nextDirections[cell] = direction;
+        queue[queueTail++] = cell;
+    }
+
+
+    /**
+     * @brief Replaces the field read by the NPCs with the one just built.
+     */
+    private void swapFields() {
+        byte[] swapDirections = directions;
+        directions = nextDirections;
+        nextDirections = swapDirections;
+
+        int[] swapDistances = distances;
+        distances = nextDistances;
+        nextDistances = swapDistances;
+
+        targetColumn = nextTargetColumn;
+        targetRow = nextTargetRow;
+        isBuilding = false;
+
+        LOGGER.log(Level.FINE, "Flow field built toward {0}, {1}", new Object[]{targetColumn, targetRow});
+    }
+
+
+    /**
+     * @brief Returns the direction to walk to, from a cell, to reach the target.
+     *
+     * @param column The column of the cell.
+     * @param row The row of the cell.
+     * @return The ordinal of the Entity.Direction, or NO_DIRECTION at the target, in the cells that
+     *         can't reach it, outside the map, and before the first field is complete.
+     */
+    public byte getDirection(int column, int row) {
+        if (directions == null || column < 0 || row < 0 || column >= columns || row >= rows) {
+            return NO_DIRECTION;
+        }
+        return directions[row * columns + column];
+    }
+
+
+    /**
+     * @brief Returns the number of cells between a cell and the target.
+     *
+     * @param column The column of the cell.
+     * @param row The row of the cell.
+     * @return The distance, or -1 if the target can't be reached.
+     */
+    public int getDistance(int column, int row) {
+        if (distances == null || column < 0 || row < 0 || column >= columns || row >= rows) {
+            return -1;
+        }
+        return distances[row * columns + column];
+    }
+
+
+    /**
+     * @brief Creates the arrays of the field, the first time the size of the map is known.
+     */
+    private void allocateBuffers() {
+        if (directions != null) return;
+
+        columns = gw.tm.columns;
+        rows = gw.tm.rows;
+        directions = new byte[columns * rows];
+        distances = new int[columns * rows];
+        nextDirections = new byte[columns * rows];
+        nextDistances = new int[columns * rows];
+        queue = new int[columns * rows];
+
+        Arrays.fill(directions, NO_DIRECTION);
+        Arrays.fill(distances, -1);
+    }
+}
@@ -0,0 +1,452 @@
+package com.lucafacchini.ai;
+
+import com.lucafacchini.GameWorld;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Finds the paths of the NPCs on the cells of the map, with the A* algorithm.
+ *
+ * A cell is walkable if it's not solid (See TileManager.isSolid()), and the NPCs move
+ * between the four neighbours of a cell. (Up, down, left and right, like the entities)
+ *
+ * The searches don't run when they are requested: the requests are queued, and update()
+ * searches for at most NODE_BUDGET_PER_TICK cells per tick. A long search continues at the next tick,
+ * so a lot of requests at the same time never slow down a single tick.
+ *
+ * To avoid allocations, the state of the search is stored in arrays as big as the map, that are
+ * reused by every search. A "generation" number tells which values belong to the current search,
+ * so the arrays are never cleared. The open set is a binary heap of cells, in a primitive array.
+ *
+ * The last paths found are cached by start and goal, and thrown away when the map changes.
+ * An NPC that is stuck on its path (for example behind another NPC) can ask for a path that avoids
+ * the blocked cell: that search never uses the cache, otherwise it would get the same path again.
+ * It must be used by the game thread.
+ */
+public class PathFinder {
+
+    // Debugging
+    private static final Logger LOGGER = Logger.getLogger(PathFinder.class.getName());
+
+    // PathFinder settings
+    public static final int NODE_BUDGET_PER_TICK = 2_000; // Cells searched per tick, shared by every request.
+    public static final int MAX_CACHED_PATHS = 128;
+
+    private static final int[] NO_PATH = new int[0];
+
+    /**
+     * @brief A request for a path, from a cell to another one.
+     * The cells are indexed by row * columns + column.
+     */
+    public static class PathRequest {
+
+        public enum Status { PENDING, FOUND, NOT_FOUND, CANCELLED }
+
+        public final int start, goal;
+        public final int blockedCell; // A walkable cell that the path must avoid, or -1
+        public Status status = Status.PENDING;
+
+        /**
+         * @brief The cells of the path, from the one after the start to the goal. (Empty if start == goal)
+         * It's only set when the status is FOUND. The array is shared with the cache: it must not be modified.
+         */
+        public int[] path = NO_PATH;
+
+        PathRequest(int start, int goal, int blockedCell) {
+            this.start = start;
+            this.goal = goal;
+            this.blockedCell = blockedCell;
+        }
+
+        /**
+         * @brief Cancels the request, if it's still pending. (For example when the NPC needs another path)
+         */
+        public void cancel() {
+            if (status == Status.PENDING) {
+                status = Status.CANCELLED;
+            }
+        }
+    }
+
+    // Objects
+    private final GameWorld gw;
+
+    // Requests
+    private final ArrayDeque<PathRequest> requests = new ArrayDeque<>();
+    private PathRequest currentRequest = null; // The request being searched
+
+    // Cache of the last paths, indexed by start and goal (the least recently used is removed first)
+    private final LinkedHashMap<Long, int[]> cache = new LinkedHashMap<>(MAX_CACHED_PATHS * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+            return size() > MAX_CACHED_PATHS;
+        }
+    };
+    private int cacheVersion = -1; // The collision version of the map when the cached paths were found
+
+    // State of the search, indexed by cell (valid only where generation[cell] == currentGeneration)
+    private int columns, rows;
+    private int[] generation;
+    private int[] costFromStart; // The cost of the best known path from the start
+    private int[] parent; // The previous cell of the best known path
+    private boolean[] isClosed; // true when the best path to the cell is known
+    private int currentGeneration = 0;
+    private int searchVersion; // The collision version of the map when the current search started
+    private int blockedCell = -1; // The cell avoided by the current search, or -1
+
+    // Open set: a binary heap of cells, ordered by estimated total cost
+    private int[] heapCells = new int[256];
+    private int[] heapCosts = new int[256];
+    private int heapSize = 0;
+
+    // Statistics
+    private long searchedNodes = 0;
+    private int foundPaths = 0;
+    private int cacheHits = 0;
+
+    /**
+     * @brief Constructor of the PathFinder class.
+     * The buffers are created with the first request, when the size of the map is known.
+     *
+     * @param gw The GameWorld instance.
+     */
+    public PathFinder(GameWorld gw) {
+        this.gw = gw;
+    }
+
+
+    /**
+     * @brief Requests a path between two cells.
+     * If the path is cached, or the goal can't be reached at all, the request is completed immediately.
+     * Otherwise it's completed by one of the next calls of update().
+     *
+     * @param startColumn The column of the start.
+     * @param startRow The row of the start.
+     * @param goalColumn The column of the goal.
+     * @param goalRow The row of the goal.
+     * @return The request. Its status tells when the path is ready.
+     */
+    public PathRequest request(int startColumn, int startRow, int goalColumn, int goalRow) {
+        return request(startColumn, startRow, goalColumn, goalRow, -1, -1);
+    }
+
+
+    /**
+     * @brief Requests a path between two cells, that doesn't pass through a blocked cell.
+     * It's used when an NPC is stuck on its path: the blocked cell is the one it couldn't enter.
+     * The path is never read from the cache or saved in it, because it depends on the blocked cell.
+     * The start and the goal can't be blocked, so a blocked cell equal to one of them is ignored.
+     *
+     * @param startColumn The column of the start.
+     * @param startRow The row of the start.
+     * @param goalColumn The column of the goal.
+     * @param goalRow The row of the goal.
+     * @param blockedColumn The column of the blocked cell, or -1 for none.
+     * @param blockedRow The row of the blocked cell, or -1 for none.
+     * @return The request. Its status tells when the path is ready.
+     */
+    public PathRequest request(int startColumn, int startRow, int goalColumn, int goalRow, int blockedColumn, int blockedRow) {
+        allocateBuffers();
+
+        if (!isInMap(startColumn, startRow) || !isInMap(goalColumn, goalRow)) {
+            PathRequest request = new PathRequest(-1, -1, -1);
+            request.status = PathRequest.Status.NOT_FOUND;
+            return request;
+        }
+
+        int start = startRow * columns + startColumn;
+        int goal = goalRow * columns + goalColumn;
+        int blocked = isInMap(blockedColumn, blockedRow) ? blockedRow * columns + blockedColumn : -1;
+        if (blocked == start || blocked == goal) {
+            blocked = -1;
+        }
+
+        PathRequest request = new PathRequest(start, goal, blocked);
+
+        if (gw.tm.isSolid(goalColumn, goalRow)) {
+            request.status = PathRequest.Status.NOT_FOUND;
+        } else if (!completeFromCache(request)) {
+            requests.add(request);
+        }
+        return request;
+    }
+
+
+    /**
+     * @brief Searches the queued requests, for at most NODE_BUDGET_PER_TICK cells.
+     * It's called by the game once per tick.
+     */
+    public void update() {
+        int budget = NODE_BUDGET_PER_TICK;
+
+        while (budget > 0) {
+            if (currentRequest != null && currentRequest.status == PathRequest.Status.CANCELLED) {
+                currentRequest = null;
+            }
+
+            if (currentRequest == null) {
+                currentRequest = requests.poll();
+                if (currentRequest == null) return; // Nothing to do
+                if (currentRequest.status != PathRequest.Status.PENDING || completeFromCache(currentRequest)) {
+                    currentRequest = null;
+                    continue;
+                }
+                startSearch(currentRequest);
+            }
+
+            budget -= search(budget);
+        }
+    }
+
+
+    /**
+     * @brief Completes a request with a cached path, if there is one.
+     *
+     * @return true if the request is completed.
+     */
+    private boolean completeFromCache(PathRequest request) {
+        if (request.blockedCell >= 0) return false; // The cached paths don't avoid the cell
+
+        if (cacheVersion != gw.tm.getCollisionVersion()) {
+            cache.clear();
+            cacheVersion = gw.tm.getCollisionVersion();
+        }
+
+        int[] path = cache.get(cacheKey(request.start, request.goal));
+        if (path == null) return false;
+
+        request.path = path;
+        request.status = PathRequest.Status.FOUND;
+        cacheHits++;
+        return true;
+    }
+
+
+    /**
+     * @brief Starts a new search: a new generation, and only the start in the open set.
+     */
+    private void startSearch(PathRequest request) {
+        if (++currentGeneration == 0) { // Overflow: the old values could look valid again
+            Arrays.fill(generation, 0);
+            currentGeneration = 1;
+        }
+
+        heapSize = 0;
+        searchVersion = gw.tm.getCollisionVersion();
+        blockedCell = request.blockedCell;
+        visit(request.start, 0, -1, request.goal);
+    }
+
+
+    /**
+     * @brief Continues the search of the current request.
+     *
+     * @param budget The maximum number of cells to search.
+     * @return The number of cells searched.
+     */
+    private int search(int budget) {
+        PathRequest request = currentRequest;
+        int searched = 0;
+
+        while (searched < budget) {
+            if (heapSize == 0) {
+                finish(request, null); // Every reachable cell has been searched
+                return searched;
+            }
+
+            int cell = pop();
+            if (isClosed[cell]) continue; // An older copy of a cell that was improved later
+            isClosed[cell] = true;
+            searched++;
+            searchedNodes++;
+
+            if (cell == request.goal) {
+                finish(request, buildPath(request.start, request.goal));
+                return searched;
+            }
+
+            int column = cell % columns;
+            int row = cell / columns;
+            int cost = costFromStart[cell] + 1;
+
+            if (row > 0) visitIfWalkable(cell - columns, column, row - 1, cost, cell, request.goal);
+            if (row < rows - 1) visitIfWalkable(cell + columns, column, row + 1, cost, cell, request.goal);
+            if (column > 0) visitIfWalkable(cell - 1, column - 1, row, cost, cell, request.goal);
+            if (column < columns - 1) visitIfWalkable(cell + 1, column + 1, row, cost, cell, request.goal);
+        }
+
+        return searched;
+    }
+
+
+    /**
+     * @brief Adds a neighbour to the open set, if it's walkable and the new path to it is better.
+     */
+    private void visitIfWalkable(int cell, int column, int row, int cost, int from, int goal) {
+        if (generation[cell] == currentGeneration && (isClosed[cell] || costFromStart[cell] <= cost)) {
+            return;
+        }
+        if (cell == blockedCell || gw.tm.isSolid(column, row)) return;
+
+        visit(cell, cost, from, goal);
+    }
+
+
+    /**
+     * @brief Records the best known path to a cell, and adds the cell to the open set.
+     */
+    private void visit(int cell, int cost, int from, int goal) {
+        generation[cell] = currentGeneration;
+        costFromStart[cell] = cost;
+        parent[cell] = from;
+        isClosed[cell] = false;
+
+        // Estimated total cost: the cost so far, plus the Manhattan distance to the goal
+        int estimate = cost + Math.abs(cell % columns - goal % columns) + Math.abs(cell / columns - goal / columns);
+        push(cell, estimate);
+    }
+
+
+    /**
+     * @brief Completes the current request, and caches its path.
+     *
+     * @param request The request.
+     * @param path The path, or null if the goal can't be reached.
+     */
+    private void finish(PathRequest request, int[] path) {
+        if (path != null) {
+            request.path = path;
+            request.status = PathRequest.Status.FOUND;
+            // Not cached if the map changed during the search, or if the path avoids a blocked cell
+            if (searchVersion == gw.tm.getCollisionVersion() && request.blockedCell < 0) {
+                cache.put(cacheKey(request.start, request.goal), path);
+            }
+            foundPaths++;
+        } else {
+            request.status = PathRequest.Status.NOT_FOUND;
+            LOGGER.log(Level.FINE, "No path from cell {0} to cell {1}", new Object[]{request.start, request.goal});
+        }
+        currentRequest = null;
+    }
+
+
+    /**
+     * @brief Follows the parents from the goal back to the start.
+     */
+    private int[] buildPath(int start, int goal) {
+        int length = costFromStart[goal];
+        int[] path = new int[length];
+
+        for (int cell = goal, i = length - 1; cell != start; cell = parent[cell], i--) {
+            path[i] = cell;
+        }
+        return path;
+    }
+
+
+    /**
+     * @brief Adds a cell to the heap.
+     */
+    private void push(int cell, int cost) {
+        if (heapSize == heapCells.length) {
+            heapCells = Arrays.copyOf(heapCells, heapSize * 2);
+            heapCosts = Arrays.copyOf(heapCosts, heapSize * 2);
+        }
+
+        // Move the cell up until its parent is cheaper
+        int i = heapSize++;
+        while (i > 0) {
+            int parentIndex = (i - 1) / 2;
+            if (heapCosts[parentIndex] <= cost) break;
+            heapCells[i] = heapCells[parentIndex];
+            heapCosts[i] = heapCosts[parentIndex];
+            i = parentIndex;
+        }
+        heapCells[i] = cell;
+        heapCosts[i] = cost;
+    }
+
+
+    /**
+     * @brief Removes the cheapest cell from the heap.
+     */
+    private int pop() {
+        int result = heapCells[0];
+        int cell = heapCells[--heapSize];
+        int cost = heapCosts[heapSize];
+
+        // Move the last cell down from the root until its children are more expensive
+        int i = 0;
+        while (true) {
+            int child = i * 2 + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && heapCosts[child + 1] < heapCosts[child]) child++;
+            if (heapCosts[child] >= cost) break;
+            heapCells[i] = heapCells[child];
+            heapCosts[i] = heapCosts[child];
+            i = child;
+        }
+        heapCells[i] = cell;
+        heapCosts[i] = cost;
+        return result;
+    }
+
+
+    /**
+     * @brief Creates the buffers of the search, the first time the size of the map is known.
+     */
+    private void allocateBuffers() {
+        if (generation != null) return;
+
+        columns = gw.tm.columns;
+        rows = gw.tm.rows;
+        generation = new int[columns * rows];
+        costFromStart = new int[columns * rows];
+        parent = new int[columns * rows];
+        isClosed = new boolean[columns * rows];
+    }
+
+
+    private boolean isInMap(int column, int row) {
+        return column >= 0 && row >= 0 && column < gw.tm.columns && row < gw.tm.rows;
+    }
+
+
+    private static long cacheKey(int start, int goal) {
+        return (long) start << 32 | (goal & 0xFFFFFFFFL);
+    }
+
+
+    /**
+     * @brief Returns the number of columns of the map, to convert the cells of a path to columns and rows.
+     * @return The number of columns.
+     */
+    public int getColumns() {
+        return gw.tm.columns;
+    }
+
+
+    public int getPendingRequestCount() {
+        return requests.size() + (currentRequest != null ? 1 : 0);
+    }
+
+
+    public long getSearchedNodes() {
+        return searchedNodes;
+    }
+
+
+    public int getFoundPaths() {
+        return foundPaths;
+    }
+
+
+    public int getCacheHits() {
+        return cacheHits;
+    }
+}
@@ -1,17 +1,12 @@
 package com.lucafacchini.entity;
 
-import com.lucafacchini.GamePanel;
-import com.lucafacchini.Utilities;
+import com.lucafacchini.GameWorld;
+import com.lucafacchini.RandomService;
+import com.lucafacchini.ai.PathFinder;
 import com.lucafacchini.stats.Speed;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Objects;
-import java.util.Random;
 import java.util.logging.Logger;
 
 
@@ -30,28 +25,27 @@ public class Entity {
 
     // Sprite settings and declarations
     /**
-     * @brief Enumerator that contains all the possible directions of the entity.
-     * This enumerator is only used to initialize the keys of the hashmap and
-     * to allow the backend to change the sprite image based on the direction.
+     * @brief Enumerator that contains all the animations of the entity.
+     * This enumerator is only used to index the animations of the SpriteSet.
      * The actual direction of the player has another enumerator.
+     *
+     * The order must follow Status and Direction: the animation of a status and a direction
+     * is status * 4 + direction. (See SpriteSet.animationOf())
      */
     public enum SpriteImagesEnum {
-        UP_MOVING, DOWN_MOVING, LEFT_MOVING, RIGHT_MOVING,
-        UP_IDLING, DOWN_IDLING, LEFT_IDLING, RIGHT_IDLING
+        UP_IDLING, DOWN_IDLING, LEFT_IDLING, RIGHT_IDLING,
+        UP_MOVING, DOWN_MOVING, LEFT_MOVING, RIGHT_MOVING
     }
 
     /**
-     * @brief The hashmap that contains the sprite images of the entity.
-     * The keys are the directions of the entity, and the values are the sprite images of the entity.
+     * @brief The sprite images of the entity, for every SpriteImagesEnum.
+     * They are shared by every entity of the same type. (See SpriteRegistry)
      */
-    public HashMap<SpriteImagesEnum, ArrayList<BufferedImage>> spriteImages = new HashMap<>();
-
-    protected int spriteCounterMultiplier; // This variable is used to check the sprite animation speed. It's incremented by 1 every frame.
-    protected int spriteFramesCounter = 0; // Frames that has passed since the last sprite change.
-    protected int spriteImageNum = 1; // The current sprite index
+    public SpriteSet sprites;
 
-    // TODO: This variable is defined in every subclass. It should be defined here.
-    private int NUM_MOVING_SPRITES;
+    protected int animation = -1; // The current animation (See SpriteSet.animationOf())
+    protected int animationStartTick = 0; // The tick the current animation started. (See GameWorld.tick)
+    protected int spriteFrameIndex = -1; // The current frame in the SpriteSet, updated every tick
 
 
     // Entity properties
@@ -68,20 +62,17 @@ public class Entity {
     public Direction previousDirection = Direction.DOWN;
 
     public int worldX, worldY; // The position of the entity in the world.
+    public int previousWorldX, previousWorldY; // The position of the entity at the previous tick. (Used for interpolation)
     //public int speed; // The speed of the entity.
 
     // Stats that are shared by all entities.
     public Speed speed;
 
-    public Rectangle boundingBox; // The bounding box of the entity.
+    public Rectangle boundingBox; // The bounding box of the entity, relative to its position. (It's never moved, see getBoundingBoxWorldX())
     public int boundingBoxDefaultX, boundingBoxDefaultY;
     public int boundingBoxDefaultWidth, boundingBoxDefaultHeight;
 
 
-    // Utilities
-    private final Utilities utilities = new Utilities();
-
-
     // Collision booleans
     public boolean isCollidingWithTile = false;
     public boolean isCollidingWithObject = false;
@@ -92,6 +83,24 @@ public class Entity {
     // Actions 
     public int actionCounter = 0; // Counter that tracks how much time before next action.
 
+    /**
+     * @brief Enumerator that contains what the entity does when it's free to move.
+     * WANDER: walks in a random direction, changed every 120 ticks. (See setAction())
+     * FOLLOW_PLAYER: walks to the player, and stops next to it.
+     * GO_TO: walks to a cell of the map, and stops there. (See walkTo())
+     */
+    public enum Behavior { WANDER, FOLLOW_PLAYER, GO_TO }
+    public Behavior behavior = Behavior.WANDER;
+
+    // Navigation (used by FOLLOW_PLAYER and GO_TO, see PathFinder)
+    public static final int MAX_STUCK_TICKS = 30; // Ticks without moving before looking for a new path
+    private int targetColumn, targetRow; // The goal of GO_TO
+    private PathFinder.PathRequest pathRequest; // The current path, or the one being searched
+    private int pathIndex = 0; // The next cell of the path
+    private int stuckTicks = 0;
+
+    protected final RandomService.Stream random; // The random numbers of this entity (See RandomService)
+
 
     // Dialogues
     public String[] dialogues = new String[20]; // TODO: Change to HashMap
@@ -101,124 +110,45 @@ public class Entity {
     public boolean blockMovement = false; // If true, the entity cannot move. It's used when the game is in dialogue state.
 
 
-    // GamePanel
-    GamePanel gp;
+    // GameWorld
+    GameWorld gw;
 
 
     /**
      * @brief Constructor of the Entity class.
-     * Initializes the bounding box of the entity and the GamePanel.
+     * Initializes the bounding box of the entity and the GameWorld.
      *
-     * @param gp the GamePanel object providing game settings and state.
+     * @param gw the GameWorld object providing game settings and state.
      */
-    public Entity(GamePanel gp) {
-        this.gp = gp;
-        boundingBox = new Rectangle(0, 0, gp.TILE_SIZE, gp.TILE_SIZE);
-    }
-
-
-    /**
-     * @brief Method that sets the sprite timers.
-     * @param spriteCounterMultiplier the sprite counter multiplier. (After how many frames the sprite should change.)
-     * @param NUM_MOVING_SPRITES the number of moving sprites. (The number of sprite images for each direction.)
-     */
-    void setSpriteTimers(int spriteCounterMultiplier, int NUM_MOVING_SPRITES) {
-        this.spriteCounterMultiplier = spriteCounterMultiplier;
-        this.NUM_MOVING_SPRITES = NUM_MOVING_SPRITES;
+    public Entity(GameWorld gw) {
+        this.gw = gw;
+        random = gw.random.newStream();
+        boundingBox = new Rectangle(0, 0, gw.TILE_SIZE, gw.TILE_SIZE);
     }
 
 
     /**
      * @brief Method that loads the sprite images of the entity.
+     * The images are decoded and rescaled in parallel (see AssetLoader), they are ready when the game starts.
+     * The rescaled images are cached on the disk. (See ImageCache)
+     * The entities of the same type share the same images. (See SpriteRegistry)
+     *
      * @param folderPath the path of the folder containing the sprite images.
      * @param NUM_MOVING the number of moving sprites.
      * @param NUM_IDLING the number of idling sprites.
+     * @param MOVING_FRAME_TIME the ticks every moving sprite lasts.
+     * @param IDLING_FRAME_TIME the ticks every idling sprite lasts.
+     * @param WIDTH the width of the sprite. (Width should represent the width already rescaled in px.)
+     * @param HEIGHT the height of the sprite. (Height should represent the height already rescaled in px.)
      */
     public void loadSprites(String folderPath,
                             int NUM_MOVING,
-                            int NUM_IDLING) {
-
-        // Initialize hashmap
-        for (SpriteImagesEnum direction : SpriteImagesEnum.values()) {
-            spriteImages.put(direction, new ArrayList<>());
-        }
-
-        try {
-            for(int i = 0; i < NUM_MOVING; i++) {
-                spriteImages.get(SpriteImagesEnum.UP_MOVING).add(ImageIO.read(Objects.requireNonNull(getClass().getResourceAsStream("/" + folderPath + "/walk_up_" + (i+1) + ".png"))));
-                spriteImages.get(SpriteImagesEnum.DOWN_MOVING).add(ImageIO.read(Objects.requireNonNull(getClass().getResourceAsStream("/" + folderPath + "/walk_down_" + (i+1) + ".png"))));
-                spriteImages.get(SpriteImagesEnum.LEFT_MOVING).add(ImageIO.read(Objects.requireNonNull(getClass().getResourceAsStream("/" + folderPath + "/walk_left_" + (i+1) + ".png"))));
-                spriteImages.get(SpriteImagesEnum.RIGHT_MOVING).add(ImageIO.read(Objects.requireNonNull(getClass().getResourceAsStream("/" + folderPath + "/walk_right_" + (i+1) + ".png"))));
-            }
-
-            for(int i = 0; i < NUM_IDLING; i++) {
-                spriteImages.get(SpriteImagesEnum.UP_IDLING).add(ImageIO.read(Objects.requireNonNull(getClass().getResourceAsStream("/" + folderPath + "/idling/idling_up_" + (i+1) + ".png"))));
-                spriteImages.get(SpriteImagesEnum.DOWN_IDLING).add(ImageIO.read(Objects.requireNonNull(getClass().getResourceAsStream("/" + folderPath + "/idling/idling_down_" + (i+1) + ".png"))));
-                spriteImages.get(SpriteImagesEnum.LEFT_IDLING).add(ImageIO.read(Objects.requireNonNull(getClass().getResourceAsStream("/" + folderPath + "/idling/idling_left_" + (i+1) + ".png"))));
-                spriteImages.get(SpriteImagesEnum.RIGHT_IDLING).add(ImageIO.read(Objects.requireNonNull(getClass().getResourceAsStream("/" + folderPath + "/idling/idling_right_" + (i+1) + ".png"))));
-
-            }
-
-        } catch (IOException e) {
-            LOGGER.severe("Error loading images: " + e.getMessage());
-        }
-    }
-
-
-    /**
-     * @brief Secondary method that loads the sprite images of the entity.
-     * @param folderPath the path of the folder containing the sprite images.
-     * @param NUM_WALK_UP the number of walking up sprites.
-     * @param NUM_WALK_DOWN the number of walking down sprites.
-     * @param NUM_WALK_LEFT the number of walking left sprites.
-     * @param NUM_WALK_RIGHT the number of walking right sprites.
-     * @param NUM_IDLE_UP the number of idling up sprites.
-     * @param NUM_IDLE_DOWN the number of idling down sprites.
-     * @param NUM_IDLE_LEFT the number of idling left sprites.
-     * @param NUM_IDLE_RIGHT the number of idling right sprites.
-     */
-    public void loadSprites(String folderPath,
-                            int NUM_WALK_UP, int NUM_WALK_DOWN, int NUM_WALK_LEFT, int NUM_WALK_RIGHT,
-                            int NUM_IDLE_UP, int NUM_IDLE_DOWN, int NUM_IDLE_LEFT, int NUM_IDLE_RIGHT) {
-
-        // Initialize hashmap
-        for (SpriteImagesEnum direction : SpriteImagesEnum.values()) {
-            spriteImages.put(direction, new ArrayList<>());
-        }
-
-        try {
-            for(int i = 0; i < NUM_WALK_UP; i++) { spriteImages.get(SpriteImagesEnum.UP_MOVING).add(ImageIO.read(Objects.requireNonNull(getClass().getResourceAsStream("/" + folderPath + "/walk_up_" + (i+1) + ".png")))); }
-            for(int i = 0; i < NUM_WALK_DOWN; i++) { spriteImages.get(SpriteImagesEnum.DOWN_MOVING).add(ImageIO.read(Objects.requireNonNull(getClass().getResourceAsStream("/" + folderPath + "/walk_down_" + (i+1) + ".png")))); }
-            for(int i = 0; i < NUM_WALK_LEFT; i++) { spriteImages.get(SpriteImagesEnum.LEFT_MOVING).add(ImageIO.read(Objects.requireNonNull(getClass().getResourceAsStream("/" + folderPath + "/walk_left_" + (i+1) + ".png")))); }
-            for(int i = 0; i < NUM_WALK_RIGHT; i++) { spriteImages.get(SpriteImagesEnum.RIGHT_MOVING).add(ImageIO.read(Objects.requireNonNull(getClass().getResourceAsStream("/" + folderPath + "/walk_right_" + (i+1) + ".png")))); }
-
-            for(int i = 0; i < NUM_IDLE_UP; i++) { spriteImages.get(SpriteImagesEnum.UP_IDLING).add(ImageIO.read(Objects.requireNonNull(getClass().getResourceAsStream("/" + folderPath + "/idling/idling_up_" + (i+1) + ".png")))); }
-            for(int i = 0; i < NUM_IDLE_DOWN; i++) { spriteImages.get(SpriteImagesEnum.DOWN_IDLING).add(ImageIO.read(Objects.requireNonNull(getClass().getResourceAsStream("/" + folderPath + "/idling/idling_down_" + (i+1) + ".png")))); }
-            for(int i = 0; i < NUM_IDLE_LEFT; i++) { spriteImages.get(SpriteImagesEnum.LEFT_IDLING).add(ImageIO.read(Objects.requireNonNull(getClass().getResourceAsStream("/" + folderPath + "/idling/idling_left_" + (i+1) + ".png")))); }
-            for(int i = 0; i < NUM_IDLE_RIGHT; i++) { spriteImages.get(SpriteImagesEnum.RIGHT_IDLING).add(ImageIO.read(Objects.requireNonNull(getClass().getResourceAsStream("/" + folderPath + "/idling/idling_right_" + (i+1) + ".png")))); }
-        } catch (IOException e) {
-            LOGGER.severe("Error loading images: " + e.getMessage());
-        }
-    }
-
+                            int NUM_IDLING,
+                            int MOVING_FRAME_TIME,
+                            int IDLING_FRAME_TIME,
+                            int WIDTH, int HEIGHT) {
 
-    /**
-     * @brief Method that rescales the sprite images of the entity.
-     * @param WIDTH the width of the sprite. (Width should represent the width already rescaled in px.)
-     * @param HEIGHT the height of the sprite. (Height should represent the height already rescaled in px.)
-     */
-    public void rescaleSprites(int WIDTH, int HEIGHT) {
-        for (SpriteImagesEnum direction : SpriteImagesEnum.values()) {
-            ArrayList<BufferedImage> images = spriteImages.get(direction);
-
-            if (images != null) {
-                for (int i = 0; i < images.size(); i++) {
-                    if (images.get(i) != null) {
-                        images.set(i, utilities.rescaleImage(images.get(i), WIDTH, HEIGHT));
-                    }
-                }
-            }
-        }
+        sprites = gw.sprites.getSprites(folderPath, NUM_MOVING, NUM_IDLING, MOVING_FRAME_TIME, IDLING_FRAME_TIME, WIDTH, HEIGHT);
     }
 
 
@@ -233,7 +163,6 @@ public class Entity {
          */
         actionCounter++;
         if (actionCounter >= 120) { // TODO: Pass a different value for each NPC
-            Random random = new Random(); // TODO: Initialize this in the constructor
             int index = random.nextInt(4); // Random number between 0 and 3
 
             switch (index) {
@@ -252,7 +181,7 @@ public class Entity {
      * This is called every frame.
      */
     public void update() {
-        if (gp.gameStatus == GamePanel.GameStatus.RUNNING) {
+        if (gw.gameStatus == GameWorld.GameStatus.RUNNING) {
             /*
              * Handles the transition from the dialogue state back to the running state.
              * If the entity was previously in dialogue, it resumes its movement.
@@ -267,20 +196,26 @@ public class Entity {
                 }
             }
 
-            setAction(); // @NOTE: It has to stay before checkCollisions().
+            if (behavior == Behavior.WANDER) {
+                setAction(); // @NOTE: It has to stay before checkCollisions().
+            } else {
+                updatePath();
+            }
             updateSprite();
             checkCollisions();
 
-            boolean isColliding = isCollidingWithTile || isCollidingWithEntity || isCollidingWithObject;
-
-            if(!isColliding && !isNextToPlayer) {
+            if(!isNextToPlayer) {
                 currentStatus = Status.MOVING;
-                move();
-            } else if(!isColliding && isNextToPlayer) {
+                if (behavior == Behavior.WANDER) {
+                    move(); // Stops against the obstacles, and sets the collision booleans.
+                } else {
+                    followPath();
+                }
+            } else {
                 currentStatus = Status.IDLING;
                 facePlayer();
             }
-        } else if (gp.gameStatus == GamePanel.GameStatus.DIALOGUE) {
+        } else if (gw.gameStatus == GameWorld.GameStatus.DIALOGUE) {
             /*
              * Handles the transition from the running state to the dialogue state.
              * The entity stops moving and faces the player during the dialogue.
@@ -292,7 +227,7 @@ public class Entity {
                 currentStatus = Status.IDLING; // Set the entity's status to idling.
             } else {
                 // Make the entity face the player during dialogue.
-                switch (gp.player.currentDirection) {
+                switch (gw.player.currentDirection) {
                     case UP -> currentDirection = Direction.DOWN;
                     case DOWN -> currentDirection = Direction.UP;
                     case LEFT -> currentDirection = Direction.RIGHT;
@@ -317,8 +252,8 @@ public class Entity {
      *    (if the player is more to the left or right, the entity faces left or right, respectively.)
      */
     private void facePlayer() {
-        int deltaX = gp.player.worldX - this.worldX;
-        int deltaY = gp.player.worldY - this.worldY;
+        int deltaX = gw.player.worldX - this.worldX;
+        int deltaY = gw.player.worldY - this.worldY;
 
         /*
          * This if statement is used to determine the direction of the entity based on the player's position.
@@ -346,22 +281,25 @@ public class Entity {
 
     /**
      * @brief Method used to update the entity's sprite image.
+     * The animation restarts when the status or the direction changes, and the frame
+     * only depends on the ticks passed since then. (See SpriteSet)
      */
-    private void updateSprite() {
-        spriteFramesCounter++; // Updated in order to change the sprite image when it reaches the spriteCounterMultiplier.
+    protected void updateSprite() {
+        int currentAnimation = SpriteSet.animationOf(currentStatus, currentDirection);
 
-        if (spriteFramesCounter > spriteCounterMultiplier) {
-            spriteImageNum++;
-            if (spriteImageNum > NUM_MOVING_SPRITES) {
-                spriteImageNum = 1;
-            }
-            spriteFramesCounter = 0;
+        if (currentAnimation != animation) {
+            animation = currentAnimation;
+            animationStartTick = gw.tick;
         }
+
+        spriteFrameIndex = sprites.getFrameIndex(animation, gw.tick - animationStartTick);
     }
 
 
     /**
      * @brief Method used to check for collisions.
+     * The collisions with the tiles, the objects and the other entities are checked while
+     * the entity moves. (See move())
      */
     private void checkCollisions() {
         isCollidingWithTile = false;
@@ -371,30 +309,209 @@ public class Entity {
 
         // Check if the player is standing next to the entity
         // @NOTE: It should stay here.
-        gp.cm.isNextToPlayer(this);
+        gw.cm.isNextToPlayer(this);
+    }
 
-        // Check tile collisions
-        gp.cm.checkTile(this, false);
+    /**
+     * @brief Method used to move the entity.
+     * The entity moves by one step in its current direction, and stops against the first
+     * obstacle on its way. (See CollisionManager.move())
+     */
+    public void move() {
+        int step = speed.getCurrent();
 
-        // Check object collisions
-        gp.cm.checkObject(this, false);
+        switch (currentDirection) {
+            case UP -> gw.cm.move(this, 0, -step);
+            case DOWN -> gw.cm.move(this, 0, step);
+            case LEFT -> gw.cm.move(this, -step, 0);
+            case RIGHT -> gw.cm.move(this, step, 0);
+        }
+    }
+
+
+    /**
+     * @brief Makes the entity walk to the player, and stop next to it.
+     */
+    public void followPlayer() {
+        behavior = Behavior.FOLLOW_PLAYER;
+        clearPath();
+    }
 
-        // Check player collisions (for NPCs)
-        gp.cm.checkPlayer(this);
 
-        gp.cm.checkEntity(this, gp.npcArray);
+    /**
+     * @brief Makes the entity walk to a cell of the map, and stop there.
+     *
+     * @param column The column of the cell.
+     * @param row The row of the cell.
+     */
+    public void walkTo(int column, int row) {
+        behavior = Behavior.GO_TO;
+        targetColumn = column;
+        targetRow = row;
+        clearPath();
     }
 
+
     /**
-     * @brief Method used to move the entity.
+     * @brief Makes the entity walk in random directions again. (The default behavior)
      */
-    public void move() {
-        switch (currentDirection) {
-            case UP -> worldY -= speed.getCurrent();
-            case DOWN -> worldY += speed.getCurrent();
-            case LEFT -> worldX -= speed.getCurrent();
-            case RIGHT -> worldX += speed.getCurrent();
+    public void wander() {
+        behavior = Behavior.WANDER;
+        clearPath();
+    }
+
+
+    /**
+     * @brief Cancels the current path.
+     */
+    private void clearPath() {
+        if (pathRequest != null) {
+            pathRequest.cancel();
+            pathRequest = null;
         }
+        stuckTicks = 0;
+    }
+
+
+    /**
+     * @brief Requests a new path when the goal has changed cell, or when the entity is stuck. (Around the blocked cell)
+     * The path is found by the PathFinder in the next ticks; the entity waits until then.
+     */
+    private void updatePath() {
+        int columns = gw.pathFinder.getColumns();
+        int goalColumn = behavior == Behavior.FOLLOW_PLAYER ? getCenterColumn(gw.player) : targetColumn;
+        int goalRow = behavior == Behavior.FOLLOW_PLAYER ? getCenterRow(gw.player) : targetRow;
+
+        boolean isGoalChanged = pathRequest == null || pathRequest.goal != goalRow * columns + goalColumn;
+
+        if (isGoalChanged || stuckTicks > MAX_STUCK_TICKS) {
+            // When stuck, the next cell of the path is blocked (for example by another NPC): go around it
+            int blockedCell = -1;
+            if (!isGoalChanged && pathRequest.status == PathFinder.PathRequest.Status.FOUND && pathIndex < pathRequest.path.length) {
+                blockedCell = pathRequest.path[pathIndex];
+            }
+
+            clearPath();
+            pathRequest = blockedCell < 0
+                    ? gw.pathFinder.request(getCenterColumn(this), getCenterRow(this), goalColumn, goalRow)
+                    : gw.pathFinder.request(getCenterColumn(this), getCenterRow(this), goalColumn, goalRow,
+                            blockedCell % columns, blockedCell / columns);
+            pathIndex = 0;
+        }
+    }
+
+
+    /**
+     * @brief Moves the entity along its path, by its speed.
+     * The bounding box of the entity is centered on every cell of the path, one after the other.
+     * The entity idles while the path is being searched, when there is no path, and at the end of the path.
+     */
+    private void followPath() {
+        if (pathRequest == null || pathRequest.status != PathFinder.PathRequest.Status.FOUND) {
+            currentStatus = Status.IDLING;
+            if (pathRequest != null && pathRequest.status == PathFinder.PathRequest.Status.NOT_FOUND && pathRequest.blockedCell >= 0) {
+                stuckTicks++; // No way around the blocked cell: wait, then try the usual path again
+            }
+            return;
+        }
+
+        int[] path = pathRequest.path;
+        int columns = gw.pathFinder.getColumns();
+        int dx = 0, dy = 0;
+
+        // Skip the cells that have been reached
+        while (pathIndex < path.length) {
+            int cell = path[pathIndex];
+            dx = (cell % columns) * gw.TILE_SIZE + (gw.TILE_SIZE - boundingBoxDefaultWidth) / 2 - getBoundingBoxWorldX();
+            dy = (cell / columns) * gw.TILE_SIZE + (gw.TILE_SIZE - boundingBoxDefaultHeight) / 2 - getBoundingBoxWorldY();
+            if (dx != 0 || dy != 0) break;
+            pathIndex++;
+        }
+
+        if (pathIndex == path.length) {
+            currentStatus = Status.IDLING; // Arrived
+            return;
+        }
+
+        // The direction of the sprites is the longest axis
+        if (Math.abs(dx) > Math.abs(dy)) {
+            currentDirection = dx > 0 ? Direction.RIGHT : Direction.LEFT;
+        } else {
+            currentDirection = dy > 0 ? Direction.DOWN : Direction.UP;
+        }
+
+        int step = speed.getCurrent();
+        int oldX = worldX, oldY = worldY;
+        gw.cm.move(this, Math.max(-step, Math.min(dx, step)), Math.max(-step, Math.min(dy, step)));
+
+        stuckTicks = (worldX == oldX && worldY == oldY) ? stuckTicks + 1 : 0;
+    }
+
+
+    /**
+     * @brief Returns the column of the center of the bounding box of an entity.
+     */
+    private int getCenterColumn(Entity entity) {
+        return Math.floorDiv(entity.getBoundingBoxWorldX() + entity.boundingBoxDefaultWidth / 2, gw.TILE_SIZE);
+    }
+
+
+    /**
+     * @brief Returns the row of the center of the bounding box of an entity.
+     */
+    private int getCenterRow(Entity entity) {
+        return Math.floorDiv(entity.getBoundingBoxWorldY() + entity.boundingBoxDefaultHeight / 2, gw.TILE_SIZE);
+    }
+
+
+    /**
+     * @brief Returns the x coordinate of the bounding box in the world.
+     * @return the left side of the bounding box.
+     */
+    public int getBoundingBoxWorldX() {
+        return worldX + boundingBoxDefaultX;
+    }
+
+
+    /**
+     * @brief Returns the y coordinate of the bounding box in the world.
+     * @return the top side of the bounding box.
+     */
+    public int getBoundingBoxWorldY() {
+        return worldY + boundingBoxDefaultY;
+    }
+
+
+    /**
+     * @brief Saves the current position as the previous one.
+     * This is called at the beginning of every tick, before the entity moves.
+     */
+    public void savePreviousPosition() {
+        previousWorldX = worldX;
+        previousWorldY = worldY;
+    }
+
+
+    /**
+     * @brief Returns the X position of the entity to use when drawing.
+     * It's interpolated between the previous and the current tick, so that the
+     * movement looks smooth even when the frames are not aligned with the ticks.
+     *
+     * @return the interpolated X position in the world.
+     */
+    public int getRenderX() {
+        return (int) Math.round(previousWorldX + (worldX - previousWorldX) * gw.interpolation);
+    }
+
+
+    /**
+     * @brief Returns the Y position of the entity to use when drawing.
+     * @see #getRenderX()
+     *
+     * @return the interpolated Y position in the world.
+     */
+    public int getRenderY() {
+        return (int) Math.round(previousWorldY + (worldY - previousWorldY) * gw.interpolation);
     }
 
 
@@ -405,23 +522,16 @@ public class Entity {
      * If it's not, the method doesn't draw the entity. This is done to optimize the game.
      * and avoid drawing entities that are not visible. (Does it even make sense? xD)
      *
-     * The method then gets the sprite direction of the entity and draws the sprite image.
+     * The method then draws the current frame of the animation. (See updateSprite())
      *
      * @param g2d the Graphics2D object used to draw the entity.
      */
     public void draw(Graphics2D g2d) {
-        int screenX = worldX - gp.player.worldX + gp.player.screenX;
-        int screenY = worldY - gp.player.worldY + gp.player.screenY;
+        int screenX = getRenderX() - gw.player.getRenderX() + gw.player.screenX;
+        int screenY = getRenderY() - gw.player.getRenderY() + gw.player.screenY;
 
         if (isVisible()) {
-            SpriteImagesEnum direction = getSpriteDirection();
-            BufferedImage image;
-
-            ArrayList<BufferedImage> frames = spriteImages.get(direction);
-
-            // if (frames != null && !frames.isEmpty())
-            int frameIndex = (spriteImageNum - 1) % frames.size();
-            image = frames.get(frameIndex);
+            BufferedImage image = sprites.getFrame(spriteFrameIndex);
 
             // if (image != null)
             g2d.drawImage(image, screenX, screenY, null);
@@ -439,37 +549,16 @@ public class Entity {
      * @return true if the tile is visible, false otherwise.
      */
     protected boolean isVisible() {
-        return worldX + gp.TILE_SIZE > gp.player.worldX - gp.player.screenX &&
-                worldX - gp.TILE_SIZE < gp.player.worldX + gp.player.screenX &&
-                worldY + gp.TILE_SIZE > gp.player.worldY - gp.player.screenY &&
-                worldY - gp.TILE_SIZE < gp.player.worldY + gp.player.screenY;
+        int cameraX = gw.player.getRenderX();
+        int cameraY = gw.player.getRenderY();
+
+        return worldX + gw.TILE_SIZE > cameraX - gw.player.screenX &&
+                worldX - gw.TILE_SIZE < cameraX + gw.player.screenX &&
+                worldY + gw.TILE_SIZE > cameraY - gw.player.screenY &&
+                worldY - gw.TILE_SIZE < cameraY + gw.player.screenY;
     }
 
 
-    /**
-     * @brief Method used to get the sprite direction of the entity.
-     * @return the sprite direction of the entity.
-     */
-    public SpriteImagesEnum getSpriteDirection() {
-        SpriteImagesEnum direction;
-
-        if(currentStatus == Status.IDLING) {
-            direction = switch(currentDirection) {
-                case Direction.UP -> SpriteImagesEnum.UP_IDLING;
-                case Direction.DOWN -> SpriteImagesEnum.DOWN_IDLING;
-                case Direction.LEFT -> SpriteImagesEnum.LEFT_IDLING;
-                case Direction.RIGHT -> SpriteImagesEnum.RIGHT_IDLING;
-            };
-        } else {
-            direction = switch(currentDirection) {
-                case Direction.UP -> SpriteImagesEnum.UP_MOVING;
-                case Direction.DOWN -> SpriteImagesEnum.DOWN_MOVING;
-                case Direction.LEFT -> SpriteImagesEnum.LEFT_MOVING;
-                case Direction.RIGHT -> SpriteImagesEnum.RIGHT_MOVING;
-            };
-        }
-        return direction;
-    }
 
 
 
@@ -487,7 +576,7 @@ public class Entity {
      * the dialogue at the current index.
      */
     public void speak() {
-        gp.ui.currentDialogue = dialogues[dialogueIndex];
+        gw.ui.currentDialogue = dialogues[dialogueIndex];
     }
 
 
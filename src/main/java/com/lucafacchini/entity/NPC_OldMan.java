@@ -1,6 +1,6 @@
 package com.lucafacchini.entity;
 
-import com.lucafacchini.GamePanel;
+import com.lucafacchini.GameWorld;
 import com.lucafacchini.stats.Speed;
 
 import java.util.logging.Logger;
@@ -20,36 +20,37 @@ public class NPC_OldMan extends Entity {
     public final int SPRITE_WIDTH_PX = 16;
     public final int RESCALED_SPRITE_HEIGHT_PX;
     public final int RESCALED_SPRITE_WIDTH_PX;
-    public final int MOVING_SPRITE_UPDATE_TIME = 15;
+    public final int MOVING_SPRITE_UPDATE_TIME = 16;
 
     // Stats Settings
     public final int DEFAULT_SPEED = 1;
 
     /**
      * @brief Constructor for the NPC_OldMan class.
-     * @param gp The GamePanel instance.
+     * @param gw The GameWorld instance.
      */
-    public NPC_OldMan(GamePanel gp) {
-        super(gp);
+    public NPC_OldMan(GameWorld gw) {
+        super(gw);
 
 
         // Initialize bounding box dimensions and default values
         boundingBox.x = 0;
         boundingBox.y = 0;
-        boundingBox.width = gp.TILE_SIZE;
-        boundingBox.height = gp.TILE_SIZE;
+        boundingBox.width = gw.TILE_SIZE;
+        boundingBox.height = gw.TILE_SIZE;
         boundingBoxDefaultX = boundingBox.x;
         boundingBoxDefaultY = boundingBox.y;
         boundingBoxDefaultHeight = boundingBox.height;
         boundingBoxDefaultWidth = boundingBox.width;
 
         // Calculate rescaled sprite dimensions based on game scale
-        RESCALED_SPRITE_HEIGHT_PX = SPRITE_HEIGHT_PX * gp.SCALE;
-        RESCALED_SPRITE_WIDTH_PX = SPRITE_WIDTH_PX * gp.SCALE;
+        RESCALED_SPRITE_HEIGHT_PX = SPRITE_HEIGHT_PX * gw.SCALE;
+        RESCALED_SPRITE_WIDTH_PX = SPRITE_WIDTH_PX * gw.SCALE;
 
         // Load and rescale player sprites
-        loadSprites("npc/old_man", NUM_MOVING_SPRITES, NUM_IDLING_SPRITES);
-        rescaleSprites(RESCALED_SPRITE_WIDTH_PX, RESCALED_SPRITE_HEIGHT_PX);
+        loadSprites("npc/old_man", NUM_MOVING_SPRITES, NUM_IDLING_SPRITES,
+                MOVING_SPRITE_UPDATE_TIME, MOVING_SPRITE_UPDATE_TIME,
+                RESCALED_SPRITE_WIDTH_PX, RESCALED_SPRITE_HEIGHT_PX);
 
 
         // Stats
@@ -59,7 +60,6 @@ public class NPC_OldMan extends Entity {
         // Set default values
         setDialogue();
         setDefaultValues();
-        setSpriteTimers(MOVING_SPRITE_UPDATE_TIME, NUM_MOVING_SPRITES);
 
     }
 
@@ -68,8 +68,8 @@ public class NPC_OldMan extends Entity {
      * @brief Sets the default values for the NPC.
      */
     void setDefaultValues() {
-        worldX = gp.TILE_SIZE * 24 - gp.TILE_SIZE; // Spawn at the center of the map
-        worldY = gp.TILE_SIZE * 22 - gp.TILE_SIZE; // Spawn at the center of the map
+        worldX = gw.TILE_SIZE * 24 - gw.TILE_SIZE; // Spawn at the center of the map
+        worldY = gw.TILE_SIZE * 22 - gw.TILE_SIZE; // Spawn at the center of the map
     }
 
 
@@ -0,0 +1,436 @@
+package com.lucafacchini.entity;
+
+import com.lucafacchini.GameWorld;
+import com.lucafacchini.RandomService;
+import com.lucafacchini.SpatialGrid;
+import com.lucafacchini.ai.FlowField;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stores a crowd of simple NPCs that wander around the map.
+ *
+ * The NPCs of the crowd are not Entity objects: every property is an array, and the NPC
+ * number i is the element i of every array (position, direction, animation...).
+ * The crowd is updated by a few "systems", each one a single loop over the arrays it needs.
+ * This way a crowd of many thousands of NPCs fits in a few MB and is updated quickly.
+ *
+ * Only the NPCs chosen by the UpdateScheduler are updated, so the distant NPCs don't cost anything.
+ * An NPC that wasn't updated for some ticks catches up: it moves (and thinks) for all the ticks it missed.
+ * The NPCs are indexed by position in a SpatialGrid, to find the ones near the player.
+ * The grid is only used by the game thread: the NPCs on the screen are published in every tick
+ * to the thread that renders. (See publishVisible())
+ *
+ * The NPCs of the crowd can't talk, and they only collide with the tiles.
+ * They wander in random directions, or walk to the player following the flow field of the player
+ * (See GameWorld.playerFlowField), so the cost doesn't grow with the number of NPCs that follow it.
+ * The NPCs with dialogues are still entities. (See GameWorld.npcArray)
+ */
+public class NpcStore {
+
+    // Debugging
+    private static final Logger LOGGER = Logger.getLogger(NpcStore.class.getName());
+
+    // Crowd settings
+    public static final int INITIAL_CAPACITY = 64;
+    public static final int ACTION_INTERVAL = 120; // Ticks between two changes of direction (like Entity.setAction())
+    public static final int DEFAULT_SPEED = 1;
+    public static final int NUM_MOVING_SPRITES = 2;
+    public static final int NUM_IDLING_SPRITES = 2;
+    public static final int MOVING_SPRITE_UPDATE_TIME = 16; // The same of NPC_OldMan, so the sprites are shared
+    public static final String SPRITES_PATH = "npc/old_man"; // The same sprites of NPC_OldMan
+    public static final int MAX_CATCH_UP_TICKS = 120; // The most ticks an NPC catches up when it's updated again
+
+    // Directions (the ordinals of Entity.Direction)
+    private static final byte UP = (byte) Entity.Direction.UP.ordinal();
+    private static final byte DOWN = (byte) Entity.Direction.DOWN.ordinal();
+    private static final byte LEFT = (byte) Entity.Direction.LEFT.ordinal();
+    private static final byte RIGHT = (byte) Entity.Direction.RIGHT.ordinal();
+
+    // Statuses (the ordinals of Entity.Status)
+    private static final byte IDLING = (byte) Entity.Status.IDLING.ordinal();
+    private static final byte MOVING = (byte) Entity.Status.MOVING.ordinal();
+
+    // Behaviors (the ordinals of Entity.Behavior)
+    private static final byte WANDER = (byte) Entity.Behavior.WANDER.ordinal();
+    private static final byte FOLLOW_PLAYER = (byte) Entity.Behavior.FOLLOW_PLAYER.ordinal();
+
+    // The number of NPCs in the crowd
+    public int count = 0;
+
+    // Position (the bounding box is the whole tile)
+    public int[] worldX = new int[INITIAL_CAPACITY];
+    public int[] worldY = new int[INITIAL_CAPACITY];
+    public int[] previousWorldX = new int[INITIAL_CAPACITY];
+    public int[] previousWorldY = new int[INITIAL_CAPACITY];
+
+    // Movement
+    public byte[] direction = new byte[INITIAL_CAPACITY];
+    public byte[] status = new byte[INITIAL_CAPACITY]; // IDLING when the NPC is against a wall
+    public int[] speed = new int[INITIAL_CAPACITY];
+    public int[] actionCounter = new int[INITIAL_CAPACITY];
+    public byte[] behavior = new byte[INITIAL_CAPACITY]; // WANDER or FOLLOW_PLAYER
+    public long[] randomState = new long[INITIAL_CAPACITY]; // The random stream of every NPC (See RandomService)
+
+    // Animation
+    public int[] animationStartTick = new int[INITIAL_CAPACITY]; // The tick the animation started (See GameWorld.tick)
+
+    // Scheduling
+    public int[] lastUpdateTick = new int[INITIAL_CAPACITY]; // The last tick the NPC was updated
+    private final SpatialGrid grid;
+
+    // Sprites, shared with the other entities of the same type (See SpriteRegistry)
+    private final SpriteSet sprites;
+
+    // Visible NPCs, triple buffered: the game thread writes a buffer while the renderer reads another one,
+    // and the third one is the last published. (See publishVisible() and draw())
+    private static final int FRESH = 4; // Set in publishedBuffer when the published buffer hasn't been read yet
+    private final int[][] visibleIds = { new int[256], new int[256], new int[256] };
+    private final int[] visibleCount = new int[3];
+    private final AtomicInteger publishedBuffer = new AtomicInteger(0); // The index of the published buffer, and FRESH
+    private int writeBuffer = 1; // Only used by the game thread
+    private int readBuffer = 2; // Only used by the thread that renders
+
+    // Objects
+    private final GameWorld gw;
+
+    /**
+     * @brief Constructor of the NpcStore class.
+     * Requests the sprites of the crowd. (See SpriteRegistry)
+     *
+     * @param gw The GameWorld instance.
+     */
+    public NpcStore(GameWorld gw) {
+        this.gw = gw;
+        grid = new SpatialGrid(gw.TILE_SIZE, INITIAL_CAPACITY);
+        sprites = gw.sprites.getSprites(SPRITES_PATH, NUM_MOVING_SPRITES, NUM_IDLING_SPRITES,
+                MOVING_SPRITE_UPDATE_TIME, MOVING_SPRITE_UPDATE_TIME, gw.TILE_SIZE, gw.TILE_SIZE);
+    }
+
+
+    /**
+     * @brief Adds an NPC to the crowd.
+     *
+     * @param x The x position of the NPC in the world.
+     * @param y The y position of the NPC in the world.
+     * @return The index of the NPC.
+     */
+    public int add(int x, int y) {
+        if (count == worldX.length) {
+            grow(count * 2);
+        }
+
+        int i = count++;
+        worldX[i] = previousWorldX[i] = x;
+        worldY[i] = previousWorldY[i] = y;
+        randomState[i] = gw.random.newStreamState();
+        direction[i] = (byte) RandomService.nextInt(randomState, i, 4);
+        status[i] = MOVING;
+        behavior[i] = WANDER;
+        speed[i] = DEFAULT_SPEED;
+        actionCounter[i] = RandomService.nextInt(randomState, i, ACTION_INTERVAL); // So the NPCs don't all turn at the same tick
+        animationStartTick[i] = gw.tick;
+        lastUpdateTick[i] = gw.tick - 1;
+        grid.update(i, x, y, gw.TILE_SIZE, gw.TILE_SIZE);
+        return i;
+    }
+
+
+    /**
+     * @brief Adds NPCs on random cells of the map that are not solid.
+     *
+     * @param amount The number of NPCs to add.
+     */
+    public void spawn(int amount) {
+        if (count + amount > worldX.length) {
+            grow(count + amount);
+        }
+
+        for (int n = 0; n < amount; n++) {
+            int column, row;
+            do {
+                column = gw.random.nextInt(gw.tm.columns);
+                row = gw.random.nextInt(gw.tm.rows);
+            } while (gw.tm.isSolid(column, row));
+
+            add(column * gw.TILE_SIZE, row * gw.TILE_SIZE);
+        }
+
+        LOGGER.log(Level.INFO, "Spawned {0} NPCs in the crowd", amount);
+    }
+
+
+    /**
+     * @brief Changes the capacity of every array.
+     */
+    private void grow(int capacity) {
+        worldX = Arrays.copyOf(worldX, capacity);
+        worldY = Arrays.copyOf(worldY, capacity);
+        previousWorldX = Arrays.copyOf(previousWorldX, capacity);
+        previousWorldY = Arrays.copyOf(previousWorldY, capacity);
+        direction = Arrays.copyOf(direction, capacity);
+        status = Arrays.copyOf(status, capacity);
+        speed = Arrays.copyOf(speed, capacity);
+        actionCounter = Arrays.copyOf(actionCounter, capacity);
+        behavior = Arrays.copyOf(behavior, capacity);
+        randomState = Arrays.copyOf(randomState, capacity);
+        animationStartTick = Arrays.copyOf(animationStartTick, capacity);
+        lastUpdateTick = Arrays.copyOf(lastUpdateTick, capacity);
+    }
+
+
+    /**
+     * @brief Makes an NPC walk to the player, and stop on its cell. (See GameWorld.playerFlowField)
+     *
+     * @param i The index of the NPC.
+     */
+    public void followPlayer(int i) {
+        behavior[i] = FOLLOW_PLAYER;
+    }
+
+
+    /**
+     * @brief Makes an NPC walk in random directions again. (The default behavior)
+     *
+     * @param i The index of the NPC.
+     */
+    public void wander(int i) {
+        behavior[i] = WANDER;
+    }
+
+
+    /**
+     * @brief Finds the NPCs in a rectangle of the world. (See SpatialGrid.query())
+     *
+     * @param x The x coordinate of the rectangle.
+     * @param y The y coordinate of the rectangle.
+     * @param width The width of the rectangle.
+     * @param height The height of the rectangle.
+     * @param result The array that receives the indexes of the NPCs.
+     * @return The number of NPCs found. (It can be more than the length of the result)
+     */
+    public int query(int x, int y, int width, int height, int[] result) {
+        return grid.query(x, y, width, height, result);
+    }
+
+
+    /**
+     * @brief Publishes the NPCs on the screen for draw(), because the grid can't be read while it's updated.
+     * Called by the game thread in every tick, with the NPCs of the NEAR tier. (See UpdateScheduler)
+     *
+     * @param ids The indexes of the NPCs, sorted, so the overlapping NPCs don't flicker.
+     * @param length The number of NPCs in ids.
+     */
+    public void publishVisible(int[] ids, int length) {
+        if (visibleIds[writeBuffer].length < length) {
+            visibleIds[writeBuffer] = new int[Integer.highestOneBit(length) * 2];
+        }
+        System.arraycopy(ids, 0, visibleIds[writeBuffer], 0, length);
+        visibleCount[writeBuffer] = length;
+
+        // Swap with the published buffer. The atomic swap also makes the writes visible to the renderer.
+        writeBuffer = publishedBuffer.getAndSet(writeBuffer | FRESH) & ~FRESH;
+    }
+
+
+    /**
+     * @brief Updates some NPCs of the crowd, for all the ticks since they were last updated.
+     * Every NPC must appear at most once, and it can't be updated twice in the same tick.
+     *
+     * @param ids The indexes of the NPCs.
+     * @param length The number of NPCs in ids.
+     */
+    public void update(int[] ids, int length) {
+        savePreviousPositions(ids, length);
+        updateActions(ids, length);
+        updateMovement(ids, length);
+
+        for (int k = 0; k < length; k++) {
+            lastUpdateTick[ids[k]] = gw.tick;
+        }
+    }
+
+
+    /**
+     * @brief Returns the number of ticks an NPC has to catch up. (At least 1)
+     */
+    private int getElapsedTicks(int i) {
+        return Math.max(1, Math.min(gw.tick - lastUpdateTick[i], MAX_CATCH_UP_TICKS));
+    }
+
+
+    /**
+     * @brief Saves the current positions as the previous ones, before the NPCs move. (Used for interpolation)
+     */
+    private void savePreviousPositions(int[] ids, int length) {
+        for (int k = 0; k < length; k++) {
+            int i = ids[k];
+            previousWorldX[i] = worldX[i];
+            previousWorldY[i] = worldY[i];
+        }
+    }
+
+
+    /**
+     * @brief Changes the direction of the wandering NPCs at random, every ACTION_INTERVAL ticks.
+     */
+    private void updateActions(int[] ids, int length) {
+        for (int k = 0; k < length; k++) {
+            int i = ids[k];
+            if (behavior[i] != WANDER) continue;
+
+            actionCounter[i] += getElapsedTicks(i);
+            if (actionCounter[i] >= ACTION_INTERVAL) {
+                setMovement(i, (byte) RandomService.nextInt(randomState, i, 4), MOVING);
+                actionCounter[i] %= ACTION_INTERVAL;
+            }
+        }
+    }
+
+
+    /**
+     * @brief Moves the NPCs, stopping them against the solid tiles. (See CollisionManager.sweepTiles())
+     * A wandering NPC that can't move anymore idles until it changes direction.
+     */
+    private void updateMovement(int[] ids, int length) {
+        int size = gw.TILE_SIZE;
+
+        for (int k = 0; k < length; k++) {
+            int i = ids[k];
+            int distance = speed[i] * getElapsedTicks(i);
+
+            if (behavior[i] == FOLLOW_PLAYER) {
+                // One cell at a time, because the direction can change on every cell
+                while (distance > 0) {
+                    int stepLength = Math.min(distance, steer(i, size));
+                    if (status[i] == IDLING || walk(i, stepLength, size) != stepLength) break;
+                    distance -= stepLength;
+                }
+            } else if (status[i] == MOVING) {
+                walk(i, distance, size);
+            }
+
+            grid.update(i, worldX[i], worldY[i], size, size);
+        }
+    }
+
+
+    /**
+     * @brief Moves an NPC in its direction, and makes it idle if it's stopped by a solid tile.
+     *
+     * @return The distance walked.
+     */
+    private int walk(int i, int length, int size) {
+        byte d = direction[i];
+        int step = (d == UP || d == LEFT) ? -length : length;
+        int distance;
+
+        if (d == LEFT || d == RIGHT) {
+            distance = gw.cm.sweepTiles(worldX[i], worldY[i], size, size, step, true);
+            worldX[i] += distance;
+        } else {
+            distance = gw.cm.sweepTiles(worldX[i], worldY[i], size, size, step, false);
+            worldY[i] += distance;
+        }
+
+        if (distance != step) {
+            setMovement(i, d, IDLING);
+        }
+        return Math.abs(distance);
+    }
+
+
+    /**
+     * @brief Chooses the direction of an NPC that follows the player.
+     * An NPC between two cells first finishes its step, then it walks to the next cell in the
+     * direction of the flow field. It idles on the cell of the player, or if it can't reach it.
+     *
+     * @param i The index of the NPC.
+     * @param size The size of a cell.
+     * @return The maximum distance the NPC can walk in this tick, so it stops on the next cell.
+     */
+    private int steer(int i, int size) {
+        int offsetX = Math.floorMod(worldX[i], size); // The distance from the left side of its cell
+        int offsetY = Math.floorMod(worldY[i], size); // The distance from the top side of its cell
+        byte d = direction[i];
+
+        if (offsetX != 0) {
+            if (d != LEFT && d != RIGHT) { // Not walking along this axis: go back to the nearest cell
+                d = offsetX < size / 2 ? LEFT : RIGHT;
+            }
+            setMovement(i, d, MOVING);
+            return d == LEFT ? offsetX : size - offsetX;
+        }
+        if (offsetY != 0) {
+            if (d != UP && d != DOWN) {
+                d = offsetY < size / 2 ? UP : DOWN;
+            }
+            setMovement(i, d, MOVING);
+            return d == UP ? offsetY : size - offsetY;
+        }
+
+        byte flowDirection = gw.playerFlowField.getDirection(Math.floorDiv(worldX[i], size), Math.floorDiv(worldY[i], size));
+        if (flowDirection == FlowField.NO_DIRECTION) {
+            setMovement(i, d, IDLING);
+        } else {
+            setMovement(i, flowDirection, MOVING);
+        }
+        return size;
+    }
+
+
+    /**
+     * @brief Changes the direction and the status of an NPC, and restarts its animation if they have changed.
+     */
+    private void setMovement(int i, byte newDirection, byte newStatus) {
+        if (direction[i] != newDirection || status[i] != newStatus) {
+            direction[i] = newDirection;
+            status[i] = newStatus;
+            animationStartTick[i] = gw.tick;
+        }
+    }
+
+
+    /**
+     * @brief Draws the NPCs of the crowd that are on the screen.
+     * The NPCs are the last ones published by the game thread (See publishVisible()), so the cost
+     * depends on the NPCs on the screen, not on the size of the crowd, and the grid is never read here.
+     * The positions are interpolated like Entity.getRenderX().
+     *
+     * @param g2d The Graphics2D object.
+     */
+    public void draw(Graphics2D g2d) {
+        int cameraX = gw.player.getRenderX();
+        int cameraY = gw.player.getRenderY();
+        double interpolation = gw.interpolation;
+
+        // Take the last published buffer, if it hasn't been read yet
+        if ((publishedBuffer.get() & FRESH) != 0) {
+            readBuffer = publishedBuffer.getAndSet(readBuffer) & ~FRESH;
+        }
+        int[] ids = visibleIds[readBuffer];
+        int found = visibleCount[readBuffer];
+
+        for (int k = 0; k < found; k++) {
+            int i = ids[k];
+            if (i >= count) continue; // Only possible while the crowd is being created
+
+            int renderX = (int) Math.round(previousWorldX[i] + (worldX[i] - previousWorldX[i]) * interpolation);
+            int renderY = (int) Math.round(previousWorldY[i] + (worldY[i] - previousWorldY[i]) * interpolation);
+
+            int screenX = renderX - cameraX + gw.player.screenX;
+            int screenY = renderY - cameraY + gw.player.screenY;
+
+            if (screenX + gw.TILE_SIZE > 0 && screenX < gw.WINDOW_WIDTH &&
+                    screenY + gw.TILE_SIZE > 0 && screenY < gw.WINDOW_HEIGHT) {
+                int animation = SpriteSet.animationOf(status[i], direction[i]);
+                int frameIndex = sprites.getFrameIndex(animation, gw.tick - animationStartTick[i]);
+                g2d.drawImage(sprites.getFrame(frameIndex), screenX, screenY, null);
+            }
+        }
+    }
+}
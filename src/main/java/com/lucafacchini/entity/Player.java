@@ -1,6 +1,6 @@
 package com.lucafacchini.entity;
 
-import com.lucafacchini.GamePanel;
+import com.lucafacchini.GameWorld;
 import com.lucafacchini.KeyHandler;
 import com.lucafacchini.objects.SuperObject;
 import com.lucafacchini.stats.*;
@@ -28,13 +28,20 @@ public class Player extends Entity {
     public final int RESCALED_SPRITE_HEIGHT_PX;
     public final int RESCALED_SPRITE_WIDTH_PX;
     public final int MOVING_SPRITE_UPDATE_TIME = 5;
-    public final int IDLING_SPRITE_MULTIPLIER_UPDATE_TIME = 20;
-    public final int IDLING_SPRITE_MULTIPLIER_EYES_CLOSED = 20;
+    public final int IDLING_SPRITE_UPDATE_TIME = 20;
 
     // Indexes of objects and entities
     public int objectIndex;
     public int npcIndex;
 
+    // The direction of the movement on each axis, from the keys (-1, 0 or 1)
+    private int moveX = 0;
+    private int moveY = 0;
+
+    // Diagonal movement
+    private static final int DIAGONAL_FACTOR = 181; // 1 / sqrt(2), in 1/256 of a pixel
+    private int diagonalRemainder = 0; // The fraction of a pixel left by the diagonal steps, in 1/256 of a pixel
+
     // Player settings
     public final int DEFAULT_SPEED = 8;
     /**
@@ -56,21 +63,21 @@ public class Player extends Entity {
      * @brief Constructs a Player object with initial settings.
      * Initializes sprite dimensions, default values, and key handler setup.
      *
-     * @param gp the GamePanel object providing game settings and state.
+     * @param gw the GameWorld object providing game settings and state.
      * @param kh the KeyHandler object managing player input.
      */
-    public Player(GamePanel gp, KeyHandler kh) {
-        super(gp);
+    public Player(GameWorld gw, KeyHandler kh) {
+        super(gw);
         this.kh = kh;
 
         // Center the player on the screen
-        screenX = gp.WINDOW_WIDTH / 2 - gp.TILE_SIZE / 2;
-        screenY = gp.WINDOW_HEIGHT / 2 - gp.TILE_SIZE / 2;
+        screenX = gw.WINDOW_WIDTH / 2 - gw.TILE_SIZE / 2;
+        screenY = gw.WINDOW_HEIGHT / 2 - gw.TILE_SIZE / 2;
 
-        boundingBox.x = gp.TILE_SIZE / 4;
-        boundingBox.y = gp.TILE_SIZE / 2;
-        boundingBox.width =  gp.TILE_SIZE - boundingBox.x * 2;
-        boundingBox.height = gp.TILE_SIZE / 2;
+        boundingBox.x = gw.TILE_SIZE / 4;
+        boundingBox.y = gw.TILE_SIZE / 2;
+        boundingBox.width =  gw.TILE_SIZE - boundingBox.x * 2;
+        boundingBox.height = gw.TILE_SIZE / 2;
         boundingBoxDefaultX = boundingBox.x;
         boundingBoxDefaultY = boundingBox.y;
 
@@ -81,20 +88,20 @@ public class Player extends Entity {
         boundingBoxDefaultWidth = boundingBox.width;
 
         // Calculate rescaled sprite dimensions based on game scale
-        RESCALED_SPRITE_HEIGHT_PX = SPRITE_HEIGHT_PX * gp.SCALE;
-        RESCALED_SPRITE_WIDTH_PX = SPRITE_WIDTH_PX * gp.SCALE;
+        RESCALED_SPRITE_HEIGHT_PX = SPRITE_HEIGHT_PX * gw.SCALE;
+        RESCALED_SPRITE_WIDTH_PX = SPRITE_WIDTH_PX * gw.SCALE;
 
         // Stats
         hp = new HP(10);
         speed = new Speed(DEFAULT_SPEED);
 
         // Load and rescale player sprites
-        loadSprites("player", NUM_MOVING_SPRITES, NUM_IDLING_SPRITES);
-        rescaleSprites(RESCALED_SPRITE_WIDTH_PX, RESCALED_SPRITE_HEIGHT_PX);
+        loadSprites("player", NUM_MOVING_SPRITES, NUM_IDLING_SPRITES,
+                MOVING_SPRITE_UPDATE_TIME, IDLING_SPRITE_UPDATE_TIME,
+                RESCALED_SPRITE_WIDTH_PX, RESCALED_SPRITE_HEIGHT_PX);
 
-        // Set default values and initialize sprite timers
+        // Set default values
         setDefaultValues();
-        setSpriteTimers(MOVING_SPRITE_UPDATE_TIME, NUM_MOVING_SPRITES);
     }
 
 
@@ -104,8 +111,8 @@ public class Player extends Entity {
      */
     void setDefaultValues() {
         // Set player spawn location
-        worldX = gp.TILE_SIZE * 27 - gp.TILE_SIZE;
-        worldY = gp.TILE_SIZE * 25 - gp.TILE_SIZE;
+        worldX = gw.TILE_SIZE * 27 - gw.TILE_SIZE;
+        worldY = gw.TILE_SIZE * 25 - gw.TILE_SIZE;
     }
 
 
@@ -128,73 +135,45 @@ public class Player extends Entity {
      * Determines whether the player is moving or idling and updates
      * the player's current direction accordingly.
      *
+     * The player can move along both axes at the same time (diagonally). The current direction
+     * (used for the sprites) is the vertical one in that case.
+     *
      * TODO: Optimize direction checking using a combined boolean flag. (Ex: isMoving = kh.isWASDPressed)
      */
     private void updateDirection() {
 
-        if(gp.gameStatus == GamePanel.GameStatus.RUNNING) {
-            boolean isMoving = kh.isUpPressed || kh.isDownPressed || kh.isLeftPressed || kh.isRightPressed;
-            boolean isIdle = !isMoving;
+        if(gw.gameStatus == GameWorld.GameStatus.RUNNING) {
+            // Opposite keys cancel each other
+            moveX = (kh.isRightPressed ? 1 : 0) - (kh.isLeftPressed ? 1 : 0);
+            moveY = (kh.isDownPressed ? 1 : 0) - (kh.isUpPressed ? 1 : 0);
 
-            if (isIdle || (kh.isUpPressed && kh.isDownPressed) || (kh.isLeftPressed && kh.isRightPressed)) {
+            if (moveX == 0 && moveY == 0) {
                 currentStatus = Status.IDLING;
             } else {
                 currentStatus = Status.MOVING;
 
-                if (kh.isUpPressed) { currentDirection = Direction.UP; }
-                else if (kh.isDownPressed) { currentDirection = Direction.DOWN; }
-                else if (kh.isLeftPressed) { currentDirection = Direction.LEFT; }
+                if (moveY < 0) { currentDirection = Direction.UP; }
+                else if (moveY > 0) { currentDirection = Direction.DOWN; }
+                else if (moveX < 0) { currentDirection = Direction.LEFT; }
                 else { currentDirection = Direction.RIGHT; }
             }
-        } else if(gp.gameStatus == GamePanel.GameStatus.DIALOGUE) {
+        } else if(gw.gameStatus == GameWorld.GameStatus.DIALOGUE) {
             currentStatus = Status.IDLING;
         }
     }
 
 
-    /**
-     * @brief Updates the player's sprite animation.
-     * Adjusts the current sprite frame based on the player's status
-     * and ensures smooth animation transitions.
-     */
-    public void updateSprite() {
-        spriteFramesCounter++;
-        setMultiplier(spriteImageNum); // Adjust animation speed based on player status and sprite frame
-
-        // if(NUM_MOVING_SPRITES > NUM_IDLING_SPRITES)
-        if (currentStatus == Status.IDLING && spriteImageNum > NUM_IDLING_SPRITES) {
-            spriteImageNum = 1;
-        }
-
-        if (spriteFramesCounter >= spriteCounterMultiplier) {
-            spriteFramesCounter = 0;
-            spriteImageNum++;
-            if (spriteImageNum > NUM_MOVING_SPRITES) {
-                spriteImageNum = 1;
-            }
-        }
-    }
-
-
-    /**
-     * @brief Sets the multiplier for sprite animation delays.
-     * Adjusts animation speed based on the player's status and sprite frame.
-     *
-     * @param spriteImageNum The current sprite frame number.
-     */
-    private void setMultiplier(int spriteImageNum) {
-        if (currentStatus == Status.IDLING) {
-            spriteCounterMultiplier = (spriteImageNum == 1) ? IDLING_SPRITE_MULTIPLIER_UPDATE_TIME : IDLING_SPRITE_MULTIPLIER_EYES_CLOSED;
-        } else {
-            spriteCounterMultiplier = MOVING_SPRITE_UPDATE_TIME;
-        }
-    }
-
-
     /**
      * @brief Updates the player's position in the game world
      * Handles collision detection and resolves movement based on the
      * player's current direction and interactions.
+     *
+     * The player moves until it touches a solid tile, object or NPC, and slides
+     * along it when moving diagonally. (See CollisionManager.move())
+     * The objects and the NPCs are checked along the same movement, so they are found on both axes.
+     *
+     * A diagonal step is shortened on both axes by 1 / sqrt(2), so the player walks at the same
+     * speed in every direction. The fractions of a pixel are kept for the next step.
      */
     private void updatePosition() {
         if (currentStatus == Status.MOVING) {
@@ -204,18 +183,23 @@ public class Player extends Entity {
             isCollidingWithObject = false;
             isCollidingWithEntity = false;
 
-            // Perform collision checks
-            gp.cm.checkTile(this, true);
+            int step = speed.getCurrent();
+            if (moveX != 0 && moveY != 0) {
+                int scaledStep = step * DIAGONAL_FACTOR + diagonalRemainder;
+                step = scaledStep >> 8;
+                diagonalRemainder = scaledStep & 0xFF;
+            }
+            int distanceX = moveX * step;
+            int distanceY = moveY * step;
 
-            objectIndex = gp.cm.checkObject(this, true);
+            // Interact with the objects and the NPCs on the way of the player
+            objectIndex = gw.cm.checkObject(this, distanceX, distanceY, true);
             pickUpObject(objectIndex);
 
-            NOT_USED_YET_1 = gp.cm.checkEntity(this, gp.npcArray);
+            NOT_USED_YET_1 = gw.cm.checkEntity(this, distanceX, distanceY);
             // Maybe "push" the entity away from the player if they collide?
 
-            if (!isCollidingWithTile && !isCollidingWithObject && !isCollidingWithEntity) {
-                move();
-            }
+            gw.cm.move(this, distanceX, distanceY);
         }
     }
 
@@ -233,8 +217,8 @@ public class Player extends Entity {
      * If the player is next to an NPC, the handleDialogue method is called.
      */
     private void checkForDialogues() {
-        for (int i = 0; i < gp.npcArray.length; i++) {
-            if (gp.npcArray[i] != null && gp.npcArray[i].isNextToPlayer) {
+        for (int i = 0; i < gw.npcArray.length; i++) {
+            if (gw.npcArray[i] != null && gw.npcArray[i].isNextToPlayer) {
                 handleDialogue(i);
             }
         }
@@ -258,9 +242,9 @@ public class Player extends Entity {
          * If the player presses the enter key and the dialogue has finished printing,
          * then the dialogue is displayed on the screen.
          */
-        if (kh.isEnterPressed && !enterKeyProcessed && gp.ui.hasFinishedPrintingDialogue) {
-            gp.gameStatus = GamePanel.GameStatus.DIALOGUE;
-            gp.npcArray[npcIndex].speak();
+        if (kh.isEnterPressed && !enterKeyProcessed && gw.ui.hasFinishedPrintingDialogue) {
+            gw.gameStatus = GameWorld.GameStatus.DIALOGUE;
+            gw.npcArray[npcIndex].speak();
 
             /*
              * If this was the last dialogue, reset the dialogue index to
@@ -272,11 +256,11 @@ public class Player extends Entity {
              * By doing this, the method won't be called anymore after the last dialogue
              * because the game status will be set to RUNNING.
              */
-            if (gp.npcArray[npcIndex].hasFinishedDialogues()) {
-                gp.npcArray[npcIndex].dialogueIndex = 0;
-                gp.gameStatus = GamePanel.GameStatus.RUNNING;
+            if (gw.npcArray[npcIndex].hasFinishedDialogues()) {
+                gw.npcArray[npcIndex].dialogueIndex = 0;
+                gw.gameStatus = GameWorld.GameStatus.RUNNING;
             } else {
-                gp.npcArray[npcIndex].dialogueIndex++;
+                gw.npcArray[npcIndex].dialogueIndex++;
                 isReadyForNextDialogue = true;
             }
 
@@ -317,40 +301,42 @@ public class Player extends Entity {
      */
     private void pickUpObject(int index) {
         if(index != -1) {
-            SuperObject.ObjectType objectName = gp.objectsArray[index].objectType;
+            SuperObject.ObjectType objectName = gw.objectsArray[index].objectType;
 
             switch(objectName) {
                 case KEY -> {
                     hasKey++;
-                    gp.ui.showMessage("You picked up a key!");
-                    gp.objectsArray[index] = null;
-                    gp.playSound(1);
+                    gw.ui.showMessage("You picked up a key!");
+                    gw.objectsArray[index] = null;
+                    gw.playSound(1);
                 }
 
                 case DOOR -> {
                     if(hasKey > 0) {
-                        gp.ui.showMessage("You used a key!");
-                        gp.objectsArray[index] = null;
+                        gw.ui.showMessage("You used a key!");
+                        gw.objectsArray[index] = null;
                         hasKey--;
-                        gp.playSound(3);
+                        gw.playSound(3);
                     } else {
-                        gp.ui.showMessage("You need a key to open this door!");
+                        gw.ui.showMessage("You need a key to open this door!");
                     }
                 }
 
                 case BOOTS -> {
-                    gp.ui.showMessage("You picked up boots!");
+                    gw.ui.showMessage("You picked up boots!");
                     speed.setCurrent(speed.getCurrent() * 2);
-                    gp.objectsArray[index] = null;
-                    gp.playSound(2);
+                    gw.objectsArray[index] = null;
+                    gw.playSound(2);
                 }
 
                 case CHEST -> {
-                    gp.stopMusic();
-                    gp.playSound(4);
-                    gp.ui.gameFinished = true;
+                    gw.stopMusic();
+                    gw.playSound(4);
+                    gw.ui.gameFinished = true;
                 }
             }
+
+            gw.cm.updateObject(index); // Removes the object from the grid if it was picked up
         }
     }
 
@@ -358,6 +344,6 @@ public class Player extends Entity {
      * @brief Check for events
      */
     public void checkForEvents() {
-        gp.eh.checkEvent();
+        gw.eh.checkEvent();
     }
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+package com.lucafacchini.entity;
+
+import com.lucafacchini.AssetLoader;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Loads the sprites of the entities, once per type of entity and size.
+ *
+ * Every entity of the same type (for example every old man) receives the same SpriteSet,
+ * so the memory of an entity doesn't depend on how many sprites it has.
+ *
+ * The sprites of a type are read from a folder of the resources, named like
+ * walk_up_1.png, walk_up_2.png... and idling/idling_up_1.png...
+ *
+ * It's only used by the game thread, while the world is created.
+ */
+public class SpriteRegistry {
+
+    // Debugging
+    private static final Logger LOGGER = Logger.getLogger(SpriteRegistry.class.getName());
+
+    // The file names of every SpriteImagesEnum, in the order of the enum
+    private static final String[] FILE_NAMES = {
+            "idling/idling_up_", "idling/idling_down_", "idling/idling_left_", "idling/idling_right_",
+            "walk_up_", "walk_down_", "walk_left_", "walk_right_"
+    };
+
+    private final AssetLoader assets;
+    private final HashMap<String, SpriteSet> spriteSets = new HashMap<>(); // Indexed by folder, frame counts, durations and size
+
+    /**
+     * @brief Constructor of the SpriteRegistry class.
+     * @param assets The AssetLoader that loads the images.
+     */
+    public SpriteRegistry(AssetLoader assets) {
+        this.assets = assets;
+    }
+
+
+    /**
+     * @brief Returns the sprites of a type of entity, with the same animations in every direction.
+     * @see #getSprites(String, int[], int[], int, int)
+     */
+    public SpriteSet getSprites(String folderPath,
+                                int NUM_MOVING, int NUM_IDLING,
+                                int MOVING_FRAME_TIME, int IDLING_FRAME_TIME,
+                                int WIDTH, int HEIGHT) {
+        return getSprites(folderPath,
+                new int[]{ NUM_IDLING, NUM_IDLING, NUM_IDLING, NUM_IDLING, NUM_MOVING, NUM_MOVING, NUM_MOVING, NUM_MOVING },
+                new int[]{ IDLING_FRAME_TIME, IDLING_FRAME_TIME, IDLING_FRAME_TIME, IDLING_FRAME_TIME,
+                        MOVING_FRAME_TIME, MOVING_FRAME_TIME, MOVING_FRAME_TIME, MOVING_FRAME_TIME },
+                WIDTH, HEIGHT);
+    }
+
+
+    /**
+     * @brief Returns the sprites of a type of entity.
+     * The first time a sprite set is requested, its images are loaded in parallel (See AssetLoader).
+     * The next requests return the same SpriteSet.
+     *
+     * @param folderPath The path of the folder containing the sprite images. (For example "npc/old_man")
+     * @param frameCounts The number of frames of every animation, in the order of SpriteImagesEnum.
+     * @param frameDurations The ticks every frame lasts, for every animation.
+     * @param WIDTH The width of the sprites. (Already rescaled in px.)
+     * @param HEIGHT The height of the sprites. (Already rescaled in px.)
+     * @return The shared sprite set.
+     */
+    public SpriteSet getSprites(String folderPath, int[] frameCounts, int[] frameDurations, int WIDTH, int HEIGHT) {
+        String key = folderPath + Arrays.toString(frameCounts) + Arrays.toString(frameDurations) + "@" + WIDTH + "x" + HEIGHT;
+
+        SpriteSet sprites = spriteSets.get(key);
+        if (sprites == null) {
+            sprites = new SpriteSet(frameCounts, frameDurations);
+            spriteSets.put(key, sprites);
+            load(sprites, folderPath, frameCounts, WIDTH, HEIGHT);
+
+            LOGGER.log(Level.FINE, "Loading the sprites of {0}", key);
+        }
+
+        return sprites;
+    }
+
+
+    /**
+     * @brief Requests every image of a new sprite set.
+     */
+    private void load(SpriteSet sprites, String folderPath, int[] frameCounts, int WIDTH, int HEIGHT) {
+        for (Entity.SpriteImagesEnum type : Entity.SpriteImagesEnum.values()) {
+            for (int i = 0; i < frameCounts[type.ordinal()]; i++) {
+                int index = i;
+                String path = "/" + folderPath + "/" + FILE_NAMES[type.ordinal()] + (i + 1) + ".png";
+
+                assets.loadImage(path, WIDTH, HEIGHT, image -> sprites.setFrame(type.ordinal(), index, image));
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.lucafacchini.entity;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * The animations of a type of entity: one animation for every status and direction. (See SpriteImagesEnum)
+ *
+ * The table is precompiled when the sprites are loaded: the frames of every animation are stored
+ * one after the other in a single array, and every animation has its first frame (offset), its number
+ * of frames (length) and the number of ticks a frame lasts. So the current frame of an entity
+ * is found with a few array reads, from the ticks passed since its animation started.
+ *
+ * A sprite set is shared by every entity of the same type (See SpriteRegistry), so it can't be modified:
+ * the images are only written by the AssetLoader, before the game starts.
+ */
+public class SpriteSet {
+
+    public static final int DIRECTIONS = Entity.Direction.values().length;
+    public static final int ANIMATIONS = Entity.SpriteImagesEnum.values().length;
+
+    private final BufferedImage[] frames; // The frames of every animation, one animation after the other
+    private final int[] offsets = new int[ANIMATIONS]; // The index of the first frame of every animation
+    private final int[] lengths = new int[ANIMATIONS]; // The number of frames of every animation
+    private final int[] frameDurations = new int[ANIMATIONS]; // The ticks every frame lasts, for every animation
+
+    /**
+     * @brief Constructor of the SpriteSet class.
+     * The images are empty until they are loaded. (See SpriteRegistry)
+     *
+     * @param frameCounts The number of frames of every animation, in the order of SpriteImagesEnum.
+     * @param frameDurations The ticks every frame lasts, for every animation. (At least 1)
+     */
+    SpriteSet(int[] frameCounts, int[] frameDurations) {
+        int frameCount = 0;
+        for (int i = 0; i < ANIMATIONS; i++) {
+            offsets[i] = frameCount;
+            lengths[i] = frameCounts[i];
+            this.frameDurations[i] = Math.max(frameDurations[i], 1);
+            frameCount += frameCounts[i];
+        }
+        frames = new BufferedImage[frameCount];
+    }
+
+
+    /**
+     * @brief Returns the animation of a status and a direction. (The ordinal of its SpriteImagesEnum)
+     *
+     * @param status The ordinal of the Entity.Status.
+     * @param direction The ordinal of the Entity.Direction.
+     * @return The index of the animation.
+     */
+    public static int animationOf(int status, int direction) {
+        return status * DIRECTIONS + direction;
+    }
+
+
+    /**
+     * @brief Returns the animation of a status and a direction.
+     * @see #animationOf(int, int)
+     */
+    public static int animationOf(Entity.Status status, Entity.Direction direction) {
+        return animationOf(status.ordinal(), direction.ordinal());
+    }
+
+
+    /**
+     * @brief Returns the frame to show, after some ticks from the start of an animation.
+     * The animation loops.
+     *
+     * @param animation The index of the animation.
+     * @param ticks The ticks passed since the animation started.
+     * @return The index of the frame (See getFrame()), or -1 if the animation has no frames.
+     */
+    public int getFrameIndex(int animation, int ticks) {
+        if (lengths[animation] == 0) return -1;
+        return offsets[animation] + (ticks / frameDurations[animation]) % lengths[animation];
+    }
+
+
+    /**
+     * @brief Returns a single frame.
+     *
+     * @param frameIndex The index of the frame. (See getFrameIndex())
+     * @return The image of the frame, or null if there is no frame or it couldn't be loaded.
+     */
+    public BufferedImage getFrame(int frameIndex) {
+        return frameIndex < 0 ? null : frames[frameIndex];
+    }
+
+
+    /**
+     * @brief Sets a single frame. It's only called by the SpriteRegistry, when the image is loaded.
+     *
+     * @param animation The index of the animation.
+     * @param index The index of the frame in the animation (from 0).
+     * @param image The image of the frame.
+     */
+    void setFrame(int animation, int index, BufferedImage image) {
+        frames[offsets[animation] + index] = image;
+    }
+}
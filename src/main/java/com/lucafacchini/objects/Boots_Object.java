@@ -1,10 +1,7 @@
 package com.lucafacchini.objects;
 
-import com.lucafacchini.Utilities;
-import com.lucafacchini.GamePanel;
+import com.lucafacchini.GameWorld;
 
-import javax.imageio.ImageIO;
-import java.util.Objects;
 import java.util.logging.Logger;
 
 /**
@@ -17,18 +14,12 @@ public class Boots_Object extends SuperObject {
 
     /**
      * @brief Constructor for the Boots_Object class.
-     * @param gp The GamePanel instance.
-     * @param utilities to rescale the image (call the rescaleImage method).
+     * @param gw The GameWorld instance.
      */
-    public Boots_Object(GamePanel gp, Utilities utilities) {
+    public Boots_Object(GameWorld gw) {
 
         objectType = ObjectType.BOOTS;
 
-        try {
-            image = ImageIO.read(Objects.requireNonNull(getClass().getResourceAsStream("/objects/boots.png")));
-            image = utilities.rescaleImage(image, gp.TILE_SIZE, gp.TILE_SIZE);
-        } catch (Exception e) {
-            LOGGER.severe("Error loading boots image: " + e.getMessage());
-        }
+        gw.assets.loadImage("/objects/boots.png", gw.TILE_SIZE, gw.TILE_SIZE, loadedImage -> image = loadedImage);
     }
 }
\ No newline at end of file
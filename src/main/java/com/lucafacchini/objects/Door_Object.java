@@ -1,10 +1,7 @@
 package com.lucafacchini.objects;
 
-import com.lucafacchini.GamePanel;
-import com.lucafacchini.Utilities;
+import com.lucafacchini.GameWorld;
 
-import javax.imageio.ImageIO;
-import java.util.Objects;
 import java.util.logging.Logger;
 
 /**
@@ -17,19 +14,13 @@ public class Door_Object extends SuperObject {
 
     /**
      * @brief Constructor for the Door_Object class.
-     * @param gp The GamePanel instance.
-     * @param utilities to rescale the image (call the rescaleImage method).
+     * @param gw The GameWorld instance.
      */
-    public Door_Object(GamePanel gp, Utilities utilities) {
+    public Door_Object(GameWorld gw) {
 
         objectType = ObjectType.DOOR;
 
-        try {
-            image = ImageIO.read(Objects.requireNonNull(getClass().getResourceAsStream("/objects/door.png")));
-            image = utilities.rescaleImage(image, gp.TILE_SIZE, gp.TILE_SIZE);
-        } catch (Exception e) {
-            LOGGER.severe("Error loading door image: " + e.getMessage());
-        }
+        gw.assets.loadImage("/objects/door.png", gw.TILE_SIZE, gw.TILE_SIZE, loadedImage -> image = loadedImage);
         isSolid = true;
     }
 }
\ No newline at end of file
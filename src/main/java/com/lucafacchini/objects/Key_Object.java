@@ -1,10 +1,7 @@
 package com.lucafacchini.objects;
 
-import com.lucafacchini.Utilities;
-import com.lucafacchini.GamePanel;
+import com.lucafacchini.GameWorld;
 
-import javax.imageio.ImageIO;
-import java.util.Objects;
 import java.util.logging.Logger;
 
 /**
@@ -17,19 +14,13 @@ public class Key_Object extends SuperObject {
 
     /**
      * @brief Constructor for the Key_Object class.
-     * @param gp The GamePanel instance.
-     * @param utilities to rescale the image (call the rescaleImage method).
+     * @param gw The GameWorld instance.
      */
-    public Key_Object(GamePanel gp, Utilities utilities) {
+    public Key_Object(GameWorld gw) {
 
         objectType = ObjectType.KEY;
 
-        try {
-            image = ImageIO.read(Objects.requireNonNull(getClass().getResourceAsStream("/objects/key.png")));
-            image = utilities.rescaleImage(image, gp.TILE_SIZE, gp.TILE_SIZE);
-        } catch (Exception e) {
-            LOGGER.severe("Error loading key image: " + e.getMessage());
-        }
+        gw.assets.loadImage("/objects/key.png", gw.TILE_SIZE, gw.TILE_SIZE, loadedImage -> image = loadedImage);
         isSolid = true;
     }
 }
\ No newline at end of file
@@ -1,6 +1,6 @@
 package com.lucafacchini.objects;
 
-import com.lucafacchini.GamePanel;
+import com.lucafacchini.GameWorld;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
@@ -28,7 +28,7 @@ public class SuperObject {
 
     public boolean isSolid = false; // If the object is solid, the player cannot walk through it.
 
-    // TODO: Replace size with gp.TILE_SIZE. Must use a constructor to pass gp.TILE_SIZE.
+    // TODO: Replace size with gw.TILE_SIZE. Must use a constructor to pass gw.TILE_SIZE.
     public Rectangle boundingBox = new Rectangle(0, 0, 64, 64);
     public int boundingBoxDefaultX = 0;
     public int boundingBoxDefaultY = 0;
@@ -36,23 +36,44 @@ public class SuperObject {
     public BufferedImage image; // The image of the object.
 
 
+    /**
+     * @brief Returns the x coordinate of the bounding box in the world.
+     * @return the left side of the bounding box.
+     */
+    public int getBoundingBoxWorldX() {
+        return worldX + boundingBoxDefaultX;
+    }
+
+
+    /**
+     * @brief Returns the y coordinate of the bounding box in the world.
+     * @return the top side of the bounding box.
+     */
+    public int getBoundingBoxWorldY() {
+        return worldY + boundingBoxDefaultY;
+    }
+
+
     /**
      * @brief This method is used to draw the object on the screen.
      * It calculates the screenX and screenY based on the player's position.
      * It also checks if the object is within the screen boundaries before drawing it. (Optimization)
      *
      * @param g2d The Graphics2D object.
-     * @param gp The GamePanel instance.
+     * @param gw The GameWorld instance.
      */
-    public void draw(Graphics2D g2d, GamePanel gp) {
-        screenX = worldX - gp.player.worldX + gp.player.screenX;
-        screenY = worldY - gp.player.worldY + gp.player.screenY;
+    public void draw(Graphics2D g2d, GameWorld gw) {
+        int cameraX = gw.player.getRenderX();
+        int cameraY = gw.player.getRenderY();
+
+        screenX = worldX - cameraX + gw.player.screenX;
+        screenY = worldY - cameraY + gw.player.screenY;
 
         // If the object is within the screen boundaries, draw it.
-        if (worldX + gp.TILE_SIZE > gp.player.worldX - gp.player.screenX &&
-                worldX - gp.TILE_SIZE < gp.player.worldX + gp.player.screenX &&
-                worldY + gp.TILE_SIZE > gp.player.worldY - gp.player.screenY &&
-                worldY - gp.TILE_SIZE < gp.player.worldY + gp.player.screenY) {
+        if (worldX + gw.TILE_SIZE > cameraX - gw.player.screenX &&
+                worldX - gw.TILE_SIZE < cameraX + gw.player.screenX &&
+                worldY + gw.TILE_SIZE > cameraY - gw.player.screenY &&
+                worldY - gw.TILE_SIZE < cameraY + gw.player.screenY) {
             g2d.drawImage(image, screenX, screenY, null);
         }
 
@@ -0,0 +1,169 @@
+package com.lucafacchini.tiles;
+
+import com.lucafacchini.GameWorld;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class converts the CSV maps into a binary map. (See MapFile for the format)
+ *
+ * Each layer of GameWorld.MapType is read from its own CSV file, and every layer is
+ * written into a single binary map. Missing cells (short rows or missing rows) are empty tiles.
+ *
+ * It's run by the "compileMaps" gradle task, which writes the binary map into the resources:
+ * MapCompiler <CSV directory> <output file>
+ *
+ * It's also used by the TileManager when the binary map is missing, so the game still
+ * starts from the CSV maps (only slower).
+ */
+public class MapCompiler {
+
+    // Debugging
+    private static final Logger LOGGER = Logger.getLogger(MapCompiler.class.getName());
+
+    /**
+     * @brief Reads a layer of the map from a CSV file, where each number represents a tile.
+     *
+     * @param reader The CSV file.
+     * @return The rows of the layer.
+     * @throws IOException If the file can't be read or contains something that is not a number.
+     */
+    public static List<int[]> readCsv(BufferedReader reader) throws IOException {
+        List<int[]> layer = new ArrayList<>();
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) continue; // Skip empty lines (usually the last one)
+
+            String[] numbers = line.split(",");
+            int[] row = new int[numbers.length];
+            for (int i = 0; i < numbers.length; i++) {
+                row[i] = Integer.parseInt(numbers[i].trim());
+            }
+            layer.add(row);
+        }
+
+        return layer;
+    }
+
+
+    /**
+     * @brief Compiles the layers of a map into a binary map.
+     * The size of the map is the size of the biggest layer.
+     *
+     * @param layers The rows of every layer, in the order of GameWorld.MapType.
+     * @return The binary map, ready to be written or read by MapFile.
+     */
+    public static ByteBuffer compile(List<List<int[]>> layers) {
+        int columns = 0;
+        int rows = 0;
+        for (List<int[]> layer : layers) {
+            rows = Math.max(rows, layer.size());
+            for (int[] row : layer) {
+                columns = Math.max(columns, row.length);
+            }
+        }
+
+        int layerSize = columns * rows;
+        int[] tiles = new int[layers.size() * layerSize];
+        Arrays.fill(tiles, TileManager.EMPTY_TILE);
+
+        TreeSet<Integer> palette = new TreeSet<>();
+        for (int layer = 0; layer < layers.size(); layer++) {
+            List<int[]> layerRows = layers.get(layer);
+            for (int row = 0; row < layerRows.size(); row++) {
+                int[] cells = layerRows.get(row);
+                System.arraycopy(cells, 0, tiles, layer * layerSize + row * columns, cells.length);
+
+                for (int tileID : cells) {
+                    if (tileID != TileManager.EMPTY_TILE) {
+                        palette.add(tileID);
+                    }
+                }
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(MapFile.HEADER_SIZE + (palette.size() + tiles.length) * Integer.BYTES)
+                .order(MapFile.BYTE_ORDER);
+        buffer.putInt(MapFile.MAGIC)
+                .putInt(MapFile.VERSION)
+                .putInt(columns)
+                .putInt(rows)
+                .putInt(layers.size())
+                .putInt(palette.size());
+        for (int tileID : palette) {
+            buffer.putInt(tileID);
+        }
+        buffer.asIntBuffer().put(tiles);
+
+        return buffer.rewind();
+    }
+
+
+    /**
+     * @brief Compiles the CSV maps stored in the resources.
+     *
+     * @param mapsPath The resource directory of the CSV maps.
+     * @return The binary map.
+     * @throws IOException If a layer is missing or can't be read.
+     */
+    public static ByteBuffer compileResources(String mapsPath) throws IOException {
+        List<List<int[]>> layers = new ArrayList<>();
+
+        for (GameWorld.MapType layer : GameWorld.MapType.values()) {
+            InputStream inputFile = MapCompiler.class.getResourceAsStream(mapsPath + layer.fileName);
+            if (inputFile == null) {
+                throw new FileNotFoundException("Map not found: " + mapsPath + layer.fileName);
+            }
+
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputFile))) {
+                layers.add(readCsv(reader));
+            }
+        }
+
+        return compile(layers);
+    }
+
+
+    /**
+     * @brief Main method of the map compiler.
+     * @param args The directory of the CSV maps, and the path of the binary map to write.
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: MapCompiler <CSV directory> <output file>");
+            System.exit(1);
+        }
+
+        Path inputDirectory = Path.of(args[0]);
+        Path outputFile = Path.of(args[1]);
+
+        try {
+            List<List<int[]>> layers = new ArrayList<>();
+            for (GameWorld.MapType layer : GameWorld.MapType.values()) {
+                try (BufferedReader reader = Files.newBufferedReader(inputDirectory.resolve(layer.fileName))) {
+                    layers.add(readCsv(reader));
+                }
+            }
+
+            ByteBuffer buffer = compile(layers);
+            Files.write(outputFile, buffer.array());
+
+            MapFile map = MapFile.wrap(buffer);
+            LOGGER.log(Level.INFO, "Compiled map {0}: {1}x{2}, {3} layers, {4} distinct tiles",
+                    new Object[]{outputFile, map.columns, map.rows, map.layerCount, map.palette.length});
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.log(Level.SEVERE, "Failed to compile the maps", e);
+            System.exit(1);
+        }
+    }
+}
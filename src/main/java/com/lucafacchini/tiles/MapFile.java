@@ -0,0 +1,149 @@
+package com.lucafacchini.tiles;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * This class reads a compiled (binary) map.
+ *
+ * The binary map contains every layer of the map, already converted to numbers,
+ * so loading it doesn't need any text parsing. It's created from the CSV maps by MapCompiler.
+ *
+ * Format (little endian, 4 bytes per value):
+ *
+ *  - magic number ("FMAP") and format version
+ *  - number of columns, rows and layers
+ *  - palette size, followed by the palette: every distinct tile ID used by the map (sorted)
+ *  - the tile IDs of every layer, one layer after the other, row by row
+ *
+ * When the map is a file on disk it's memory-mapped, so the operating system pages it
+ * in on demand, and the blocks of tiles are copied with bulk reads. (See WorldChunkStore)
+ */
+public class MapFile {
+
+    // Format settings
+    public static final int MAGIC = 0x50414D46; // "FMAP" in little endian
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 6 * Integer.BYTES; // magic, version, columns, rows, layers, palette size
+    public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    // Map properties
+    public final int columns;
+    public final int rows;
+    public final int layerCount;
+    public final int[] palette; // Every distinct tile ID used by the map, without the empty tile.
+
+    private final IntBuffer tileData; // The tile IDs of every layer
+
+    /**
+     * @brief Constructor for the MapFile class.
+     * Reads and validates the header of the map.
+     *
+     * @param buffer The content of the binary map.
+     * @throws IOException If the buffer is not a valid binary map.
+     */
+    private MapFile(ByteBuffer buffer) throws IOException {
+        buffer.order(BYTE_ORDER);
+
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a binary map");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported binary map version: " + buffer.getInt(4));
+        }
+
+        columns = buffer.getInt(8);
+        rows = buffer.getInt(12);
+        layerCount = buffer.getInt(16);
+        int paletteSize = buffer.getInt(20);
+
+        long expectedSize = HEADER_SIZE + (long) paletteSize * Integer.BYTES + (long) layerCount * rows * columns * Integer.BYTES;
+        if (columns <= 0 || rows <= 0 || layerCount <= 0 || paletteSize < 0 || buffer.capacity() != expectedSize) {
+            throw new IOException("Corrupted binary map (" + columns + "x" + rows + "x" + layerCount + ")");
+        }
+
+        IntBuffer data = buffer.position(HEADER_SIZE).slice().order(BYTE_ORDER).asIntBuffer();
+        palette = new int[paletteSize];
+        data.get(0, palette);
+        tileData = data.slice(paletteSize, data.capacity() - paletteSize);
+    }
+
+
+    /**
+     * @brief Opens a binary map from the resources.
+     *
+     * If the resource is a file on disk (for example when running from the IDE or from gradle)
+     * the file is memory-mapped. If it's inside a jar, it's read into memory.
+     *
+     * @param resourcePath The path of the resource.
+     * @return The binary map.
+     * @throws IOException If the map doesn't exist or is not valid.
+     */
+    public static MapFile open(String resourcePath) throws IOException {
+        URL url = MapFile.class.getResource(resourcePath);
+        if (url == null) {
+            throw new IOException("Binary map not found: " + resourcePath);
+        }
+
+        if (url.getProtocol().equals("file")) {
+            try (FileChannel channel = FileChannel.open(Path.of(url.toURI()), StandardOpenOption.READ)) {
+                return new MapFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            } catch (URISyntaxException e) {
+                throw new IOException("Invalid path: " + url, e);
+            }
+        }
+
+        try (InputStream inputStream = url.openStream()) {
+            return new MapFile(ByteBuffer.wrap(inputStream.readAllBytes()));
+        }
+    }
+
+
+    /**
+     * @brief Reads a binary map that is already in memory.
+     *
+     * @param buffer The content of the binary map.
+     * @return The binary map.
+     * @throws IOException If the buffer is not a valid binary map.
+     */
+    public static MapFile wrap(ByteBuffer buffer) throws IOException {
+        return new MapFile(buffer);
+    }
+
+
+    /**
+     * @brief Copies a square block of tiles of every layer into an array.
+     * Only the rows of the block are read, so the rest of the map is never paged in.
+     * The part of the block outside the map is filled with empty tiles.
+     *
+     * It's safe to call it from several threads at the same time.
+     *
+     * @param tiles The destination. Layer by layer, row by row, size x size tiles per layer.
+     * @param firstColumn The first column of the block.
+     * @param firstRow The first row of the block.
+     * @param size The number of tiles on each side of the block.
+     */
+    public void readBlock(int[] tiles, int firstColumn, int firstRow, int size) {
+        Arrays.fill(tiles, TileManager.EMPTY_TILE);
+
+        int width = Math.min(size, columns - firstColumn);
+        int height = Math.min(size, rows - firstRow);
+        if (width <= 0 || height <= 0) return;
+
+        for (int layer = 0; layer < layerCount; layer++) {
+            for (int row = 0; row < height; row++) {
+                int mapIndex = (layer * rows + firstRow + row) * columns + firstColumn;
+                tileData.get(mapIndex, tiles, (layer * size + row) * size, width);
+            }
+        }
+    }
+}
@@ -1,16 +0,0 @@
-package com.lucafacchini.tiles;
-
-import java.awt.*;
-import java.awt.image.BufferedImage;
-
-/**
- * Represents a tile in the game.
- */
-public class Tile {
-
-    // Properties
-    public boolean isSolid = false; // Indicates if the tile is solid
-
-    // Image
-    public BufferedImage image; // The image representing the tile
-}
\ No newline at end of file
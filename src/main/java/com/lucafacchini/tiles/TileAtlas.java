@@ -0,0 +1,291 @@
+package com.lucafacchini.tiles;
+
+import com.lucafacchini.ImageCache;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * This class stores the images of all the tiles in a single big image (the atlas).
+ *
+ * The tiles are placed in a grid of COLUMNS columns, one tile per slot, and the atlas
+ * keeps the slot of every tile ID. A tile is drawn by copying its slot of the atlas.
+ *
+ * The atlas is packed at build time by the "packTiles" gradle task:
+ * TileAtlas <tiles directory> <output directory>
+ * which writes the atlas image (atlas.png) and the tile ID of every slot (atlas.idx).
+ *
+ * When the packed atlas is missing, the atlas is packed when the game starts from the
+ * single tile images (/tiles/tile_<ID>.png), already rescaled. The packed atlas is rescaled
+ * only once, and the rescaled atlas is cached on the disk. (See ImageCache)
+ */
+public class TileAtlas {
+
+    // Debugging
+    private static final Logger LOGGER = Logger.getLogger(TileAtlas.class.getName());
+
+    // Atlas settings
+    public static final String TILES_PATH = "/tiles/";
+    public static final String IMAGE_FILE = "atlas.png";
+    public static final String INDEX_FILE = "atlas.idx";
+    public static final int COLUMNS = 32; // The number of slots on each row of the atlas.
+    public static final int ORIGINAL_TILE_SIZE = 16; // The size of the tile images, before rescaling.
+    private static final Pattern TILE_FILE_PATTERN = Pattern.compile("tile_(-?\\d+)\\.png");
+
+    /**
+     * @brief The atlas image. It's replaced by a bigger copy when it's full. (See add())
+     */
+    private volatile BufferedImage image;
+
+    private final int tileSize; // The size of a slot, in pixels.
+    private final HashMap<Integer, Integer> slots = new HashMap<>(); // Tile ID -> slot
+
+    /**
+     * @brief Constructor for the TileAtlas class.
+     *
+     * @param image The atlas, with tileSize x tileSize pixels per slot.
+     * @param tileIDs The tile ID of every slot.
+     * @param tileSize The size of a tile on the screen.
+     */
+    private TileAtlas(BufferedImage image, int[] tileIDs, int tileSize) {
+        this.tileSize = tileSize;
+        this.image = image;
+
+        for (int slot = 0; slot < tileIDs.length; slot++) {
+            slots.put(tileIDs[slot], slot);
+        }
+    }
+
+
+    /**
+     * @brief Loads the atlas packed at build time, and rescales it.
+     *
+     * @param tileSize The size of a tile on the screen.
+     * @param imageCache The cache of the rescaled atlas.
+     * @return The atlas, or null if there is no packed atlas.
+     * @throws Exception If the packed atlas can't be read.
+     */
+    public static TileAtlas load(int tileSize, ImageCache imageCache) throws Exception {
+        InputStream imageStream = TileAtlas.class.getResourceAsStream(TILES_PATH + IMAGE_FILE);
+        InputStream indexStream = TileAtlas.class.getResourceAsStream(TILES_PATH + INDEX_FILE);
+
+        try (imageStream; indexStream) {
+            if (imageStream == null || indexStream == null) {
+                return null;
+            }
+
+            DataInputStream index = new DataInputStream(new BufferedInputStream(indexStream));
+            int[] tileIDs = new int[index.readInt()];
+            for (int slot = 0; slot < tileIDs.length; slot++) {
+                tileIDs[slot] = index.readInt();
+            }
+
+            byte[] source = imageStream.readAllBytes();
+            int rows = rowsFor(tileIDs.length);
+
+            BufferedImage atlasImage = imageCache.getScaledImage(source, COLUMNS * tileSize, rows * tileSize, () -> {
+                BufferedImage packedImage = ImageIO.read(new ByteArrayInputStream(source));
+                if (packedImage == null) {
+                    throw new IOException("Failed to read the atlas image");
+                }
+                return rescaleImage(packedImage, COLUMNS * tileSize, rows * tileSize);
+            });
+
+            return new TileAtlas(atlasImage, tileIDs, tileSize);
+        }
+    }
+
+
+    /**
+     * @brief Packs the given tile images into a new atlas.
+     *
+     * @param images The image of every tile ID, already rescaled.
+     * @param tileSize The size of a tile on the screen.
+     * @return The atlas.
+     */
+    public static TileAtlas pack(Map<Integer, BufferedImage> images, int tileSize) {
+        int[] tileIDs = images.keySet().stream().mapToInt(Integer::intValue).toArray();
+        return new TileAtlas(packImages(tileIDs, images, tileSize), tileIDs, tileSize);
+    }
+
+
+    /**
+     * @brief Returns the number of rows of an atlas.
+     * There is always at least a free row, for the tiles added later. (See add())
+     */
+    private static int rowsFor(int tileCount) {
+        return tileCount / COLUMNS + 1;
+    }
+
+
+    /**
+     * @brief Draws every image into the slots of an atlas.
+     *
+     * @param tileIDs The tile ID of every slot.
+     * @param images The image of every tile ID.
+     * @param slotSize The size of a slot, in pixels.
+     * @return The packed atlas.
+     */
+    private static BufferedImage packImages(int[] tileIDs, Map<Integer, BufferedImage> images, int slotSize) {
+        BufferedImage packedImage = new BufferedImage(COLUMNS * slotSize, rowsFor(tileIDs.length) * slotSize, BufferedImage.TYPE_INT_ARGB);
+
+        Graphics2D g2d = packedImage.createGraphics();
+        for (int slot = 0; slot < tileIDs.length; slot++) {
+            int x = (slot % COLUMNS) * slotSize;
+            int y = (slot / COLUMNS) * slotSize;
+            g2d.drawImage(images.get(tileIDs[slot]), x, y, slotSize, slotSize, null);
+        }
+        g2d.dispose();
+
+        return packedImage;
+    }
+
+
+    /**
+     * @brief Rescales an image. (Nearest neighbour, so the slots don't bleed into each other)
+     */
+    private static BufferedImage rescaleImage(BufferedImage originalImage, int width, int height) {
+        BufferedImage resizedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = resizedImage.createGraphics();
+        g2d.drawImage(originalImage, 0, 0, width, height, null);
+        g2d.dispose();
+        return resizedImage;
+    }
+
+
+    /**
+     * @brief Adds a tile to the atlas, after it has been created.
+     * (For example when a tile that is not used by the map is placed with TileManager.setTile())
+     * If the atlas is full, it's copied into a bigger image.
+     *
+     * @param tileID The ID of the tile.
+     * @param tileImage The image of the tile.
+     */
+    public void add(int tileID, BufferedImage tileImage) {
+        if (slots.containsKey(tileID)) return;
+
+        int slot = slots.size();
+        int x = getSlotX(slot);
+        int y = getSlotY(slot);
+
+        BufferedImage atlasImage = image;
+        if (y + tileSize > atlasImage.getHeight()) {
+            BufferedImage biggerImage = new BufferedImage(atlasImage.getWidth(), atlasImage.getHeight() * 2, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2d = biggerImage.createGraphics();
+            g2d.drawImage(atlasImage, 0, 0, null);
+            g2d.dispose();
+            atlasImage = biggerImage;
+        }
+
+        Graphics2D g2d = atlasImage.createGraphics();
+        g2d.drawImage(tileImage, x, y, tileSize, tileSize, null);
+        g2d.dispose();
+
+        image = atlasImage;
+        slots.put(tileID, slot);
+    }
+
+
+    /**
+     * @brief Returns the slot of a tile.
+     *
+     * @param tileID The ID of the tile.
+     * @return The slot, or -1 if the tile is not in the atlas.
+     */
+    public int getSlot(int tileID) {
+        return slots.getOrDefault(tileID, -1);
+    }
+
+
+    /**
+     * @brief Returns the x coordinate of a slot in the atlas, in pixels.
+     */
+    public int getSlotX(int slot) {
+        return (slot % COLUMNS) * tileSize;
+    }
+
+
+    /**
+     * @brief Returns the y coordinate of a slot in the atlas, in pixels.
+     */
+    public int getSlotY(int slot) {
+        return (slot / COLUMNS) * tileSize;
+    }
+
+
+    /**
+     * @brief Draws a tile, copying its slot of the atlas.
+     *
+     * @param g2d The Graphics2D object.
+     * @param atlasX The x coordinate of the slot. (See getSlotX())
+     * @param atlasY The y coordinate of the slot. (See getSlotY())
+     * @param x The x coordinate where the tile is drawn.
+     * @param y The y coordinate where the tile is drawn.
+     */
+    public void draw(Graphics2D g2d, int atlasX, int atlasY, int x, int y) {
+        g2d.drawImage(image,
+                x, y, x + tileSize, y + tileSize,
+                atlasX, atlasY, atlasX + tileSize, atlasY + tileSize,
+                null);
+    }
+
+
+    /**
+     * @brief Main method of the atlas packer.
+     * Packs every tile image (tile_<ID>.png) of a directory into an atlas.
+     *
+     * @param args The directory of the tile images, and the directory where the atlas is written.
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: TileAtlas <tiles directory> <output directory>");
+            System.exit(1);
+        }
+
+        Path inputDirectory = Path.of(args[0]);
+        Path outputDirectory = Path.of(args[1]);
+
+        try (Stream<Path> files = Files.list(inputDirectory)) {
+            TreeMap<Integer, BufferedImage> images = new TreeMap<>();
+
+            for (Path file : files.toList()) {
+                Matcher matcher = TILE_FILE_PATTERN.matcher(file.getFileName().toString());
+                if (!matcher.matches()) continue; // Not a tile (for example the atlas itself)
+
+                BufferedImage tileImage = ImageIO.read(file.toFile());
+                if (tileImage == null) {
+                    throw new IOException("Failed to read tile image: " + file);
+                }
+                images.put(Integer.parseInt(matcher.group(1)), tileImage);
+            }
+
+            int[] tileIDs = images.keySet().stream().mapToInt(Integer::intValue).toArray();
+            Files.createDirectories(outputDirectory);
+            ImageIO.write(packImages(tileIDs, images, ORIGINAL_TILE_SIZE), "png", outputDirectory.resolve(IMAGE_FILE).toFile());
+
+            try (DataOutputStream index = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(outputDirectory.resolve(INDEX_FILE))))) {
+                index.writeInt(tileIDs.length);
+                for (int tileID : tileIDs) {
+                    index.writeInt(tileID);
+                }
+            }
+
+            LOGGER.log(Level.INFO, "Packed {0} tiles into {1}", new Object[]{tileIDs.length, outputDirectory.resolve(IMAGE_FILE)});
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to pack the tiles", e);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.lucafacchini.tiles;
+
+import com.lucafacchini.GameWorld;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * This class caches pre-rendered blocks ("chunks") of tiles of a single map layer.
+ *
+ * Instead of drawing every visible tile (one drawImage and one drawRect each) on every frame,
+ * a whole CHUNK_SIZE x CHUNK_SIZE block of tiles is drawn once into an offscreen image,
+ * and then the frame only draws the few chunk images that are on the screen.
+ *
+ * Only the chunks that are actually drawn are kept in memory (up to MAX_CACHED_CHUNKS,
+ * the least recently used are evicted), and a chunk is re-rendered only when it's
+ * invalidated by a change of the map.
+ *
+ * The map is changed by the game thread while the chunks are drawn by the render thread
+ * (the EDT in PASSIVE mode), so invalidations are queued and applied at the beginning of the next frame.
+ */
+public class TileChunkCache {
+
+    // Chunk settings
+    public static final int CHUNK_SIZE = 8; // The number of tiles on each side of a chunk.
+    public static final int MAX_CACHED_CHUNKS = 32; // The screen shows at most 9-12 chunks per layer.
+
+    /**
+     * @brief Placeholder for the chunks that have no tiles at all. (Common in the upper layers)
+     * They are cached too, but they are never drawn.
+     */
+    private static final BufferedImage EMPTY_CHUNK = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+
+    // Objects
+    private final GameWorld gw;
+    private final TileManager tileManager;
+    private final int layer;
+
+    // Chunk images, indexed by chunk (chunkRow * chunkColumns + chunkColumn), in access order.
+    private final LinkedHashMap<Integer, BufferedImage> chunks;
+    private final ArrayDeque<BufferedImage> freeImages = new ArrayDeque<>(); // Evicted images, reused for the next chunks.
+
+    // Pending invalidations (written by the game thread, applied by the render thread)
+    private final ConcurrentLinkedQueue<Integer> invalidatedChunks = new ConcurrentLinkedQueue<>();
+    private volatile boolean isEverythingInvalidated = false;
+
+    public final int chunkColumns;
+    public final int chunkRows;
+    public final int chunkSizePx;
+
+    /**
+     * @brief Constructor for the TileChunkCache class.
+     * @param gw The GameWorld instance.
+     * @param tileManager The TileManager that stores the map.
+     * @param layer The index of the layer to cache.
+     */
+    public TileChunkCache(GameWorld gw, TileManager tileManager, int layer) {
+        this.gw = gw;
+        this.tileManager = tileManager;
+        this.layer = layer;
+
+        chunkColumns = (tileManager.columns + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        chunkRows = (tileManager.rows + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        chunkSizePx = CHUNK_SIZE * gw.TILE_SIZE;
+
+        chunks = new LinkedHashMap<>(MAX_CACHED_CHUNKS * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, BufferedImage> eldest) {
+                if (size() > MAX_CACHED_CHUNKS) {
+                    recycle(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+
+    /**
+     * @brief Applies the pending invalidations.
+     * This must be called by the render thread before drawing the chunks of a frame.
+     */
+    public void beginFrame() {
+        if (isEverythingInvalidated) {
+            isEverythingInvalidated = false;
+            invalidatedChunks.clear();
+            for (BufferedImage image : chunks.values()) {
+                recycle(image);
+            }
+            chunks.clear();
+            return;
+        }
+
+        Integer key;
+        while ((key = invalidatedChunks.poll()) != null) {
+            recycle(chunks.remove(key));
+        }
+    }
+
+
+    /**
+     * @brief Returns the image of a chunk, rendering it if it's not cached.
+     *
+     * @param chunkColumn The column of the chunk.
+     * @param chunkRow The row of the chunk.
+     * @return The image of the chunk, or null if the chunk has no tiles.
+     */
+    public BufferedImage getChunk(int chunkColumn, int chunkRow) {
+        int key = chunkRow * chunkColumns + chunkColumn;
+
+        BufferedImage image = chunks.get(key);
+        if (image == null) {
+            image = renderChunk(chunkColumn, chunkRow);
+            chunks.put(key, image);
+        }
+
+        return image == EMPTY_CHUNK ? null : image;
+    }
+
+
+    /**
+     * @brief Invalidates the chunk that contains the given tile.
+     * The chunk will be rendered again the next time it's drawn.
+     *
+     * @param column The column of the tile.
+     * @param row The row of the tile.
+     */
+    public void invalidate(int column, int row) {
+        invalidatedChunks.add((row / CHUNK_SIZE) * chunkColumns + (column / CHUNK_SIZE));
+    }
+
+
+    /**
+     * @brief Invalidates every chunk. (For example when the tile images change)
+     */
+    public void invalidateAll() {
+        isEverythingInvalidated = true;
+    }
+
+
+    /**
+     * @brief Draws every tile of the chunk into an offscreen image.
+     * The tiles are drawn exactly like they would be drawn on the screen (image + grid).
+     *
+     * @param chunkColumn The column of the chunk.
+     * @param chunkRow The row of the chunk.
+     * @return The image of the chunk, or EMPTY_CHUNK if the chunk has no tiles.
+     */
+    private BufferedImage renderChunk(int chunkColumn, int chunkRow) {
+        int firstColumn = chunkColumn * CHUNK_SIZE;
+        int firstRow = chunkRow * CHUNK_SIZE;
+        int lastColumn = Math.min(firstColumn + CHUNK_SIZE, tileManager.columns);
+        int lastRow = Math.min(firstRow + CHUNK_SIZE, tileManager.rows);
+
+        if (isEmpty(firstColumn, firstRow, lastColumn, lastRow)) {
+            return EMPTY_CHUNK;
+        }
+
+        BufferedImage image = createImage();
+        Graphics2D g2d = image.createGraphics();
+        g2d.setColor(Color.BLACK);
+
+        for (int row = firstRow; row < lastRow; row++) {
+            for (int col = firstColumn; col < lastColumn; col++) {
+                int tileIndex = tileManager.getTileIndex(layer, col, row);
+
+                if (tileIndex == TileManager.EMPTY_TILE) continue; // Skip empty tiles
+
+                int x = (col - firstColumn) * gw.TILE_SIZE;
+                int y = (row - firstRow) * gw.TILE_SIZE;
+
+                tileManager.drawTile(g2d, tileIndex, x, y);
+
+                // draw grid
+                g2d.drawRect(x, y, gw.TILE_SIZE, gw.TILE_SIZE);
+            }
+        }
+
+        g2d.dispose();
+        return image;
+    }
+
+
+    /**
+     * @brief Checks if a block of tiles is completely empty.
+     * @return true if every tile of the block is empty, false otherwise.
+     */
+    private boolean isEmpty(int firstColumn, int firstRow, int lastColumn, int lastRow) {
+        for (int row = firstRow; row < lastRow; row++) {
+            for (int col = firstColumn; col < lastColumn; col++) {
+                if (tileManager.getTileIndex(layer, col, row) != TileManager.EMPTY_TILE) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * @brief Returns a transparent image for a chunk.
+     *
+     * Evicted images are cleared and reused. New images are created compatible with the
+     * screen, so Java2D can keep them in video memory (they rarely change).
+     */
+    private BufferedImage createImage() {
+        BufferedImage image = freeImages.poll();
+
+        if (image != null) {
+            Graphics2D g2d = image.createGraphics();
+            g2d.setComposite(AlphaComposite.Clear);
+            g2d.fillRect(0, 0, chunkSizePx, chunkSizePx);
+            g2d.dispose();
+            return image;
+        }
+
+        if (GraphicsEnvironment.isHeadless()) {
+            return new BufferedImage(chunkSizePx, chunkSizePx, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        return GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice()
+                .getDefaultConfiguration()
+                .createCompatibleImage(chunkSizePx, chunkSizePx, Transparency.TRANSLUCENT);
+    }
+
+
+    /**
+     * @brief Keeps an evicted image, so it can be reused by the next chunk.
+     */
+    private void recycle(BufferedImage image) {
+        if (image != null && image != EMPTY_CHUNK && freeImages.size() < MAX_CACHED_CHUNKS) {
+            freeImages.push(image);
+        }
+    }
+}
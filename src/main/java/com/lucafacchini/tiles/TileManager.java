@@ -1,230 +1,472 @@
 package com.lucafacchini.tiles;
 
-import com.lucafacchini.GamePanel;
-import com.lucafacchini.Utilities;
+import com.lucafacchini.GameWorld;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.*;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * This class manages the tiles of the game, and therefore, the map.
+ *
+ * The map is made of several layers (see GameWorld.MapType). The map is not loaded all at once:
+ * it's split into chunks of every layer (see WorldChunk), which are streamed from the binary map
+ * around the player by the WorldChunkStore. The rest of the game doesn't see the chunks, it
+ * only uses getTile(), setTile() and isSolid().
+ *
+ * The layers share the same set of tiles, and they are drawn in the order
+ * of GameWorld.MapType. The "pass behind" layers are drawn after the entities.
+ *
+ * The tile IDs of the map are sparse and big (for example 38193), so they are only used
+ * when the map is loaded and by the public methods. Inside the chunks every tile is stored as
+ * a dense tile index, and the properties of the tiles are kept in arrays indexed by it.
+ * This way drawing and collisions never box or hash a tile ID.
  */
 public class TileManager {
 
     // Debugging
     private static final Logger LOGGER = Logger.getLogger(TileManager.class.getName());
 
-    // Tile properties
-    public static int worldX, worldY; // The actual position of the tile
-    public static int screenX, screenY; // The position of the tile on the screen (calculated based on the player's position)
-
     // Map management
     public static final String MAPS_PATH = "/maps/";
+    public static final String MAP_FILE_PATH = MAPS_PATH + "world.map"; // The binary map, compiled from the CSV maps
+    public static final int EMPTY_TILE = -1;
+
+    /**
+     * @brief The properties of every tile, indexed by the tile index.
+     * The first tile indices are the palette of the map (see MapFile.palette), in the same order.
+     * The tiles placed later with setTile() are added at the end, and the arrays grow when they are full.
+     */
+    private int[] tileIDs; // Tile index -> tile ID
+    private int[] atlasX; // Position of the tile image in the atlas (-1 if the tile has no image)
+    private int[] atlasY;
+    private boolean[] solidTiles; // true if the tile is solid
+    private int tileCount = 0;
+    private final HashMap<Integer, Integer> tileIndices = new HashMap<>(); // Tile ID -> tile index (only used by the public methods)
+    private final Set<Integer> missingTileIDs = ConcurrentHashMap.newKeySet(); // IDs without an image (only reported once)
 
     /**
-     * @brief tileMap is a HashMap that stores all the tiles.
-     * The key is the tile ID, and the value is the single Tile object.
+     * @brief The chunks of the map that are loaded.
+     * Use getTile() and setTile() instead of reading the chunks directly.
      */
-    public HashMap<Integer, Tile> tileMap; // Store all the tiles
-    public final int[][] GAME_MAP; // Store the actual map
+    public final WorldChunkStore chunkStore;
+
+    // Collisions
+    private int collisionVersion = 0; // Incremented when any cell may have become solid or walkable. (See getCollisionVersion())
+
+    // Map dimensions
+    public final int columns;
+    public final int rows;
+    public final int layerCount;
 
     // Objects
-    private final GamePanel gp;
-    private final Utilities utilities = new Utilities();
+    private final GameWorld gw;
+    public TileAtlas atlas; // The images of every tile
+    private final TileChunkCache[] chunkCaches; // Pre-rendered blocks of tiles, one cache per layer
 
     /**
      * @brief Constructor for the TileManager class.
-     * @param gp The GamePanel instance.
-     * @param path The path of the map file.
+     * Opens the binary map, which contains every layer listed in GameWorld.MapType.
+     * The size of the map is read from the binary map, the tiles are loaded later, chunk by chunk.
+     *
+     * @param gw The GameWorld instance.
      * TODO: Implement a way to set the solid tiles
      */
-    public TileManager(GamePanel gp, String path) {
-        this.gp = gp;
-        GAME_MAP = new int[gp.MAX_WORLD_COLUMNS][gp.MAX_WORLD_ROWS];
-        tileMap = new HashMap<>();
+    public TileManager(GameWorld gw) {
+        this.gw = gw;
 
         // Load the map
-        loadMap(MAPS_PATH + path);
-        rescaleAllTileImages();
+        MapFile map = loadMapFile();
+        if (map.layerCount != GameWorld.MapType.values().length) {
+            throw new IllegalStateException("The map has " + map.layerCount + " layers, expected " + GameWorld.MapType.values().length);
+        }
 
-        setSolid(38193); // DEBUG
+        columns = map.columns;
+        rows = map.rows;
+        layerCount = map.layerCount;
+
+        chunkStore = new WorldChunkStore(map);
+
+        chunkCaches = new TileChunkCache[layerCount];
+        for (GameWorld.MapType layer : GameWorld.MapType.values()) {
+            chunkCaches[layer.ordinal()] = new TileChunkCache(gw, this, layer.ordinal());
+        }
+
+        loadAllTileImages(map.palette);
+
+        tileIDs = new int[map.palette.length + 16]; // Room for some tiles placed with setTile()
+        atlasX = new int[tileIDs.length];
+        atlasY = new int[tileIDs.length];
+        solidTiles = new boolean[tileIDs.length];
+        for (int tileID : map.palette) {
+            addTile(tileID);
+        }
+        chunkStore.setSolidTiles(solidTiles);
 
+        setSolid(38193); // DEBUG
     }
 
 
     /**
-     * @brief This method loads the map from a file.
-     * First of all, it reads the file provided as a parameter.
-     * Then, it reads the lines of the file and stores the values in the GAME_MAP array.
-     *
-     * The map file is a CSV file where each number represents a tile.
-     *
-     * After loading the map, it calls the loadAllTileImages method.
+     * @brief This method opens the binary map. (See MapFile)
+     * If the binary map is missing or not valid, the CSV maps are compiled in memory instead.
+     * Run the "compileMaps" gradle task after changing the CSV maps.
      *
-     * @param filePath The path of the map file.
+     * @return The binary map.
      */
-    public void loadMap(String filePath) {
-        try (InputStream inputFile = getClass().getResourceAsStream(filePath)) {
-            assert inputFile != null;
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputFile))) {
-
-                int currentWorldRow = 0;
-
-                while (currentWorldRow < gp.MAX_WORLD_ROWS) {
-                    String line = reader.readLine();
-                    if (line == null) break; // Stop if no more lines
+    private MapFile loadMapFile() {
+        try {
+            return MapFile.open(MAP_FILE_PATH);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to load the binary map, compiling the CSV maps instead", e);
+        }
 
-                    String[] numbers = line.split(",");
-                    for (int currentWorldColumn = 0; currentWorldColumn < gp.MAX_WORLD_COLUMNS && currentWorldColumn < numbers.length; currentWorldColumn++) {
-                        GAME_MAP[currentWorldColumn][currentWorldRow] = Integer.parseInt(numbers[currentWorldColumn]);
-                    }
-                    currentWorldRow++;
-                }
-            }
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Failed to load map: " + filePath, e);
+        try {
+            return MapFile.wrap(MapCompiler.compileResources(MAPS_PATH));
+        } catch (IOException | NumberFormatException e) {
+            throw new IllegalStateException("Failed to load the map", e);
         }
-        loadAllTileImages();
     }
 
 
     /**
-     * @brief This method loads all the tile images.
-     * It iterates over the GAME_MAP array and calls the loadTileImage method for each tile.
+     * @brief This method loads all the tile images into the atlas. (See TileAtlas)
+     * If the atlas was packed at build time, it's loaded with a single read.
+     * Otherwise, it reads the image of every tile of the palette and packs them into a new atlas.
+     * In both cases the rescaled images come from the ImageCache when possible.
+     *
+     * @param palette The distinct tile IDs used by the map.
      */
-    private void loadAllTileImages() {
-        for (int row = 0; row < gp.MAX_WORLD_ROWS; row++) {
-            for (int col = 0; col < gp.MAX_WORLD_COLUMNS; col++) {
-                int tileID = GAME_MAP[col][row];
-                if (tileID != -1) {
-                    loadTileImage(tileID);
-                }
+    private void loadAllTileImages(int[] palette) {
+        try {
+            atlas = TileAtlas.load(gw.TILE_SIZE, gw.assets.imageCache);
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Failed to load the tile atlas, packing the tile images instead", e);
+        }
+
+        if (atlas == null) {
+            // Decode the images in parallel (see AssetLoader), then pack them in the order of the palette.
+            LinkedHashMap<Integer, CompletableFuture<BufferedImage>> loadingImages = new LinkedHashMap<>();
+            for (int tileID : palette) {
+                loadingImages.put(tileID, gw.assets.submit("tile " + tileID, () -> loadTileImage(tileID)));
             }
+
+            LinkedHashMap<Integer, BufferedImage> images = new LinkedHashMap<>();
+            loadingImages.forEach((tileID, loadingImage) -> {
+                BufferedImage image = loadingImage.join();
+                if (image != null) {
+                    images.put(tileID, image);
+                }
+            });
+            atlas = TileAtlas.pack(images, gw.TILE_SIZE);
         }
     }
 
 
     /**
-     * @brief This method loads a single tile image.
-     * It checks if the tile is already in the tileMap HashMap.
-     * If it is not, it reads the image from the file and stores it in the tileMap HashMap.
+     * @brief This method gives the next tile index to a new tile ID.
+     * The image of the tile must already be in the atlas (if it has one).
      *
-     * @param id The ID of the tile.
+     * @param tileID The ID of the tile.
+     * @return The index of the tile.
      */
-    private void loadTileImage(int id) {
-        if (!tileMap.containsKey(id)) {
-            try {
-                String imagePath = "/tiles/tile_" + id + ".png";
-                InputStream imageStream = getClass().getResourceAsStream(imagePath);
-
-                if (imageStream == null) {
-                    LOGGER.log(Level.WARNING, "Tile image not found for ID: {0}", id);
-                } else {
-                    Tile tile = new Tile();
-                    tile.image = ImageIO.read(imageStream);
-                    if (tile.image != null) {
-                        tileMap.put(id, tile);
-                        LOGGER.log(Level.INFO, "Successfully loaded tile for ID: {0}", id);
-                    } else {
-                        LOGGER.log(Level.SEVERE, "Failed to read tile image for ID: {0}", id);
-                    }
-                }
-            } catch (IOException e) {
-                LOGGER.log(Level.SEVERE, "Error loading tile image for ID: {0}");
-            }
+    private int addTile(int tileID) {
+        if (tileCount == tileIDs.length) {
+            int length = tileIDs.length * 2;
+            tileIDs = Arrays.copyOf(tileIDs, length);
+            atlasY = Arrays.copyOf(atlasY, length);
+            atlasX = Arrays.copyOf(atlasX, length);
+            solidTiles = Arrays.copyOf(solidTiles, length);
+            if (chunkStore != null) chunkStore.setSolidTiles(solidTiles); // Before the tile is used by a chunk
         }
+
+        int index = tileCount++;
+        int slot = atlas.getSlot(tileID);
+        tileIDs[index] = tileID;
+        atlasX[index] = slot == -1 ? -1 : atlas.getSlotX(slot);
+        atlasY[index] = slot == -1 ? -1 : atlas.getSlotY(slot);
+        tileIndices.put(tileID, index);
+        return index;
     }
 
 
     /**
-     * @brief This method rescales all the tile images.
-     * It iterates over the tileMap HashMap and calls the rescaleImage method for each tile.
+     * @brief This method reads a single tile image, rescaled to the tile size.
+     * The missing images are only reported once. It's safe to call it from several threads.
+     *
+     * @param id The ID of the tile.
+     * @return The image of the tile, or null if it's missing.
      */
-    private void rescaleAllTileImages() {
-        for (Tile tile : tileMap.values()) {
-            if (tile.image != null) {
-                tile.image = utilities.rescaleImage(tile.image, gp.TILE_SIZE, gp.TILE_SIZE);
-            }
+    private BufferedImage loadTileImage(int id) {
+        if (missingTileIDs.contains(id)) {
+            return null;
+        }
+
+        String imagePath = TileAtlas.TILES_PATH + "tile_" + id + ".png";
+        try {
+            return gw.assets.readScaledImage(imagePath, gw.TILE_SIZE, gw.TILE_SIZE);
+        } catch (FileNotFoundException e) {
+            missingTileIDs.add(id);
+            LOGGER.log(Level.WARNING, "Tile image not found for ID: {0}", id);
+            return null;
+        } catch (Exception e) {
+            missingTileIDs.add(id);
+            LOGGER.log(Level.SEVERE, "Error loading tile image for ID: " + id, e);
+            return null;
         }
     }
 
 
     /**
      * @brief This method sets a tile as solid.
-     * It gets the tile from the tileMap HashMap and sets the isSolid property to true.
+     * The collision masks of the loaded chunks are built again. (See WorldChunkStore.setSolidTiles())
+     * It must be called by the game thread.
+     * The tile must be used by the map (or placed with setTile()), otherwise it's ignored.
      *
      * @param id The ID of the tile.
      */
     public void setSolid(int id) {
-        Tile tile = tileMap.get(id);
-        if (tile != null) {
-            tile.isSolid = true;
+        Integer index = tileIndices.get(id);
+        if (index != null && !solidTiles[index]) {
+            solidTiles = solidTiles.clone(); // The old array may still be read by the chunk loader
+            solidTiles[index] = true;
+            chunkStore.setSolidTiles(solidTiles);
+            collisionVersion++;
         }
     }
 
 
     /**
-     * @brief This method draws the map.
-     * It iterates over the GAME_MAP array and draws the tiles on the screen.
-     * It calculates the position of the tile on the screen based on the player's position.
-     * It also checks if the tile is visible on the screen before drawing it. (Optimization)
-     *
-     * @param g2d The Graphics2D object.
+     * @brief Loads the chunks around the player, and unloads the distant ones.
+     * This method is called by the game thread once per tick, after the player has moved.
+     */
+    public void update() {
+        int playerColumn = (gw.player.worldX + gw.TILE_SIZE / 2) / gw.TILE_SIZE;
+        int playerRow = (gw.player.worldY + gw.TILE_SIZE / 2) / gw.TILE_SIZE;
+        int directionX = Integer.signum(gw.player.worldX - gw.player.previousWorldX);
+        int directionY = Integer.signum(gw.player.worldY - gw.player.previousWorldY);
+
+        chunkStore.update(playerColumn, playerRow, directionX, directionY);
+    }
+
+
+    /**
+     * @brief Returns the index of a tile in the tiles array of its chunk.
      */
-    public void draw(Graphics2D g2d) {
-        for (int row = 0; row < gp.MAX_WORLD_ROWS; row++) {
-            for (int col = 0; col < gp.MAX_WORLD_COLUMNS; col++) {
-                int tileID = GAME_MAP[col][row];
+    private static int index(int layer, int column, int row) {
+        return layer * WorldChunk.AREA + (row % WorldChunk.SIZE) * WorldChunk.SIZE + column % WorldChunk.SIZE;
+    }
+
+
+    /**
+     * @brief Returns the chunk that contains a tile.
+     */
+    private WorldChunk chunkAt(int column, int row) {
+        return chunkStore.getChunk(column / WorldChunk.SIZE, row / WorldChunk.SIZE);
+    }
 
-                if (tileID == -1) continue; // Skip empty tiles
 
-                worldX = col * gp.TILE_SIZE;
-                worldY = row * gp.TILE_SIZE;
-                screenX = worldX - gp.player.worldX + gp.player.screenX;
-                screenY = worldY - gp.player.worldY + gp.player.screenY;
+    /**
+     * @brief This method returns a single tile of the map.
+     *
+     * @param layer The index of the layer. (GameWorld.MapType ordinal)
+     * @param column The column of the tile.
+     * @param row The row of the tile.
+     * @return The ID of the tile, or EMPTY_TILE if there is no tile.
+     */
+    public int getTile(int layer, int column, int row) {
+        int tileIndex = getTileIndex(layer, column, row);
+        return tileIndex == EMPTY_TILE ? EMPTY_TILE : tileIDs[tileIndex];
+    }
 
-                if (isVisible()) {
-                    Tile tile = tileMap.get(tileID);
-                    if (tile != null && tile.image != null) {
-                        g2d.drawImage(tile.image, screenX, screenY, null);
-                    }
 
-                    // draw grid
+    /**
+     * @brief This method returns the index of a single tile of the map. (See tileIDs)
+     *
+     * @param layer The index of the layer. (GameWorld.MapType ordinal)
+     * @param column The column of the tile.
+     * @param row The row of the tile.
+     * @return The index of the tile, or EMPTY_TILE if there is no tile.
+     */
+    public int getTileIndex(int layer, int column, int row) {
+        return chunkAt(column, row).tiles[index(layer, column, row)];
+    }
 
-                        g2d.setColor(Color.BLACK);
-                        g2d.drawRect(screenX, screenY, gp.TILE_SIZE, gp.TILE_SIZE);
 
+    /**
+     * @brief This method changes a single tile of the map.
+     * The image of the tile is added to the atlas if it's new, and the chunk that contains
+     * the tile is invalidated, so it will be rendered again.
+     * The changed chunk stays in memory until the game is closed.
+     * The tile is written into a copy of the chunk, that replaces the old one, because the chunks
+     * are read by the other threads without locks. (See WorldChunkStore.replace())
+     * It must be called by the game thread.
+     *
+     * @param layer The index of the layer. (GameWorld.MapType ordinal)
+     * @param column The column of the tile.
+     * @param row The row of the tile.
+     * @param tileID The new ID of the tile. (EMPTY_TILE for an empty tile)
+     */
+    public void setTile(int layer, int column, int row, int tileID) {
+        int tileIndex = EMPTY_TILE;
+        if (tileID != EMPTY_TILE) {
+            Integer knownIndex = tileIndices.get(tileID);
+            if (knownIndex != null) {
+                tileIndex = knownIndex;
+            } else {
+                BufferedImage image = loadTileImage(tileID);
+                if (image != null) {
+                    atlas.add(tileID, image);
                 }
+                tileIndex = addTile(tileID);
             }
         }
+
+        WorldChunk chunk = new WorldChunk(chunkAt(column, row));
+        chunk.isModified = true;
+        chunk.tiles[index(layer, column, row)] = tileIndex;
+        if (chunk.solidMaskVersion == chunkStore.getSolidTilesVersion()) {
+            chunk.updateSolidMask(index(0, column, row), solidTiles);
+        } else {
+            chunk.rebuildSolidMask(solidTiles, chunkStore.getSolidTilesVersion());
+        }
+        chunkStore.replace(chunk); // Publish the changed chunk
+        chunkCaches[layer].invalidate(column, row);
+        collisionVersion++;
     }
 
+
     /**
-     * @brief This method checks if the tile is visible on the screen.
-     * It calculates the boundaries of the tile and checks if it is within the screen boundaries.
+     * @brief Returns a number that changes every time the solid cells of the map may have changed.
+     * It's used to throw away the results computed on the old map. (For example the paths, see PathFinder)
      *
-     * @return true if the tile is visible, false otherwise.
+     * @return The version of the collisions of the map.
      */
-    private boolean isVisible() {
-        return worldX + gp.TILE_SIZE > gp.player.worldX - gp.player.screenX &&
-                worldX - gp.TILE_SIZE < gp.player.worldX + gp.player.screenX &&
-                worldY + gp.TILE_SIZE > gp.player.worldY - gp.player.screenY &&
-                worldY - gp.TILE_SIZE < gp.player.worldY + gp.player.screenY;
+    public int getCollisionVersion() {
+        return collisionVersion;
     }
 
 
+    /**
+     * @brief This method checks if a cell of the map is solid.
+     * A cell is solid if the tile of any layer in that cell is solid.
+     * The cells outside the map are always solid.
+     *
+     * The layers are already merged in the collision mask of the chunk (see WorldChunk.solidMask),
+     * so this is a single bit test. The mask is built before the chunk is published, and it's
+     * never changed after, so this method only reads: it can be called by any thread.
+     *
+     * @param column The column of the cell.
+     * @param row The row of the cell.
+     * @return true if the cell is solid, false otherwise.
+     */
+    public boolean isSolid(int column, int row) {
+        if (column < 0 || row < 0 || column >= columns || row >= rows) {
+            return true;
+        }
 
+        return chunkAt(column, row).isSolid(index(0, column, row));
+    }
 
 
+    /**
+     * @brief This method draws the layers of the map.
+     * The layers are drawn in the order of GameWorld.MapType.
+     *
+     * @param g2d The Graphics2D object.
+     * @param isPassBehind false to draw the layers below the entities, true to draw the layers above them.
+     */
+    public void draw(Graphics2D g2d, boolean isPassBehind) {
+        for (GameWorld.MapType layer : GameWorld.MapType.values()) {
+            if (layer.isPassBehind == isPassBehind) {
+                drawLayer(g2d, layer.ordinal());
+            }
+        }
+    }
 
 
+    /**
+     * @brief This method draws a single layer of the map.
+     * The layer is drawn as pre-rendered chunks of tiles (see TileChunkCache), so a
+     * frame only needs a few drawImage calls instead of one (plus the grid) for every tile.
+     *
+     * The range of visible chunks is calculated once from the camera (the player's position),
+     * and only the chunks in that range are visited. This way the cost of a frame depends
+     * on the size of the screen, not on the size of the map.
+     *
+     * @param g2d The Graphics2D object.
+     * @param layer The index of the layer.
+     */
+    private void drawLayer(Graphics2D g2d, int layer) {
+        TileChunkCache chunkCache = chunkCaches[layer];
+
+        int cameraX = gw.player.getRenderX();
+        int cameraY = gw.player.getRenderY();
+
+        // The world coordinates of the top-left corner of the screen
+        int screenLeftWorldX = cameraX - gw.player.screenX;
+        int screenTopWorldY = cameraY - gw.player.screenY;
+
+        // The range of chunks that intersect the screen (clamped to the map)
+        int chunkSizePx = chunkCache.chunkSizePx;
+        int firstChunkCol = Math.max(Math.floorDiv(screenLeftWorldX, chunkSizePx), 0);
+        int firstChunkRow = Math.max(Math.floorDiv(screenTopWorldY, chunkSizePx), 0);
+        int lastChunkCol = Math.min(Math.floorDiv(screenLeftWorldX + gw.WINDOW_WIDTH - 1, chunkSizePx), chunkCache.chunkColumns - 1);
+        int lastChunkRow = Math.min(Math.floorDiv(screenTopWorldY + gw.WINDOW_HEIGHT - 1, chunkSizePx), chunkCache.chunkRows - 1);
+
+        chunkCache.beginFrame();
+
+        for (int chunkRow = firstChunkRow; chunkRow <= lastChunkRow; chunkRow++) {
+            for (int chunkCol = firstChunkCol; chunkCol <= lastChunkCol; chunkCol++) {
+                BufferedImage image = chunkCache.getChunk(chunkCol, chunkRow);
+
+                if (image != null) {
+                    int screenX = chunkCol * chunkSizePx - screenLeftWorldX;
+                    int screenY = chunkRow * chunkSizePx - screenTopWorldY;
+                    g2d.drawImage(image, screenX, screenY, null);
+                }
+            }
+        }
+    }
 
+
+    /**
+     * @brief This method draws the image of a tile, if it has one.
+     * It's called by the render thread while the game thread may add new tiles (see addTile()),
+     * so the tile index is checked against the arrays it reads.
+     *
+     * @param g2d The Graphics2D object.
+     * @param tileIndex The index of the tile. (See getTileIndex())
+     * @param x The x coordinate where the tile is drawn.
+     * @param y The y coordinate where the tile is drawn.
+     */
+    public void drawTile(Graphics2D g2d, int tileIndex, int x, int y) {
+        int[] tileAtlasX = atlasX;
+        int[] tileAtlasY = atlasY;
+        if (tileIndex >= tileAtlasX.length || tileIndex >= tileAtlasY.length || tileAtlasX[tileIndex] == -1) {
+            return;
+        }
+
+        atlas.draw(g2d, tileAtlasX[tileIndex], tileAtlasY[tileIndex], x, y);
+    }
+
+
+    /**
+     * @brief This method checks if a tile is solid.
+     *
+     * @param tileID The ID of the tile.
+     * @return true if the tile is solid, false otherwise.
+     */
     public boolean isTileSolid(int tileID) {
-        Tile tile = tileMap.get(tileID);
-        return tile != null && tile.isSolid;
+        Integer index = tileIndices.get(tileID);
+        return index != null && solidTiles[index];
     }
 }
@@ -0,0 +1,137 @@
+package com.lucafacchini.tiles;
+
+import java.util.Arrays;
+
+/**
+ * This class stores a square block of the map (SIZE x SIZE tiles) of every layer.
+ *
+ * The map is not kept in memory all at once: it's split into chunks that are loaded
+ * from the binary map when the player gets near them, and unloaded when they are far away.
+ * (See WorldChunkStore)
+ *
+ * The tiles of a chunk are read by several threads (game, render and loader), so they are never
+ * changed after the chunk is published: a changed tile is written into a copy of the chunk,
+ * which replaces the old one. (See TileManager.setTile() and WorldChunkStore.replace())
+ */
+public class WorldChunk {
+
+    // Chunk settings
+    public static final int SIZE = 16; // The number of tiles on each side of a chunk.
+    public static final int AREA = SIZE * SIZE; // The number of tiles of a single layer.
+
+    // Position of the chunk (in chunks, not in tiles)
+    public final int chunkColumn;
+    public final int chunkRow;
+
+    /**
+     * @brief The tile indices of every layer, one layer after the other. (See TileManager.tileIDs)
+     * The tile at (layer, localColumn, localRow) is at index layer * AREA + localRow * SIZE + localColumn.
+     * It's only written before the chunk is published.
+     */
+    public final int[] tiles;
+
+    /**
+     * @brief The collision mask of the chunk: one bit per cell, set if the tile of any layer is solid.
+     * The bit of the cell at (localColumn, localRow) is the bit number localRow * SIZE + localColumn.
+     * Like the tiles, it's only written before the chunk is published. (See WorldChunkStore.setSolidTiles())
+     */
+    public final long[] solidMask = new long[AREA / Long.SIZE];
+
+    /**
+     * @brief The version of the solid tiles the mask was built with. (See WorldChunkStore.getSolidTilesVersion())
+     * The chunk is replaced by a copy with a new mask when it doesn't match the current version.
+     */
+    public int solidMaskVersion = -1;
+
+    /**
+     * @brief true if a tile of the chunk was changed while playing.
+     * Changed chunks are never unloaded, otherwise the changes would be lost.
+     */
+    public volatile boolean isModified = false;
+
+    /**
+     * @brief Constructor for the WorldChunk class.
+     * Reads the tiles of the chunk from the binary map, and replaces every tile ID
+     * with its tile index: its position in the palette of the map.
+     *
+     * @param map The binary map.
+     * @param chunkColumn The column of the chunk.
+     * @param chunkRow The row of the chunk.
+     */
+    public WorldChunk(MapFile map, int chunkColumn, int chunkRow) {
+        this.chunkColumn = chunkColumn;
+        this.chunkRow = chunkRow;
+
+        tiles = new int[map.layerCount * AREA];
+        map.readBlock(tiles, chunkColumn * SIZE, chunkRow * SIZE, SIZE);
+
+        for (int i = 0; i < tiles.length; i++) {
+            if (tiles[i] != TileManager.EMPTY_TILE) {
+                tiles[i] = Arrays.binarySearch(map.palette, tiles[i]);
+            }
+        }
+    }
+
+
+    /**
+     * @brief Copy constructor, used to change the tiles of a published chunk.
+     * The copy is not published: the caller changes it, then publishes it. (See WorldChunkStore.replace())
+     *
+     * @param chunk The chunk to copy.
+     */
+    public WorldChunk(WorldChunk chunk) {
+        chunkColumn = chunk.chunkColumn;
+        chunkRow = chunk.chunkRow;
+        tiles = chunk.tiles.clone();
+        System.arraycopy(chunk.solidMask, 0, solidMask, 0, solidMask.length);
+        solidMaskVersion = chunk.solidMaskVersion;
+        isModified = chunk.isModified;
+    }
+
+
+    /**
+     * @brief Builds the collision mask of every cell of the chunk.
+     *
+     * @param solidTiles The solidity of every tile index.
+     * @param version The current version of the solid tiles.
+     */
+    public void rebuildSolidMask(boolean[] solidTiles, int version) {
+        Arrays.fill(solidMask, 0L);
+
+        for (int cell = 0; cell < AREA; cell++) {
+            updateSolidMask(cell, solidTiles);
+        }
+        solidMaskVersion = version;
+    }
+
+
+    /**
+     * @brief Updates the collision mask of a single cell. (For example after a tile has changed)
+     *
+     * @param cell The index of the cell. (localRow * SIZE + localColumn)
+     * @param solidTiles The solidity of every tile index.
+     */
+    public void updateSolidMask(int cell, boolean[] solidTiles) {
+        boolean isSolid = false;
+        for (int i = cell; i < tiles.length && !isSolid; i += AREA) {
+            isSolid = tiles[i] != TileManager.EMPTY_TILE && tiles[i] < solidTiles.length && solidTiles[tiles[i]];
+        }
+
+        if (isSolid) {
+            solidMask[cell >>> 6] |= 1L << cell;
+        } else {
+            solidMask[cell >>> 6] &= ~(1L << cell);
+        }
+    }
+
+
+    /**
+     * @brief Checks the collision mask of a single cell.
+     *
+     * @param cell The index of the cell. (localRow * SIZE + localColumn)
+     * @return true if the cell is solid, false otherwise.
+     */
+    public boolean isSolid(int cell) {
+        return (solidMask[cell >>> 6] & (1L << cell)) != 0;
+    }
+}
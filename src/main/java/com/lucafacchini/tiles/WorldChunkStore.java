@@ -0,0 +1,330 @@
+package com.lucafacchini.tiles;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class streams the chunks of the map (see WorldChunk) from the binary map.
+ *
+ * Only the chunks around the camera are kept in memory. On every tick the game thread
+ * tells the store where the camera is, and the store:
+ *
+ *  - asks the loader thread to load the chunks around the camera (nearest first)
+ *  - asks the loader thread to load a few more chunks in the direction of movement (prefetch)
+ *  - unloads the least recently used chunks when more than MAX_LOADED_CHUNKS are loaded
+ *
+ * The chunks are read by the game thread (collisions) and by the render thread (TileChunkCache),
+ * so they are published through an AtomicReferenceArray. If a chunk is needed before the loader
+ * thread has loaded it, it's loaded right away by the thread that needs it. This only happens
+ * when the camera moves faster than the loader, and it's counted by getSyncLoadCount().
+ *
+ * Changed chunks (see WorldChunk.isModified) are never unloaded. A chunk is never changed after it's
+ * published: the game thread publishes a changed copy instead (See replace()), so the other threads
+ * always read complete chunks.
+ *
+ * The collision mask of a chunk (see WorldChunk.solidMask) is built before the chunk is published too,
+ * and when the solid tiles change, every loaded chunk is replaced by a copy with a new mask.
+ * (See setSolidTiles()) So the collisions only read the chunks, and any thread can check them.
+ */
+public class WorldChunkStore {
+
+    // Debugging
+    private static final Logger LOGGER = Logger.getLogger(WorldChunkStore.class.getName());
+
+    // Streaming settings
+    public static final int LOAD_RADIUS = 2; // Chunks kept loaded around the camera: 5x5 chunks, 80x80 tiles. (The screen is 16x12 tiles)
+    public static final int PREFETCH_DISTANCE = 2; // Extra chunks loaded in the direction of movement.
+    public static final int MAX_LOADED_CHUNKS = 64; // Memory budget, a chunk of 6 layers is about 6 KB.
+
+    // The map
+    private final MapFile map;
+    public final int chunkColumns;
+    public final int chunkRows;
+
+    /**
+     * @brief The loaded chunks, indexed by chunk (chunkRow * chunkColumns + chunkColumn).
+     * null if the chunk is not loaded.
+     */
+    private final AtomicReferenceArray<WorldChunk> chunks;
+
+    // Loading (shared between the threads)
+    private final ExecutorService loader;
+    private final Set<Integer> pendingChunks = ConcurrentHashMap.newKeySet(); // Chunks waiting for the loader thread
+    private final ConcurrentLinkedQueue<WorldChunk> newChunks = new ConcurrentLinkedQueue<>(); // Loaded chunks, not tracked by the LRU yet
+    private final AtomicInteger syncLoadCount = new AtomicInteger();
+
+    // The solidity of every tile index, used to build the collision masks (See setSolidTiles())
+    private volatile boolean[] solidTiles = new boolean[0];
+    private volatile int solidTilesVersion = 0; // Written after solidTiles, and read before it
+
+    // Eviction (only used by the game thread). The loaded chunks, in access order.
+    private final LinkedHashMap<Integer, WorldChunk> residentChunks = new LinkedHashMap<>(MAX_LOADED_CHUNKS * 2, 0.75f, true);
+
+    // The last camera position, to skip the work when nothing changed.
+    private int cameraChunkColumn = -1;
+    private int cameraChunkRow = -1;
+    private int directionX = 0;
+    private int directionY = 0;
+
+    /**
+     * @brief Constructor for the WorldChunkStore class.
+     * Starts the loader thread. No chunk is loaded until it's needed.
+     *
+     * @param map The binary map.
+     */
+    public WorldChunkStore(MapFile map) {
+        this.map = map;
+
+        chunkColumns = (map.columns + WorldChunk.SIZE - 1) / WorldChunk.SIZE;
+        chunkRows = (map.rows + WorldChunk.SIZE - 1) / WorldChunk.SIZE;
+        chunks = new AtomicReferenceArray<>(chunkColumns * chunkRows);
+
+        loader = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "World chunk loader");
+            thread.setDaemon(true); // Don't keep the game alive
+            return thread;
+        });
+    }
+
+
+    /**
+     * @brief Returns a chunk, loading it right away if it's not loaded yet.
+     * It can be called by any thread.
+     *
+     * @param chunkColumn The column of the chunk.
+     * @param chunkRow The row of the chunk.
+     * @return The chunk.
+     */
+    public WorldChunk getChunk(int chunkColumn, int chunkRow) {
+        WorldChunk chunk = chunks.get(chunkRow * chunkColumns + chunkColumn);
+        if (chunk != null) {
+            return chunk;
+        }
+
+        syncLoadCount.incrementAndGet();
+        LOGGER.log(Level.FINE, "Chunk ({0}, {1}) was not loaded in time", new Object[]{chunkColumn, chunkRow});
+        return load(chunkColumn, chunkRow);
+    }
+
+
+    /**
+     * @brief Replaces a loaded chunk with a changed copy of it. (See WorldChunk(WorldChunk))
+     * The threads that read the chunk after this call see the copy, with all its changes.
+     * Used by the game thread.
+     *
+     * @param chunk The changed copy.
+     */
+    public void replace(WorldChunk chunk) {
+        int key = chunk.chunkRow * chunkColumns + chunk.chunkColumn;
+        chunks.set(key, chunk);
+        residentChunks.put(key, chunk);
+    }
+
+
+    /**
+     * @brief Changes the solidity of the tiles, and rebuilds the collision mask of every loaded chunk.
+     * The array must not be changed after this call: a new array must be given instead.
+     * Used by the game thread.
+     *
+     * A chunk loaded by another thread during this call may be published with the old mask:
+     * it's rebuilt by the next update(). (The solid tiles only change while the world is created)
+     *
+     * @param solidTiles true for every solid tile index. (See TileManager.setSolid())
+     */
+    public void setSolidTiles(boolean[] solidTiles) {
+        this.solidTiles = solidTiles;
+        solidTilesVersion++;
+
+        for (int key = 0; key < chunks.length(); key++) {
+            WorldChunk chunk = chunks.get(key);
+            if (chunk != null) {
+                replace(withNewSolidMask(chunk));
+            }
+        }
+    }
+
+
+    /**
+     * @brief Returns the version of the solid tiles. (See WorldChunk.solidMaskVersion)
+     * @return The number of times the solid tiles have changed.
+     */
+    public int getSolidTilesVersion() {
+        return solidTilesVersion;
+    }
+
+
+    /**
+     * @brief Returns a copy of a chunk, with the collision mask built from the current solid tiles.
+     */
+    private WorldChunk withNewSolidMask(WorldChunk chunk) {
+        WorldChunk copy = new WorldChunk(chunk);
+        int version = solidTilesVersion;
+        copy.rebuildSolidMask(solidTiles, version);
+        return copy;
+    }
+
+
+    /**
+     * @brief Updates the loaded chunks around the camera.
+     * This method must be called by the game thread, once per tick.
+     *
+     * @param cameraColumn The column of the camera. (In tiles)
+     * @param cameraRow The row of the camera. (In tiles)
+     * @param directionX The horizontal direction of the camera movement. (-1, 0 or 1)
+     * @param directionY The vertical direction of the camera movement. (-1, 0 or 1)
+     */
+    public void update(int cameraColumn, int cameraRow, int directionX, int directionY) {
+        int chunkColumn = Math.floorDiv(cameraColumn, WorldChunk.SIZE);
+        int chunkRow = Math.floorDiv(cameraRow, WorldChunk.SIZE);
+
+        boolean hasNewChunks = trackNewChunks();
+        boolean hasMoved = chunkColumn != cameraChunkColumn || chunkRow != cameraChunkRow ||
+                directionX != this.directionX || directionY != this.directionY;
+
+        if (!hasMoved && !hasNewChunks) return; // Nothing to do
+
+        cameraChunkColumn = chunkColumn;
+        cameraChunkRow = chunkRow;
+        this.directionX = directionX;
+        this.directionY = directionY;
+
+        // Load the chunks around the camera, nearest first.
+        for (int ring = 0; ring <= LOAD_RADIUS; ring++) {
+            for (int row = chunkRow - ring; row <= chunkRow + ring; row++) {
+                for (int col = chunkColumn - ring; col <= chunkColumn + ring; col++) {
+                    if (Math.max(Math.abs(col - chunkColumn), Math.abs(row - chunkRow)) == ring) {
+                        request(col, row);
+                    }
+                }
+            }
+        }
+
+        // Prefetch the chunks in the direction of movement.
+        for (int distance = LOAD_RADIUS + 1; distance <= LOAD_RADIUS + PREFETCH_DISTANCE; distance++) {
+            for (int side = -LOAD_RADIUS; side <= LOAD_RADIUS; side++) {
+                if (directionX != 0) request(chunkColumn + directionX * distance, chunkRow + side);
+                if (directionY != 0) request(chunkColumn + side, chunkRow + directionY * distance);
+            }
+        }
+
+        evict();
+    }
+
+
+    /**
+     * @brief Returns the number of chunks that were loaded by the thread that needed them,
+     * because the loader thread didn't load them in time.
+     */
+    public int getSyncLoadCount() {
+        return syncLoadCount.get();
+    }
+
+
+    /**
+     * @brief Asks the loader thread to load a chunk, if it's not loaded or pending already.
+     * Used by the game thread.
+     *
+     * @param chunkColumn The column of the chunk.
+     * @param chunkRow The row of the chunk.
+     */
+    private void request(int chunkColumn, int chunkRow) {
+        if (chunkColumn < 0 || chunkRow < 0 || chunkColumn >= chunkColumns || chunkRow >= chunkRows) return;
+
+        int key = chunkRow * chunkColumns + chunkColumn;
+        WorldChunk chunk = chunks.get(key);
+
+        if (chunk != null) {
+            residentChunks.get(key); // Mark it as recently used
+        } else if (pendingChunks.add(key)) {
+            loader.execute(() -> {
+                load(chunkColumn, chunkRow);
+                pendingChunks.remove(key);
+            });
+        }
+    }
+
+
+    /**
+     * @brief Loads a chunk from the binary map and publishes it.
+     * If another thread loaded the same chunk at the same time, its chunk is used instead.
+     *
+     * @param chunkColumn The column of the chunk.
+     * @param chunkRow The row of the chunk.
+     * @return The loaded chunk.
+     */
+    private WorldChunk load(int chunkColumn, int chunkRow) {
+        int key = chunkRow * chunkColumns + chunkColumn;
+
+        while (true) {
+            WorldChunk existing = chunks.get(key);
+            if (existing != null) {
+                return existing;
+            }
+
+            WorldChunk chunk = new WorldChunk(map, chunkColumn, chunkRow);
+            int version = solidTilesVersion;
+            chunk.rebuildSolidMask(solidTiles, version);
+
+            if (chunks.compareAndSet(key, null, chunk)) {
+                newChunks.add(chunk);
+                return chunk;
+            }
+        }
+    }
+
+
+    /**
+     * @brief Adds the chunks loaded since the last tick to the LRU.
+     * A chunk loaded while the solid tiles changed is replaced by a copy with the new mask.
+     * @return true if there were new chunks.
+     */
+    private boolean trackNewChunks() {
+        boolean hasNewChunks = false;
+
+        WorldChunk chunk;
+        while ((chunk = newChunks.poll()) != null) {
+            int key = chunk.chunkRow * chunkColumns + chunk.chunkColumn;
+            if (chunks.get(key) != chunk) continue; // Replaced by a changed copy already
+
+            if (chunk.solidMaskVersion != solidTilesVersion) {
+                replace(withNewSolidMask(chunk));
+            } else {
+                residentChunks.put(key, chunk);
+            }
+            hasNewChunks = true;
+        }
+
+        return hasNewChunks;
+    }
+
+
+    /**
+     * @brief Unloads the least recently used chunks, until the budget is respected.
+     * The chunks around the camera and the changed chunks are never unloaded.
+     */
+    private void evict() {
+        Iterator<Map.Entry<Integer, WorldChunk>> iterator = residentChunks.entrySet().iterator();
+
+        while (residentChunks.size() > MAX_LOADED_CHUNKS && iterator.hasNext()) {
+            Map.Entry<Integer, WorldChunk> entry = iterator.next();
+            WorldChunk chunk = entry.getValue();
+
+            boolean isNearCamera = Math.abs(chunk.chunkColumn - cameraChunkColumn) <= LOAD_RADIUS &&
+                    Math.abs(chunk.chunkRow - cameraChunkRow) <= LOAD_RADIUS;
+            if (isNearCamera || chunk.isModified) continue;
+
+            chunks.compareAndSet(entry.getKey(), chunk, null);
+            iterator.remove();
+        }
+    }
+}
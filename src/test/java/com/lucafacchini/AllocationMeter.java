@@ -0,0 +1,36 @@
+package com.lucafacchini;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the memory allocated by some calls, in the thread of the test.
+ */
+final class AllocationMeter {
+
+    private AllocationMeter() {
+    }
+
+
+    /**
+     * @brief Runs the calls for some rounds, and returns the bytes they allocated.
+     * Code that allocates does it in every round, the JVM itself only once in a while. (For example the JIT)
+     * So the rounds stop at the first one that doesn't allocate anything.
+     * The calls must be warmed up before.
+     *
+     * @param calls The calls to measure, run once per round.
+     * @param rounds The maximum number of rounds.
+     * @return The bytes allocated in the last round. (0 if a round didn't allocate anything)
+     */
+    static long measure(Runnable calls, int rounds) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < rounds && allocated != 0; round++) {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            calls.run();
+            allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        }
+        return allocated;
+    }
+}
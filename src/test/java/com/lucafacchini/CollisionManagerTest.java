@@ -0,0 +1,79 @@
+package com.lucafacchini;
+
+import com.lucafacchini.entity.Entity;
+import com.lucafacchini.objects.SuperObject;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the collision checks don't allocate anything once they are warmed up.
+ * They run for every NPC in every tick, so a single allocation per call becomes a lot of garbage.
+ */
+class CollisionManagerTest {
+
+    private static final int WARMUP_CALLS = 20_000;
+    private static final int MEASURED_CALLS = 1_000;
+    private static final int MEASURED_ROUNDS = 5;
+
+    private static GameWorld gw;
+
+    @BeforeAll
+    static void createWorld() {
+        gw = new GameWorld(false, 42);
+        gw.initializeGame();
+    }
+
+
+    @Test
+    void checksDontAllocate() {
+        Entity player = gw.player;
+
+        // On the first object, so the checks find something
+        SuperObject object = gw.objectsArray[0];
+        player.worldX = object.worldX;
+        player.worldY = object.worldY;
+        player.currentDirection = Entity.Direction.RIGHT;
+        assertTrue(gw.cm.checkObject(player, true) >= 0, "The player should touch the object");
+
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            runChecks(player);
+        }
+
+        long allocated = AllocationMeter.measure(() -> {
+            for (int i = 0; i < MEASURED_CALLS; i++) {
+                runChecks(player);
+            }
+        }, MEASURED_ROUNDS);
+
+        assertEquals(0, allocated, "The collision checks allocated " + allocated + " bytes");
+    }
+
+
+    @Test
+    void diagonalMovementFindsObjectsOnBothAxes() {
+        Entity player = gw.player;
+        SuperObject object = gw.objectsArray[0];
+        int step = player.speed.getCurrent();
+
+        // Just left of the object, facing down: the object is only on the way along the x axis
+        player.worldX = object.getBoundingBoxWorldX() - player.boundingBox.x - player.boundingBoxDefaultWidth;
+        player.worldY = object.getBoundingBoxWorldY() - player.boundingBox.y;
+        player.currentDirection = Entity.Direction.DOWN;
+
+        assertEquals(-1, gw.cm.checkObject(player, 0, step, true));
+        assertEquals(0, gw.cm.checkObject(player, step, step, true));
+    }
+
+
+    private static void runChecks(Entity entity) {
+        gw.cm.checkObject(entity, true);
+        gw.cm.checkEntity(entity);
+        gw.cm.checkObject(entity, 4, 4, true);
+        gw.cm.checkEntity(entity, -4, 4);
+        gw.cm.sweepX(entity, gw.TILE_SIZE);
+        gw.cm.sweepY(entity, -gw.TILE_SIZE);
+    }
+}
@@ -0,0 +1,72 @@
+package com.lucafacchini;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that a rescaled image is saved in the cache, and read back with the same pixels.
+ * (The other tests run with the cache disabled, see build.gradle)
+ */
+class ImageCacheTest {
+
+    private static final int WIDTH = 8, HEIGHT = 4;
+
+    @Test
+    void rescaledImageIsReadBackFromTheCache(@TempDir Path directory) throws Exception {
+        byte[] source = { 1, 2, 3 };
+        AtomicInteger rescaleCount = new AtomicInteger();
+
+        ImageCache cache = new ImageCache(directory);
+        BufferedImage image = cache.getScaledImage(source, WIDTH, HEIGHT, () -> {
+            rescaleCount.incrementAndGet();
+            return createImage();
+        });
+
+        // A new cache, like on the next launch
+        ImageCache nextCache = new ImageCache(directory);
+        BufferedImage cachedImage = nextCache.getScaledImage(source, WIDTH, HEIGHT, () -> {
+            rescaleCount.incrementAndGet();
+            return createImage();
+        });
+
+        assertEquals(1, rescaleCount.get(), "The image was rescaled again");
+        assertEquals(1, nextCache.getHitCount());
+        try (var entries = Files.list(directory)) {
+            assertEquals(1, entries.count());
+        }
+        assertArrayEquals(image.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH),
+                cachedImage.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH));
+    }
+
+
+    @Test
+    void otherSizeIsRescaledAgain(@TempDir Path directory) throws Exception {
+        byte[] source = { 1, 2, 3 };
+        ImageCache cache = new ImageCache(directory);
+
+        cache.getScaledImage(source, WIDTH, HEIGHT, ImageCacheTest::createImage);
+        cache.getScaledImage(source, WIDTH * 2, HEIGHT * 2, () -> new BufferedImage(WIDTH * 2, HEIGHT * 2, BufferedImage.TYPE_INT_ARGB));
+
+        assertEquals(0, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+
+    private static BufferedImage createImage() {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.setRGB(x, y, 0x80000000 | x * 0x1F0000 | y * 0x3F00 | 0x7F);
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,121 @@
+package com.lucafacchini;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the same seed always gives the same game, and that drawing numbers is free.
+ */
+class RandomServiceTest {
+
+    @Test
+    void sameSeedGivesSameStreams() {
+        RandomService random = new RandomService(42);
+        RandomService sameRandom = new RandomService(42);
+        RandomService otherRandom = new RandomService(43);
+
+        RandomService.Stream stream = random.newStream();
+        RandomService.Stream sameStream = sameRandom.newStream();
+        RandomService.Stream otherStream = otherRandom.newStream();
+        RandomService.Stream nextStream = random.newStream();
+
+        boolean isOtherDifferent = false, isNextDifferent = false;
+        for (int i = 0; i < 100; i++) {
+            long value = stream.nextLong();
+            assertEquals(value, sameStream.nextLong());
+            isOtherDifferent |= value != otherStream.nextLong();
+            isNextDifferent |= value != nextStream.nextLong();
+        }
+        assertTrue(isOtherDifferent, "Another seed gives the same numbers");
+        assertTrue(isNextDifferent, "Two streams of the same seed give the same numbers");
+    }
+
+
+    @Test
+    void everyEntityTakesItsStreamFromTheSeed() {
+        GameWorld gw = new GameWorld(false, 42);
+
+        // The player is the first entity: the next stream is the second one of the seed
+        RandomService expected = new RandomService(42);
+        expected.newStreamState();
+        assertEquals(expected.newStreamState(), gw.random.newStreamState());
+    }
+
+
+    @Test
+    void sameSeedGivesSameWorld() {
+        long checksum = runWorld(42);
+
+        assertEquals(checksum, runWorld(42));
+        assertNotEquals(checksum, runWorld(43));
+    }
+
+
+    @Test
+    void streamContinuesAfterSerialization() throws Exception {
+        RandomService.Stream stream = new RandomService(7).newStream();
+        stream.nextInt(4);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(stream);
+        }
+        RandomService.Stream copy;
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (RandomService.Stream) input.readObject();
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(stream.nextInt(4), copy.nextInt(4));
+        }
+    }
+
+
+    @Test
+    void drawingNumbersDoesntAllocate() {
+        RandomService random = new RandomService(7);
+        RandomService.Stream stream = random.newStream();
+        long[] states = { random.newStreamState() };
+
+        long[] sum = { draw(random, stream, states) }; // Warm up
+
+        long allocated = AllocationMeter.measure(() -> sum[0] += draw(random, stream, states), 5);
+
+        assertEquals(0, allocated, "Drawing the numbers allocated " + allocated + " bytes");
+        assertTrue(sum[0] > 0);
+    }
+
+
+    private static long draw(RandomService random, RandomService.Stream stream, long[] states) {
+        long sum = 0;
+        for (int i = 0; i < 100_000; i++) {
+            sum += stream.nextInt(4) + RandomService.nextInt(states, 0, 120) + random.nextInt(10);
+        }
+        return sum;
+    }
+
+
+    /**
+     * @brief Runs a world with a crowd for some ticks, and returns its checksum.
+     */
+    private static long runWorld(long seed) {
+        GameWorld gw = new GameWorld(false, seed);
+        gw.initializeGame();
+        gw.gameStatus = GameWorld.GameStatus.RUNNING;
+        gw.scheduler.isTimeBudgetEnabled = false;
+        gw.crowd.spawn(2000);
+
+        for (int tick = 0; tick < 600; tick++) {
+            gw.update();
+        }
+        return gw.getChecksum();
+    }
+}
@@ -0,0 +1,85 @@
+package com.lucafacchini.ai;
+
+import com.lucafacchini.GameWorld;
+import com.lucafacchini.entity.Entity;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the flow field against a breadth-first search, and its budget per tick.
+ */
+class FlowFieldTest {
+
+    private static final int TARGET_COLUMN = 26, TARGET_ROW = 24; // The cell of the player at the start
+
+    private static GameWorld gw;
+
+    @BeforeAll
+    static void createWorld() {
+        gw = new GameWorld(false, 42);
+        gw.initializeGame();
+    }
+
+
+    @Test
+    void distancesAndDirectionsMatchTheBreadthFirstSearch() {
+        FlowField field = build(TARGET_COLUMN, TARGET_ROW);
+        int[] distances = MapDistances.from(gw, TARGET_COLUMN, TARGET_ROW);
+
+        for (int row = 0; row < gw.tm.rows; row++) {
+            for (int column = 0; column < gw.tm.columns; column++) {
+                if (gw.tm.isSolid(column, row)) continue;
+
+                int distance = distances[row * gw.tm.columns + column];
+                assertEquals(distance, field.getDistance(column, row), "Cell " + column + ", " + row);
+
+                if (distance <= 0) {
+                    assertEquals(FlowField.NO_DIRECTION, field.getDirection(column, row));
+                    continue;
+                }
+
+                // The direction goes one cell closer to the target
+                Entity.Direction direction = Entity.Direction.values()[field.getDirection(column, row)];
+                int nextColumn = column + (direction == Entity.Direction.LEFT ? -1 : direction == Entity.Direction.RIGHT ? 1 : 0);
+                int nextRow = row + (direction == Entity.Direction.UP ? -1 : direction == Entity.Direction.DOWN ? 1 : 0);
+                assertEquals(distance - 1, field.getDistance(nextColumn, nextRow), "Cell " + column + ", " + row);
+            }
+        }
+    }
+
+
+    @Test
+    void oldFieldIsReadUntilTheNewOneIsComplete() {
+        FlowField field = build(TARGET_COLUMN, TARGET_ROW);
+        int reachableCells = 0;
+        for (int distance : MapDistances.from(gw, TARGET_COLUMN, TARGET_ROW + 1)) {
+            if (distance >= 0) reachableCells++;
+        }
+
+        field.setTarget(TARGET_COLUMN, TARGET_ROW + 1);
+        int ticks = 0;
+        while (field.getDistance(TARGET_COLUMN, TARGET_ROW + 1) != 0) {
+            assertEquals(0, field.getDistance(TARGET_COLUMN, TARGET_ROW), "The old field changed while building the new one");
+            field.update();
+            ticks++;
+        }
+
+        // Every cell is searched once, and a tick searches at most CELL_BUDGET_PER_TICK cells
+        assertTrue(ticks >= (reachableCells + FlowField.CELL_BUDGET_PER_TICK - 1) / FlowField.CELL_BUDGET_PER_TICK,
+                reachableCells + " cells searched in " + ticks + " ticks");
+    }
+
+
+    private static FlowField build(int column, int row) {
+        FlowField field = new FlowField(gw);
+        field.setTarget(column, row);
+        for (int tick = 0; tick < 10_000 && field.getDistance(column, row) != 0; tick++) {
+            field.update();
+        }
+        assertEquals(0, field.getDistance(column, row), "The field was never completed");
+        return field;
+    }
+}
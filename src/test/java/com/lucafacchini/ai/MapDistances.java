@@ -0,0 +1,53 @@
+package com.lucafacchini.ai;
+
+import com.lucafacchini.GameWorld;
+
+import java.util.Arrays;
+
+/**
+ * The reference distances of the tests: a plain breadth-first search on the cells of the map,
+ * with the same rules of the PathFinder and of the FlowField. (Four neighbours, solid cells are walls)
+ */
+final class MapDistances {
+
+    private MapDistances() {
+    }
+
+
+    /**
+     * @brief Returns the distance of every cell from a start cell, in steps.
+     *
+     * @return The distances, indexed by row * columns + column. (-1 if the cell can't be reached)
+     */
+    static int[] from(GameWorld gw, int startColumn, int startRow) {
+        int columns = gw.tm.columns;
+        int rows = gw.tm.rows;
+
+        int[] distances = new int[columns * rows];
+        Arrays.fill(distances, -1);
+        int[] queue = new int[columns * rows];
+        int head = 0, tail = 0;
+
+        distances[startRow * columns + startColumn] = 0;
+        queue[tail++] = startRow * columns + startColumn;
+
+        while (head < tail) {
+            int cell = queue[head++];
+            int column = cell % columns;
+            int row = cell / columns;
+
+            int[][] neighbours = { { column + 1, row }, { column - 1, row }, { column, row + 1 }, { column, row - 1 } };
+            for (int[] neighbour : neighbours) {
+                int next = neighbour[1] * columns + neighbour[0];
+                if (neighbour[0] < 0 || neighbour[1] < 0 || neighbour[0] >= columns || neighbour[1] >= rows ||
+                        gw.tm.isSolid(neighbour[0], neighbour[1]) || distances[next] >= 0) {
+                    continue;
+                }
+                distances[next] = distances[cell] + 1;
+                queue[tail++] = next;
+            }
+        }
+
+        return distances;
+    }
+}
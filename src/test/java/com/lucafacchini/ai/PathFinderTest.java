@@ -0,0 +1,150 @@
+package com.lucafacchini.ai;
+
+import com.lucafacchini.GameWorld;
+import com.lucafacchini.entity.Entity;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the paths of the PathFinder against a breadth-first search, and its node budget.
+ */
+class PathFinderTest {
+
+    private static GameWorld gw;
+    private static int columns;
+
+    @BeforeAll
+    static void createWorld() {
+        gw = new GameWorld(false, 42);
+        gw.initializeGame();
+        gw.gameStatus = GameWorld.GameStatus.RUNNING;
+        columns = gw.tm.columns;
+    }
+
+
+    @Test
+    void pathsAreAsShortAsTheBreadthFirstSearch() {
+        Random random = new Random(1);
+
+        for (int n = 0; n < 200; n++) {
+            int[] start = randomWalkableCell(random);
+            int[] goal = randomWalkableCell(random);
+
+            PathFinder.PathRequest request = search(gw.pathFinder.request(start[0], start[1], goal[0], goal[1]));
+            int distance = MapDistances.from(gw, start[0], start[1])[goal[1] * columns + goal[0]];
+
+            if (distance < 0) {
+                assertEquals(PathFinder.PathRequest.Status.NOT_FOUND, request.status);
+                continue;
+            }
+            assertEquals(PathFinder.PathRequest.Status.FOUND, request.status);
+            assertEquals(distance, request.path.length);
+            assertWalkable(request.path, start, goal);
+        }
+    }
+
+
+    @Test
+    void searchesStayWithinTheNodeBudget() {
+        Random random = new Random(2);
+        for (int n = 0; n < 200; n++) {
+            int[] start = randomWalkableCell(random);
+            int[] goal = randomWalkableCell(random);
+            gw.pathFinder.request(start[0], start[1], goal[0], goal[1]);
+        }
+
+        while (gw.pathFinder.getPendingRequestCount() > 0) {
+            long searchedNodes = gw.pathFinder.getSearchedNodes();
+            gw.pathFinder.update();
+            long searched = gw.pathFinder.getSearchedNodes() - searchedNodes;
+
+            assertTrue(searched <= PathFinder.NODE_BUDGET_PER_TICK, searched + " nodes in a tick");
+        }
+    }
+
+
+    @Test
+    void stuckRequestAvoidsTheBlockedCell() {
+        Random random = new Random(3);
+
+        for (int n = 0; n < 200; n++) {
+            int[] start = randomWalkableCell(random);
+            int[] goal = randomWalkableCell(random);
+
+            PathFinder.PathRequest request = search(gw.pathFinder.request(start[0], start[1], goal[0], goal[1]));
+            if (request.status != PathFinder.PathRequest.Status.FOUND || request.path.length < 3) continue;
+
+            int blockedCell = request.path[0];
+            int cacheHits = gw.pathFinder.getCacheHits();
+            PathFinder.PathRequest detour = search(gw.pathFinder.request(start[0], start[1], goal[0], goal[1],
+                    blockedCell % columns, blockedCell / columns));
+
+            assertEquals(cacheHits, gw.pathFinder.getCacheHits(), "The cached path goes through the blocked cell");
+            if (detour.status == PathFinder.PathRequest.Status.FOUND) {
+                for (int cell : detour.path) {
+                    assertFalse(cell == blockedCell, "The path goes through the blocked cell");
+                }
+                assertWalkable(detour.path, start, goal);
+            }
+
+            // The usual path is still cached
+            assertEquals(PathFinder.PathRequest.Status.FOUND, gw.pathFinder.request(start[0], start[1], goal[0], goal[1]).status);
+            assertEquals(cacheHits + 1, gw.pathFinder.getCacheHits());
+        }
+    }
+
+
+    @Test
+    void oldManFollowsThePlayer() {
+        Entity oldMan = gw.npcArray[0];
+        gw.player.worldX = 20 * gw.TILE_SIZE;
+        gw.player.worldY = 30 * gw.TILE_SIZE;
+
+        oldMan.followPlayer();
+        try {
+            assertEquals(Entity.Behavior.FOLLOW_PLAYER, oldMan.behavior);
+
+            for (int tick = 0; tick < 3000 && !oldMan.isNextToPlayer; tick++) {
+                gw.update();
+            }
+            assertTrue(oldMan.isNextToPlayer, "The old man never reached the player");
+        } finally {
+            oldMan.wander(); // The world is shared by the other tests
+        }
+    }
+
+
+    private static PathFinder.PathRequest search(PathFinder.PathRequest request) {
+        while (request.status == PathFinder.PathRequest.Status.PENDING) {
+            gw.pathFinder.update();
+        }
+        return request;
+    }
+
+
+    private static void assertWalkable(int[] path, int[] start, int[] goal) {
+        int previous = start[1] * columns + start[0];
+        for (int cell : path) {
+            assertEquals(1, Math.abs(cell % columns - previous % columns) + Math.abs(cell / columns - previous / columns));
+            assertFalse(gw.tm.isSolid(cell % columns, cell / columns));
+            previous = cell;
+        }
+        assertEquals(goal[1] * columns + goal[0], previous);
+    }
+
+
+    private static int[] randomWalkableCell(Random random) {
+        int column, row;
+        do {
+            column = random.nextInt(columns);
+            row = random.nextInt(gw.tm.rows);
+        } while (gw.tm.isSolid(column, row));
+        return new int[]{ column, row };
+    }
+}
@@ -0,0 +1,48 @@
+package com.lucafacchini.entity;
+
+import com.lucafacchini.GameWorld;
+import com.lucafacchini.objects.Key_Object;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Checks that the entities and the objects of the same type share their images.
+ */
+class SpriteRegistryTest {
+
+    private static GameWorld gw;
+
+    @BeforeAll
+    static void createWorld() {
+        gw = new GameWorld(false, 42);
+        gw.initializeGame();
+    }
+
+
+    @Test
+    void entitiesOfTheSameTypeShareTheirSprites() {
+        NPC_OldMan oldMan = new NPC_OldMan(gw);
+        NPC_OldMan otherOldMan = new NPC_OldMan(gw);
+        gw.assets.awaitAll();
+
+        assertSame(oldMan.sprites, otherOldMan.sprites);
+        assertSame(oldMan.sprites, gw.npcArray[0].sprites, "The old man of the map");
+
+        int animation = SpriteSet.animationOf(Entity.Status.MOVING, Entity.Direction.DOWN);
+        assertNotNull(oldMan.sprites.getFrame(oldMan.sprites.getFrameIndex(animation, 0)));
+    }
+
+
+    @Test
+    void objectsOfTheSameTypeShareTheirImage() {
+        Key_Object key = new Key_Object(gw);
+        Key_Object otherKey = new Key_Object(gw);
+        gw.assets.awaitAll();
+
+        assertNotNull(key.image);
+        assertSame(key.image, otherKey.image);
+    }
+}
@@ -0,0 +1,79 @@
+package com.lucafacchini.entity;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Checks the frames picked from the precompiled animation table.
+ */
+class SpriteSetTest {
+
+    // 3 idling frames of 20 ticks, 2 moving frames of 5 ticks, and no idling frames to the left
+    private static final int[] FRAME_COUNTS = { 3, 3, 0, 3, 2, 2, 2, 2 };
+    private static final int[] FRAME_DURATIONS = { 20, 20, 20, 20, 5, 5, 5, 5 };
+
+    @Test
+    void animationsFollowTheOrderOfTheEnum() {
+        for (Entity.SpriteImagesEnum type : Entity.SpriteImagesEnum.values()) {
+            Entity.Status status = type.ordinal() < SpriteSet.DIRECTIONS ? Entity.Status.IDLING : Entity.Status.MOVING;
+            Entity.Direction direction = Entity.Direction.values()[type.ordinal() % SpriteSet.DIRECTIONS];
+
+            assertEquals(type.ordinal(), SpriteSet.animationOf(status, direction), type.name());
+        }
+    }
+
+
+    @Test
+    void framesStepAfterTheirDurationAndLoop() {
+        SpriteSet sprites = new SpriteSet(FRAME_COUNTS, FRAME_DURATIONS);
+        int idlingUp = SpriteSet.animationOf(Entity.Status.IDLING, Entity.Direction.UP);
+        int walkingDown = SpriteSet.animationOf(Entity.Status.MOVING, Entity.Direction.DOWN);
+
+        int[] idlingFrames = new int[80];
+        for (int ticks = 0; ticks < idlingFrames.length; ticks++) {
+            idlingFrames[ticks] = sprites.getFrameIndex(idlingUp, ticks) - sprites.getFrameIndex(idlingUp, 0);
+        }
+        assertEquals(0, idlingFrames[19]);
+        assertEquals(1, idlingFrames[20]);
+        assertEquals(2, idlingFrames[59]);
+        assertEquals(0, idlingFrames[60], "The animation loops");
+
+        int first = sprites.getFrameIndex(walkingDown, 0);
+        int[] expected = { 0, 0, 0, 0, 0, 1, 1, 1, 1, 1, 0, 0 };
+        for (int ticks = 0; ticks < expected.length; ticks++) {
+            assertEquals(first + expected[ticks], sprites.getFrameIndex(walkingDown, ticks), "Tick " + ticks);
+        }
+    }
+
+
+    @Test
+    void framesOfAnAnimationAreItsOwn() {
+        SpriteSet sprites = new SpriteSet(FRAME_COUNTS, FRAME_DURATIONS);
+        int walkingLeft = SpriteSet.animationOf(Entity.Status.MOVING, Entity.Direction.LEFT);
+        int walkingRight = SpriteSet.animationOf(Entity.Status.MOVING, Entity.Direction.RIGHT);
+
+        BufferedImage left = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage right = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        sprites.setFrame(walkingLeft, 1, left);
+        sprites.setFrame(walkingRight, 1, right);
+
+        assertSame(left, sprites.getFrame(sprites.getFrameIndex(walkingLeft, 5)));
+        assertSame(right, sprites.getFrame(sprites.getFrameIndex(walkingRight, 5)));
+        assertNull(sprites.getFrame(sprites.getFrameIndex(walkingRight, 0)), "Not loaded");
+    }
+
+
+    @Test
+    void animationWithoutFramesHasNoFrame() {
+        SpriteSet sprites = new SpriteSet(FRAME_COUNTS, FRAME_DURATIONS);
+        int idlingLeft = SpriteSet.animationOf(Entity.Status.IDLING, Entity.Direction.LEFT);
+
+        assertEquals(-1, sprites.getFrameIndex(idlingLeft, 10));
+        assertNull(sprites.getFrame(-1));
+    }
+}